@@ -0,0 +1,93 @@
+package org.codered.neolithic;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON result files, e.g. from before and after a change, benchmark by benchmark: the score and, if
+ * the runs used the GC profiler, the bytes allocated per operation, each with the relative change. Benchmarks are
+ * matched by name and parameters; those found in only one file are listed as such.
+ */
+public class BenchmarkComparison {
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BenchmarkComparison <baseline.json> <candidate.json>");
+            return;
+        }
+        Map<String, JsonObject> baseline = read(Path.of(args[0]));
+        Map<String, JsonObject> candidate = read(Path.of(args[1]));
+
+        System.out.printf("%-70s %14s %14s %8s %12s %12s %8s%n",
+                "benchmark", "baseline", "candidate", "change", "B/op before", "B/op after", "change");
+        Map<String, JsonObject> all = new TreeMap<>(baseline);
+        candidate.forEach(all::putIfAbsent);
+        for (String name : all.keySet()) {
+            JsonObject before = baseline.get(name);
+            JsonObject after = candidate.get(name);
+            if (before == null || after == null) {
+                System.out.printf("%-70s only in %s%n", name, before == null ? args[1] : args[0]);
+                continue;
+            }
+            double scoreBefore = score(before.getAsJsonObject("primaryMetric"));
+            double scoreAfter = score(after.getAsJsonObject("primaryMetric"));
+            double allocationBefore = allocation(before);
+            double allocationAfter = allocation(after);
+            System.out.printf("%-70s %14.3f %14.3f %7.1f%% %12.0f %12.0f %7.1f%%  %s%n", name,
+                    scoreBefore, scoreAfter, change(scoreBefore, scoreAfter),
+                    allocationBefore, allocationAfter, change(allocationBefore, allocationAfter),
+                    after.getAsJsonObject("primaryMetric").get("scoreUnit").getAsString());
+        }
+    }
+
+    private static Map<String, JsonObject> read(Path file) throws IOException {
+        Map<String, JsonObject> results = new LinkedHashMap<>();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            for (JsonElement element : JsonParser.parseReader(reader).getAsJsonArray()) {
+                JsonObject result = element.getAsJsonObject();
+                StringBuilder name = new StringBuilder(result.get("benchmark").getAsString()
+                        .replaceFirst("^org\\.codered\\.neolithic\\.", ""));
+                if (result.has("params")) {
+                    new TreeMap<>(result.getAsJsonObject("params").asMap()).forEach((param, value) ->
+                            name.append(' ').append(param).append('=').append(value.getAsString()));
+                }
+                results.put(name.toString(), result);
+            }
+        }
+        return results;
+    }
+
+    private static double score(JsonObject metric) {
+        return metric.get("score").getAsDouble();
+    }
+
+    /**
+     * Gets the bytes allocated per operation, or NaN if the run didn't use the GC profiler.
+     */
+    private static double allocation(JsonObject result) {
+        if (!result.has("secondaryMetrics")) {
+            return Double.NaN;
+        }
+        // Older JMH versions prefix secondary metrics with a middle dot
+        for (Map.Entry<String, JsonElement> metric : result.getAsJsonObject("secondaryMetrics").entrySet()) {
+            if (metric.getKey().endsWith(ALLOCATION_METRIC)) {
+                return score(metric.getValue().getAsJsonObject());
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static double change(double before, double after) {
+        return before == 0 ? Double.NaN : (after - before) / before * 100;
+    }
+}
@@ -0,0 +1,287 @@
+package org.codered.neolithic.images.accuracy;
+
+import com.google.gson.GsonBuilder;
+import org.codered.neolithic.images.ImageConversionUtility;
+import org.codered.neolithic.images.conversion.ImageConverter;
+import org.codered.neolithic.images.conversion.PreprocessingImageConverter;
+import org.codered.neolithic.images.conversion.TesseractConverter;
+import org.codered.neolithic.images.conversion.TesseractEnginePool;
+import org.codered.neolithic.images.processing.ConversionRefiner;
+import org.codered.neolithic.images.processing.ImagePreprocessor;
+import org.codered.neolithic.utils.ConfigReader;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs OCR configurations over a {@link SyntheticCorpus} and reports accuracy next to speed, so a change that makes
+ * conversion faster can be checked for what it costs in accuracy, all offline.
+ * <p>
+ * For each configuration it reports:
+ * <ul>
+ *     <li>the character error rate (CER) and word error rate (WER): the edit distance between the recognized and the
+ *     rendered text, in characters and in words, divided by the length of the rendered text. Whitespace, including
+ *     line breaks, is collapsed first, since the refiner joins lines.</li>
+ *     <li>the CER for each font, size, theme, noise level and scale, to show where accuracy is lost</li>
+ *     <li>images per second over the whole corpus, on {@code threads} threads</li>
+ *     <li>the peak heap while converting, including the pre-rendered corpus, which is reported separately</li>
+ * </ul>
+ * Run with {@code mvn -P benchmark compile exec:java@accuracy -Daccuracy.args="--samples 200 --configs raw,refined"};
+ * the configurations are listed in {@link #configurations}. Tesseract needs its natives, and the traineddata from the
+ * config's {@code ocr.dataPath}. {@code --output file.json} also writes the reports as JSON.
+ */
+public class AccuracyHarness {
+
+    /**
+     * The outcome of running one configuration over the corpus.
+     *
+     * @param configuration        The configuration's name.
+     * @param images               The number of images converted.
+     * @param failures             The number of images whose conversion threw; they count as entirely wrong.
+     * @param characterErrorRate   The character error rate, from 0; above 1 if the output is longer than the text.
+     * @param wordErrorRate        The word error rate.
+     * @param imagesPerSecond      The throughput.
+     * @param peakHeapBytes        The peak heap use while converting.
+     * @param corpusHeapBytes      The heap in use before converting, mostly the rendered corpus.
+     * @param errorRateByVariation The character error rate of each variation, e.g. "theme=DARK".
+     */
+    public record Report(String configuration, int images, int failures, double characterErrorRate,
+                         double wordErrorRate, double imagesPerSecond, long peakHeapBytes, long corpusHeapBytes,
+                         Map<String, Double> errorRateByVariation) {
+    }
+
+    private final SyntheticCorpus corpus;
+    private final int threads;
+    private List<SyntheticCorpus.Sample> samples;
+
+    /**
+     * @param corpus  The corpus to run over.
+     * @param threads The number of images converted at once.
+     */
+    public AccuracyHarness(SyntheticCorpus corpus, int threads) {
+        this.corpus = corpus;
+        this.threads = Math.max(1, threads);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int samples = 100;
+        long seed = 42;
+        int threads = 0;
+        List<String> names = null;
+        Path output = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--samples" -> samples = Integer.parseInt(args[i + 1]);
+                case "--seed" -> seed = Long.parseLong(args[i + 1]);
+                case "--threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "--configs" -> names = Arrays.asList(args[i + 1].split(","));
+                case "--output" -> output = Path.of(args[i + 1]);
+                default -> System.err.println("Unknown option " + args[i]);
+            }
+        }
+
+        ConfigReader configReader = new ConfigReader();
+        Map<String, ImageConverter> configurations = configurations(configReader);
+        if (names != null) {
+            configurations.keySet().retainAll(names);
+        }
+        AccuracyHarness harness = new AccuracyHarness(new SyntheticCorpus(seed, samples),
+                threads > 0 ? threads : TesseractEnginePool.fromConfig(configReader).getSize());
+
+        List<Report> reports = new ArrayList<>();
+        for (Map.Entry<String, ImageConverter> configuration : configurations.entrySet()) {
+            reports.add(harness.evaluate(configuration.getKey(), configuration.getValue()));
+        }
+        print(reports);
+        if (output != null) {
+            Files.writeString(output, new GsonBuilder().setPrettyPrinting().create().toJson(reports));
+        }
+        TesseractEnginePool.closeAll();
+    }
+
+    /**
+     * Builds the configurations to compare, from the shared engine pool and the config's settings:
+     * <ul>
+     *     <li>{@code raw}: Tesseract alone, without refinement</li>
+     *     <li>{@code refined}: Tesseract and the refiner</li>
+     *     <li>{@code preprocessed}: the configured preprocessing in front of Tesseract and the refiner</li>
+     *     <li>{@code configured}: the converter the app uses, with text regions and tiling as configured</li>
+     * </ul>
+     *
+     * @param configReader The config reader to use.
+     * @return The configurations by name, in order.
+     */
+    public static Map<String, ImageConverter> configurations(ConfigReader configReader) {
+        TesseractConverter tesseract = new TesseractConverter(TesseractEnginePool.fromConfig(configReader),
+                configReader.getBoolean("ocr", "inMemory", true),
+                configReader.getInt("refiner", "confidenceThreshold", (int) ConversionRefiner.DEFAULT_CONFIDENCE_THRESHOLD));
+
+        Map<String, ImageConverter> configurations = new LinkedHashMap<>();
+        configurations.put("raw", tesseract::recognize);
+        configurations.put("refined", tesseract);
+        configurations.put("preprocessed",
+                new PreprocessingImageConverter(ImagePreprocessor.fromConfig(configReader), tesseract));
+        configurations.put("configured", ImageConversionUtility.createImageConverter(configReader));
+        return configurations;
+    }
+
+    /**
+     * Converts every image of the corpus with a configuration and compares the text with the rendered one.
+     *
+     * @param name      The configuration's name, for the report.
+     * @param converter The converter; cached results are bypassed.
+     * @return The report.
+     * @throws InterruptedException If interrupted while converting.
+     */
+    public Report evaluate(String name, ImageConverter converter) throws InterruptedException {
+        if (samples == null) {
+            samples = new ArrayList<>(corpus.size());
+            for (int i = 0; i < corpus.size(); i++) {
+                samples.add(corpus.get(i));
+            }
+        }
+        String[] outputs = new String[samples.size()];
+        AtomicInteger failures = new AtomicInteger();
+
+        System.gc();
+        long corpusHeap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < samples.size(); i++) {
+            int index = i;
+            executor.execute(() -> {
+                try {
+                    outputs[index] = converter.reconvertToText(samples.get(index).image());
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    outputs[index] = "";
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.DAYS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+
+        long characterErrors = 0;
+        long characters = 0;
+        long wordErrors = 0;
+        long words = 0;
+        Map<String, long[]> variations = new TreeMap<>();
+        for (int i = 0; i < samples.size(); i++) {
+            SyntheticCorpus.Sample sample = samples.get(i);
+            String expected = normalize(sample.text());
+            String actual = normalize(outputs[i]);
+            int errors = editDistance(expected.codePoints().toArray(), actual.codePoints().toArray());
+            characterErrors += errors;
+            characters += expected.length();
+            String[] expectedWords = expected.split(" ");
+            wordErrors += editDistance(expectedWords, actual.isEmpty() ? new String[0] : actual.split(" "));
+            words += expectedWords.length;
+
+            for (String variation : List.of("font=" + sample.font() + (sample.bold() ? " bold" : ""),
+                    "size=" + sample.fontSize(), "theme=" + sample.theme(), "noise=" + sample.noise(),
+                    "scale=" + sample.scale())) {
+                long[] counts = variations.computeIfAbsent(variation, key -> new long[2]);
+                counts[0] += errors;
+                counts[1] += expected.length();
+            }
+        }
+
+        Map<String, Double> errorRateByVariation = new LinkedHashMap<>();
+        variations.forEach((variation, counts) -> errorRateByVariation.put(variation, (double) counts[0] / counts[1]));
+        return new Report(name, samples.size(), failures.get(), (double) characterErrors / characters,
+                (double) wordErrors / words, samples.size() / seconds, peakHeap, corpusHeap, errorRateByVariation);
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.strip().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Computes the Levenshtein distance between two sequences of code points.
+     */
+    static int editDistance(int[] expected, int[] actual) {
+        int[] previous = new int[actual.length + 1];
+        int[] current = new int[actual.length + 1];
+        for (int j = 0; j <= actual.length; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= expected.length; i++) {
+            current[0] = i;
+            for (int j = 1; j <= actual.length; j++) {
+                int substitution = previous[j - 1] + (expected[i - 1] == actual[j - 1] ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[actual.length];
+    }
+
+    /**
+     * Computes the Levenshtein distance between two sequences of words.
+     */
+    static int editDistance(String[] expected, String[] actual) {
+        int[] previous = new int[actual.length + 1];
+        int[] current = new int[actual.length + 1];
+        for (int j = 0; j <= actual.length; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= expected.length; i++) {
+            current[0] = i;
+            for (int j = 1; j <= actual.length; j++) {
+                int substitution = previous[j - 1] + (expected[i - 1].equals(actual[j - 1]) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[actual.length];
+    }
+
+    private static void print(List<Report> reports) {
+        System.out.printf("%-14s %7s %8s %8s %8s %10s %12s%n",
+                "configuration", "images", "failed", "CER", "WER", "images/s", "peak heap MB");
+        for (Report report : reports) {
+            System.out.printf("%-14s %7d %8d %7.2f%% %7.2f%% %10.2f %12.1f%n", report.configuration(), report.images(),
+                    report.failures(), report.characterErrorRate() * 100, report.wordErrorRate() * 100,
+                    report.imagesPerSecond(), report.peakHeapBytes() / 1048576.0);
+        }
+        if (!reports.isEmpty()) {
+            System.out.printf("(the rendered corpus takes %.1f MB of that)%n%n",
+                    reports.get(0).corpusHeapBytes() / 1048576.0);
+        }
+
+        System.out.printf("%-24s", "CER by variation");
+        reports.forEach(report -> System.out.printf(" %14s", report.configuration()));
+        System.out.println();
+        if (!reports.isEmpty()) {
+            for (String variation : reports.get(0).errorRateByVariation().keySet()) {
+                System.out.printf("%-24s", variation);
+                reports.forEach(report -> System.out.printf(" %13.2f%%",
+                        report.errorRateByVariation().get(variation) * 100));
+                System.out.println();
+            }
+        }
+    }
+}
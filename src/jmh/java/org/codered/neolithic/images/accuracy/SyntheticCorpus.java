@@ -0,0 +1,187 @@
+package org.codered.neolithic.images.accuracy;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A reproducible corpus of rendered text images with known text, for measuring OCR accuracy without hand-labelled
+ * screenshots.
+ * <p>
+ * Sample {@code i} of a corpus is fully determined by the seed and {@code i}, so two runs, on any machine with the same
+ * fonts, see the same images. Samples are rendered on demand rather than held in memory. Each one varies:
+ * <ul>
+ *     <li>font: serif, sans-serif or monospaced, plain or bold</li>
+ *     <li>size: 10 to 28 points</li>
+ *     <li>theme: light, dark or colored, as found in editors and dialogs</li>
+ *     <li>noise: none, light or heavy per-pixel noise, as left by compression and scaling</li>
+ *     <li>scale: the rendered text is resampled by 0.75 to 2, as on displays with different scaling</li>
+ * </ul>
+ */
+public class SyntheticCorpus {
+    private static final String[] FONTS = {Font.SERIF, Font.SANS_SERIF, Font.MONOSPACED};
+    private static final int[] SIZES = {10, 12, 14, 16, 20, 28};
+    private static final double[] SCALES = {0.75, 1, 1.25, 1.5, 2};
+    private static final String[] WORDS = (
+            "the capture tool reads text from the screen and converts it with an engine before the refiner "
+            + "checks spelling and grammar of every sentence users select an area press accept and see a dialog "
+            + "with the result settings include language page mode threshold cache window preview report error "
+            + "invoice total amount date customer order number shipping address payment account balance due "
+            + "meeting agenda project deadline review schedule update version release build test server client "
+            + "request response timeout queue worker thread memory image pixel font theme noise scale quality").split(" ");
+
+    public enum Theme {
+        LIGHT(new Color(250, 250, 250), new Color(20, 20, 20)),
+        DARK(new Color(30, 30, 30), new Color(220, 220, 220)),
+        COLORED(new Color(40, 70, 120), new Color(255, 230, 120));
+
+        private final Color background;
+        private final Color foreground;
+
+        Theme(Color background, Color foreground) {
+            this.background = background;
+            this.foreground = foreground;
+        }
+    }
+
+    public enum Noise {
+        NONE(0), LIGHT(12), HEAVY(40);
+
+        private final int amplitude;
+
+        Noise(int amplitude) {
+            this.amplitude = amplitude;
+        }
+    }
+
+    /**
+     * One image of the corpus and the text it shows.
+     *
+     * @param index    The sample's position in the corpus.
+     * @param image    The rendered image.
+     * @param text     The text rendered, lines separated by newlines.
+     * @param font     The font family.
+     * @param bold     Whether the font is bold.
+     * @param fontSize The font size in points, before scaling.
+     * @param theme    The color theme.
+     * @param noise    The noise level.
+     * @param scale    The factor the image was resampled by.
+     */
+    public record Sample(int index, BufferedImage image, String text, String font, boolean bold, int fontSize,
+                         Theme theme, Noise noise, double scale) {
+    }
+
+    private final long seed;
+    private final int size;
+
+    /**
+     * @param seed The seed every sample is derived from.
+     * @param size The number of samples.
+     */
+    public SyntheticCorpus(long seed, int size) {
+        this.seed = seed;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Renders a sample.
+     *
+     * @param index The sample's position, from 0 to {@link #size()} - 1.
+     * @return The sample.
+     */
+    public Sample get(int index) {
+        Random random = new Random(seed * 31 + index);
+        String font = FONTS[random.nextInt(FONTS.length)];
+        boolean bold = random.nextInt(4) == 0;
+        int fontSize = SIZES[random.nextInt(SIZES.length)];
+        Theme theme = Theme.values()[random.nextInt(Theme.values().length)];
+        Noise noise = Noise.values()[random.nextInt(Noise.values().length)];
+        double scale = SCALES[random.nextInt(SCALES.length)];
+
+        List<String> lines = new ArrayList<>();
+        int lineCount = 1 + random.nextInt(4);
+        for (int line = 0; line < lineCount; line++) {
+            StringBuilder text = new StringBuilder();
+            int wordCount = 3 + random.nextInt(7);
+            for (int word = 0; word < wordCount; word++) {
+                if (word > 0) {
+                    text.append(' ');
+                }
+                // Now and then a number, as in invoices and version strings
+                text.append(random.nextInt(12) == 0 ? String.valueOf(random.nextInt(10_000))
+                        : WORDS[random.nextInt(WORDS.length)]);
+            }
+            lines.add(text.toString());
+        }
+
+        BufferedImage image = render(lines, new Font(font, bold ? Font.BOLD : Font.PLAIN, fontSize), theme);
+        if (scale != 1) {
+            image = resample(image, scale);
+        }
+        addNoise(image, noise, random);
+        return new Sample(index, image, String.join("\n", lines), font, bold, fontSize, theme, noise, scale);
+    }
+
+    private static BufferedImage render(List<String> lines, Font font, Theme theme) {
+        BufferedImage measure = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D measureGraphics = measure.createGraphics();
+        FontMetrics metrics = measureGraphics.getFontMetrics(font);
+        measureGraphics.dispose();
+
+        int padding = metrics.getHeight();
+        int lineHeight = metrics.getHeight() + metrics.getHeight() / 4;
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, metrics.stringWidth(line));
+        }
+
+        BufferedImage image = new BufferedImage(width + 2 * padding, lines.size() * lineHeight + 2 * padding,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(theme.background);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        graphics.setFont(font);
+        graphics.setColor(theme.foreground);
+        for (int line = 0; line < lines.size(); line++) {
+            graphics.drawString(lines.get(line), padding, padding + line * lineHeight + metrics.getAscent());
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    private static BufferedImage resample(BufferedImage image, double scale) {
+        BufferedImage scaled = new BufferedImage((int) Math.round(image.getWidth() * scale),
+                (int) Math.round(image.getHeight() * scale), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, scaled.getWidth(), scaled.getHeight(), null);
+        graphics.dispose();
+        return scaled;
+    }
+
+    private static void addNoise(BufferedImage image, Noise noise, Random random) {
+        if (noise.amplitude == 0) {
+            return;
+        }
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int rgb = image.getRGB(x, y);
+                int delta = (int) (random.nextGaussian() * noise.amplitude / 2);
+                image.setRGB(x, y, clamp((rgb >> 16 & 0xFF) + delta) << 16
+                        | clamp((rgb >> 8 & 0xFF) + delta) << 8
+                        | clamp((rgb & 0xFF) + delta));
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
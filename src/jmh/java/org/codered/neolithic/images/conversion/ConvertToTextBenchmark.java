@@ -0,0 +1,92 @@
+package org.codered.neolithic.images.conversion;
+
+import org.codered.neolithic.images.CapturePipeline;
+import org.codered.neolithic.images.ImageConversionUtility;
+import org.codered.neolithic.utils.ConfigReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting fixed synthetic captures of several sizes to text:
+ * <ul>
+ *     <li>{@code TESSERACT}: {@link TesseractConverter#convertToText}, i.e. OCR and refinement only</li>
+ *     <li>{@code CONFIGURED}: the converter the config describes, with preprocessing, text regions and tiling in front,
+ *     bypassing the result cache</li>
+ *     <li>{@code PIPELINE}: end to end through the {@link CapturePipeline}, from cropping the selection out of a full
+ *     screen capture to the refined text, bypassing the result cache</li>
+ * </ul>
+ * The configured variants read {@code src/main/resources/config.json}, so run from the project directory. All of them
+ * need the Tesseract natives and traineddata; the plain one reads them from {@code -Docr.dataPath}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ConvertToTextBenchmark {
+
+    @Param({"640x120", "1280x720", "1920x1080", "3840x2160"})
+    public String size;
+
+    @Param({"TESSERACT", "CONFIGURED", "PIPELINE"})
+    public String converter;
+
+    private BufferedImage capture;
+    private BufferedImage screen;
+    private Rectangle selection;
+    private ImageConverter imageConverter;
+    private CapturePipeline pipeline;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        int width = Integer.parseInt(dimensions[0]);
+        int height = Integer.parseInt(dimensions[1]);
+        capture = ImageTransferBenchmark.renderCapture(width, height);
+
+        switch (converter) {
+            case "TESSERACT" -> imageConverter = new TesseractConverter(TesseractEnginePool.forSettings(
+                    EngineSettings.of(System.getProperty("ocr.dataPath", EngineSettings.DEFAULT_DATA_PATH)), 1));
+            case "CONFIGURED" -> imageConverter = ImageConversionUtility.createImageConverter(new ConfigReader());
+            default -> {
+                // The selection sits in the middle of a screen capture at least as large as the selection
+                screen = ImageTransferBenchmark.renderCapture(Math.max(3840, width), Math.max(2160, height));
+                selection = new Rectangle((screen.getWidth() - width) / 2, (screen.getHeight() - height) / 2,
+                        width, height);
+                pipeline = ImageConversionUtility.createCapturePipeline(new ConfigReader());
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+        TesseractEnginePool.closeAll();
+    }
+
+    @Benchmark
+    public String convertToText() throws Exception {
+        if (pipeline != null) {
+            return pipeline.submit(screen, selection, true).getResult().join().text();
+        }
+        return imageConverter.reconvertToText(capture);
+    }
+}
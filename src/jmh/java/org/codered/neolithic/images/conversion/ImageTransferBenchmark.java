@@ -0,0 +1,103 @@
+package org.codered.neolithic.images.conversion;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares handing a screen capture to Tesseract through a temporary PNG file against passing its pixels in memory.
+ * <p>
+ * {@code handOff} measures only the Java side of each path (PNG encode and disk write vs. building the pixel buffer)
+ * and runs anywhere. {@code recognize} runs the full OCR and needs the Tesseract natives and traineddata in
+ * {@code -Docr.dataPath}. Run with {@code -prof gc} to see the allocation per capture.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageTransferBenchmark {
+
+    @Param({"1920x1080", "3840x2160"})
+    public String resolution;
+
+    @Param({"TEMP_FILE", "IN_MEMORY"})
+    public String transfer;
+
+    private BufferedImage capture;
+    private ByteBuffer scratch;
+    private TesseractConverter converter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] size = resolution.split("x");
+        capture = renderCapture(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+        scratch = ByteBuffer.allocateDirect(capture.getWidth() * capture.getHeight());
+
+        EngineSettings settings = EngineSettings.of(System.getProperty("ocr.dataPath", EngineSettings.DEFAULT_DATA_PATH));
+        converter = new TesseractConverter(TesseractEnginePool.forSettings(settings, 1), isInMemory());
+    }
+
+    @Benchmark
+    public Object handOff() throws IOException {
+        if (isInMemory()) {
+            return PixelBuffer.of(capture, capacity -> scratch.clear().limit(capacity));
+        }
+
+        File tempFile = File.createTempFile("image", ".png");
+        try {
+            ImageIO.write(capture, "png", tempFile);
+            return tempFile.length();
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    @Benchmark
+    public String recognize() throws Exception {
+        return converter.recognize(capture);
+    }
+
+    private boolean isInMemory() {
+        return "IN_MEMORY".equals(transfer);
+    }
+
+    /**
+     * Renders a screen-like capture: an ARGB raster, as produced by Robot, filled with lines of dark UI text.
+     */
+    static BufferedImage renderCapture(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(245, 245, 245));
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(new Color(30, 30, 30));
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 16));
+
+        String line = "The quick brown fox jumps over the lazy dog while the capture tool reads the screen. ";
+        int lineHeight = graphics.getFontMetrics().getHeight() + 4;
+        for (int y = lineHeight; y < height; y += lineHeight) {
+            graphics.drawString(line.repeat(1 + width / 600), 10, y);
+        }
+        graphics.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,58 @@
+package org.codered.neolithic.images.conversion;
+
+import net.sourceforge.tess4j.TesseractException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what a conversion pays to get an engine: creating one, which loads the traineddata, against checking a
+ * warm one out of a {@link TesseractEnginePool}. Needs the Tesseract natives and traineddata in
+ * {@code -Docr.dataPath}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TesseractEngineBenchmark {
+
+    private EngineSettings settings;
+    private TesseractEnginePool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws TesseractException {
+        settings = EngineSettings.of(System.getProperty("ocr.dataPath", EngineSettings.DEFAULT_DATA_PATH));
+        pool = TesseractEnginePool.forSettings(settings, 1);
+        pool.warmUp();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        TesseractEnginePool.closeAll();
+    }
+
+    @Benchmark
+    public EngineSettings createEngine() throws TesseractException {
+        try (TesseractEngine engine = new TesseractEngine(settings)) {
+            return engine.getSettings();
+        }
+    }
+
+    @Benchmark
+    public EngineSettings checkOutPooledEngine() throws TesseractException {
+        return pool.execute(TesseractEngine::getSettings);
+    }
+}
@@ -0,0 +1,102 @@
+package org.codered.neolithic.images.processing;
+
+import net.sourceforge.tess4j.Word;
+import org.codered.neolithic.images.conversion.OcrResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each stage of {@link ConversionRefiner#refineConversion(OcrResult, float)} in isolation on the same page
+ * of recognized words, and the whole refinement for comparison:
+ * <ul>
+ *     <li>{@code cleanup}: rebuilding the cleaned text from the words, with nothing below the threshold</li>
+ *     <li>{@code spellCheck}: correcting the low-confidence words one by one</li>
+ *     <li>{@code grammarCheck}: checking the sentences that contain a low-confidence word</li>
+ *     <li>{@code refine}: all of the above</li>
+ * </ul>
+ * Words containing a digit, and every tenth word, get a low confidence, roughly what Tesseract reports for screen
+ * text with the usual confusions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionRefinerBenchmark {
+    private static final float LOW_CONFIDENCE = 60;
+    private static final float HIGH_CONFIDENCE = 95;
+
+    private ConversionRefiner refiner;
+    private SpellCorrector spellCorrector;
+    private GrammarCorrector grammarCorrector;
+    private OcrResult result;
+    private List<String> suspectWords;
+    private String text;
+    private List<Integer> suspectOffsets;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        spellCorrector = DictionarySpellCorrector.getInstance();
+        grammarCorrector = GrammarCorrector.getInstance();
+        refiner = new ConversionRefiner(spellCorrector, grammarCorrector);
+
+        List<Word> words = new ArrayList<>();
+        suspectWords = new ArrayList<>();
+        suspectOffsets = new ArrayList<>();
+        StringBuilder cleaned = new StringBuilder();
+        String[] tokens = (GrammarCorrectionBenchmark.PAGE + " " + SpellCorrectionBenchmark.OCR_PAGE).split(" ");
+        for (int i = 0; i < tokens.length; i++) {
+            boolean suspect = tokens[i].matches(".*\\d.*") || i % 10 == 0;
+            words.add(new Word(tokens[i], suspect ? LOW_CONFIDENCE : HIGH_CONFIDENCE,
+                    new Rectangle(i * 40 % 800, i / 20 * 20, 36, 16)));
+            if (cleaned.length() > 0) {
+                cleaned.append(' ');
+            }
+            if (suspect) {
+                suspectWords.add(tokens[i]);
+                suspectOffsets.add(cleaned.length());
+            }
+            cleaned.append(tokens[i]);
+        }
+        result = new OcrResult(String.join(" ", tokens), words);
+        text = cleaned.toString();
+    }
+
+    @Benchmark
+    public String cleanup() {
+        return refiner.refineConversion(result, 0);
+    }
+
+    @Benchmark
+    public void spellCheck(Blackhole blackhole) {
+        for (String word : suspectWords) {
+            blackhole.consume(spellCorrector.correctWord(word));
+        }
+    }
+
+    @Benchmark
+    public String grammarCheck() {
+        return grammarCorrector.correctGrammar(text, suspectOffsets);
+    }
+
+    @Benchmark
+    public String refine() {
+        return refiner.refineConversion(result, ConversionRefiner.DEFAULT_CONFIDENCE_THRESHOLD);
+    }
+}
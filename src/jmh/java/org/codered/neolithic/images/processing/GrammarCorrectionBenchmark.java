@@ -0,0 +1,58 @@
+package org.codered.neolithic.images.processing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures grammar correction on multi-page input with one checker thread versus one per core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GrammarCorrectionBenchmark {
+
+    static final String PAGE = String.join(" ",
+            "Press Accept to start the the conversion. The converted text will be shown in a dialog.",
+            "He go to the settings page to change the language. This are a example of a capture.",
+            "the preview window shows a area of the screen. Recognition accuracy depend on the font size.",
+            "Dark themes is inverted automatically when detected. For best results capture only the text you need.",
+            "Spelling correction fixes most of these mistake automatically before the text is displayed.");
+
+    /**
+     * Checker threads; 0 means one per available core.
+     */
+    @Param({"1", "0"})
+    public int threads;
+
+    @Param({"1", "10"})
+    public int pages;
+
+    private GrammarCorrector grammarCorrector;
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        grammarCorrector = new GrammarCorrector(threads == 0 ? Runtime.getRuntime().availableProcessors() : threads);
+        text = (PAGE + " ").repeat(pages * 8);
+    }
+
+    @Benchmark
+    public String correctGrammar() {
+        return grammarCorrector.correctGrammar(text);
+    }
+}
@@ -0,0 +1,67 @@
+package org.codered.neolithic.images.processing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the spell-correction stages on a page of Tesseract output from a screen capture, after the same cleanup
+ * {@link ConversionRefiner} applies before spell checking.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpellCorrectionBenchmark {
+
+    /**
+     * Tesseract output for a captured settings dialog and help page, with its typical confusions
+     * (rn/m, l/1, O/0, dropped and merged letters).
+     */
+    static final String OCR_PAGE = String.join(" ",
+            "Configure the capture sett1ngs below Select the regi0n of the screen you want to convert and",
+            "press Accept to start the conversion The converted text will be shown in a dialog where you can",
+            "proofread it before sending it to the Al Use the instructions fieId to tell the assistant what to",
+            "do with the text for exarnple summarize this paragraph or solve this rnath problem If the text",
+            "looks wrong press Refresh Text to run the recognition again Captures are processed locally and",
+            "only the proofread text is sent to the service Keyboard shortcuts Ctrl Shift starts a new capture",
+            "Escape cancels the current selection The preview window shows the selected area Recognition",
+            "accuracy depends on the font size contrast and background of the captured window Small fonts",
+            "and low contrast themes reduce accuracy Dark themes are inverted autornatically when detected",
+            "For best results capture only the text you need and avoid including images icons or toolbars",
+            "Frequently asked questions Why is the converted text different from the screen The recogniser",
+            "can confuse similar looking characters such as the letter l and the digit 1 or the letter O and",
+            "the digit 0 Spelling correction fixes most of these mistakes automatically before the text is",
+            "displayed How do I change the language Open the configuration file and set the language code",
+            "then restart the application");
+
+    @Param({"DICTIONARY", "LANGUAGE_TOOL"})
+    public String corrector;
+
+    private SpellCorrector spellCorrector;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        spellCorrector = "DICTIONARY".equals(corrector)
+                ? DictionarySpellCorrector.getInstance()
+                : new LanguageToolSpellCorrector();
+    }
+
+    @Benchmark
+    public String correctSpelling() {
+        return spellCorrector.correctSpelling(OCR_PAGE);
+    }
+}
@@ -0,0 +1,149 @@
+package org.codered.neolithic.server;
+
+import org.codered.neolithic.utils.ConfigReader;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load tests the {@link OcrServer} on localhost: for each concurrency level, that many clients post the same
+ * synthetic capture back to back, and the throughput and p50/p99 latency of the successful requests are reported
+ * along with how many were turned away by admission control.
+ * <p>
+ * Not a JMH benchmark, since JMH can't vary the thread count within a run. Run with
+ * {@code mvn -P benchmark compile exec:java@load-test -Dloadtest.args="--levels 1,2,4,8,16 --requests 200"}.
+ * Without a URL it starts a server from the config in the same process, which needs the Tesseract natives and
+ * traineddata; pass the URL of a running {@code --server} instead to test that.
+ */
+public class OcrServerLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String url = null;
+        int[] levels = {1, 2, 4, 8, 16};
+        int requestsPerLevel = 100;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--levels") && i + 1 < args.length) {
+                String[] parts = args[++i].split(",");
+                levels = new int[parts.length];
+                for (int j = 0; j < parts.length; j++) {
+                    levels[j] = Integer.parseInt(parts[j].trim());
+                }
+            } else if (args[i].equals("--requests") && i + 1 < args.length) {
+                requestsPerLevel = Integer.parseInt(args[++i]);
+            } else {
+                url = args[i];
+            }
+        }
+
+        OcrServer server = null;
+        if (url == null) {
+            server = OcrServer.fromConfig(new ConfigReader());
+            server.start(new InetSocketAddress("127.0.0.1", 0));
+            url = "http://127.0.0.1:" + server.getPort() + "/ocr";
+        }
+
+        try {
+            byte[] image = renderCapture();
+            HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+            // Warm up the engines and the JIT before measuring
+            run(client, url, image, levels[levels.length - 1], requestsPerLevel / 2);
+
+            System.out.printf("%-12s %-9s %-9s %-10s %-10s %-10s%n",
+                    "concurrency", "ok", "rejected", "req/s", "p50 ms", "p99 ms");
+            for (int level : levels) {
+                Result result = run(client, url, image, level, requestsPerLevel);
+                System.out.printf("%-12d %-9d %-9d %-10.1f %-10.1f %-10.1f%n", level, result.latencies.size(),
+                        result.rejected, result.latencies.size() / result.seconds,
+                        percentile(result.latencies, 0.50), percentile(result.latencies, 0.99));
+            }
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    private static Result run(HttpClient client, String url, byte[] image, int concurrency, int requests)
+            throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "image/png")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(image))
+                .build();
+        AtomicInteger remaining = new AtomicInteger(requests);
+        AtomicInteger rejected = new AtomicInteger();
+        List<Double> latencies = Collections.synchronizedList(new ArrayList<>());
+
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                futures.add(clients.submit(() -> {
+                    while (remaining.getAndDecrement() > 0) {
+                        long sent = System.nanoTime();
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() == 200) {
+                            latencies.add((System.nanoTime() - sent) / 1e6);
+                        } else if (response.statusCode() == 503) {
+                            rejected.incrementAndGet();
+                        } else {
+                            throw new IOException("HTTP " + response.statusCode() + ": " + response.body());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return new Result(new ArrayList<>(latencies), rejected.get(), (System.nanoTime() - start) / 1e9);
+    }
+
+    private static double percentile(List<Double> latencies, double fraction) {
+        if (latencies.isEmpty()) {
+            return 0;
+        }
+        List<Double> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return sorted.get((int) Math.min(sorted.size() - 1, Math.ceil(fraction * sorted.size()) - 1));
+    }
+
+    /**
+     * Renders a few lines of dark-theme editor text, roughly what a typical selection looks like.
+     */
+    private static byte[] renderCapture() throws IOException {
+        BufferedImage capture = new BufferedImage(800, 240, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = capture.createGraphics();
+        g.setColor(new Color(30, 30, 30));
+        g.fillRect(0, 0, capture.getWidth(), capture.getHeight());
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 16));
+        g.setColor(new Color(220, 220, 220));
+        for (int line = 0; line < 10; line++) {
+            g.drawString("The quick brown fox jumps over the lazy dog " + line, 10, 22 + line * 22);
+        }
+        g.dispose();
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(capture, "png", png);
+        return png.toByteArray();
+    }
+
+    private record Result(List<Double> latencies, int rejected, double seconds) {
+    }
+}
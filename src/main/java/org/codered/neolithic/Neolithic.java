@@ -1,9 +1,14 @@
 package org.codered.neolithic;
 
+import org.codered.neolithic.images.BatchConversionTool;
+import org.codered.neolithic.images.conversion.TesseractEnginePool;
+import org.codered.neolithic.metrics.MetricsReporter;
 import org.codered.neolithic.screenshot.WindowCaptureTool;
+import org.codered.neolithic.server.OcrServer;
 import org.codered.neolithic.utils.ConfigReader;
 
 import javax.swing.*;
+import java.util.Arrays;
 
 /**
  * Main class for the Neolithic AI Tool.
@@ -34,14 +39,31 @@ public class Neolithic {
     }
 
     /**
-     * Entry point of the application.
+     * Entry point of the application. With {@code --batch} as the first argument, converts a directory of images
+     * without starting the UI, see {@link BatchConversionTool}; with {@code --server}, serves OCR over HTTP instead,
+     * see {@link OcrServer}. In every mode the metrics are written to a log file at an interval, if enabled in the
+     * config.
      *
-     * @param args Command line arguments (not used).
+     * @param args Command line arguments.
      */
     public static void main(String[] args) {
+        MetricsReporter.fromConfig(getConfigReader());
+
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchConversionTool.run(Arrays.copyOfRange(args, 1, args.length), getConfigReader());
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            OcrServer.run(Arrays.copyOfRange(args, 1, args.length), getConfigReader());
+            return;
+        }
+
         // Initialize the Neolithic instance with a new JFrame
         new Neolithic(new JFrame("Neolithic AI Tool"));
 
+        // Load the OCR engines in the background so the first capture doesn't pay for it
+        warmUpOcrEngines();
+
         // Attempt to create and use a WindowCaptureTool instance
         try {
             new WindowCaptureTool();
@@ -50,6 +72,24 @@ public class Neolithic {
         }
     }
 
+    /**
+     * Fills the shared Tesseract engine pool on a background thread, if enabled in the config.
+     */
+    private static void warmUpOcrEngines() {
+        if (!configReader.getBoolean("ocr", "warmUpOnStartup", true)) {
+            return;
+        }
+        Thread warmUpThread = new Thread(() -> {
+            try {
+                TesseractEnginePool.fromConfig(configReader).warmUp();
+            } catch (Exception e) {
+                System.err.println("Error warming up OCR engines: " + e.getMessage());
+            }
+        }, "ocr-warm-up");
+        warmUpThread.setDaemon(true);
+        warmUpThread.start();
+    }
+
     /**
      * Gets the main frame of the application.
      *
@@ -59,7 +99,15 @@ public class Neolithic {
         return frame;
     }
 
-    public static ConfigReader getConfigReader() {
+    /**
+     * Gets the config reader, creating it if the application runs without the main frame.
+     *
+     * @return The config reader.
+     */
+    public static synchronized ConfigReader getConfigReader() {
+        if (configReader == null) {
+            configReader = new ConfigReader();
+        }
         return configReader;
     }
 }
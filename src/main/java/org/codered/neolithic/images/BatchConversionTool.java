@@ -0,0 +1,324 @@
+package org.codered.neolithic.images;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.codered.neolithic.images.conversion.TesseractEnginePool;
+import org.codered.neolithic.utils.ConfigReader;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Converts every image in a directory tree without the UI, for screenshots that are already on disk.
+ * <p>
+ * Files are decoded on a small pool of reader threads and then run through the same {@link CapturePipeline} as
+ * screen captures, so OCR runs on as many threads as there are Tesseract engines. {@code --workers} sets both the
+ * reader threads and the pipeline's refine threads, each refining with its own grammar checker, and defaults to the
+ * number of engines. At most {@code maxInFlight} files are decoded or converting at once, which bounds memory however
+ * large the directory is.
+ * <p>
+ * Each result is appended to a JSON Lines file as soon as its file is done, in completion order:
+ * {@code {"file": ..., "text": ..., "cached": ..., "stageMillis": {...}, "totalMillis": ...}}, or
+ * {@code {"file": ..., "error": ...}} for a file that couldn't be converted. With resume on, files that already have a
+ * result in the output are skipped, so a crashed run can be started again with the same arguments; failed files are
+ * tried again. Before the run, the output is rewritten with only the first successful line of each file, dropping
+ * the errors of the files about to be retried and any line cut short by the crash, so every file ends up with one line.
+ * <p>
+ * At the end, files per second and the latency of each stage are reported.
+ */
+public class BatchConversionTool implements AutoCloseable {
+    private static final String USAGE = "Usage: --batch <input directory> <output .jsonl> [--workers N] [--no-resume]";
+
+    private final CapturePipeline pipeline;
+    private final int maxInFlight;
+    private final ExecutorService readExecutor;
+
+    private final LongAdder converted = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final Map<String, List<Double>> stageMillis = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * @param pipeline    The pipeline files are converted in.
+     * @param readers     The number of threads decoding image files.
+     * @param maxInFlight The most files decoded or converting at once.
+     */
+    public BatchConversionTool(CapturePipeline pipeline, int readers, int maxInFlight) {
+        this.pipeline = pipeline;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.readExecutor = Executors.newFixedThreadPool(Math.max(1, readers), runnable -> {
+            Thread thread = new Thread(runnable, "batch-read-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs a batch conversion from the command line, see {@link #USAGE}.
+     *
+     * @param args         The arguments after {@code --batch}.
+     * @param configReader The config reader to build the pipeline from.
+     */
+    public static void run(String[] args, ConfigReader configReader) {
+        Path input = null;
+        Path output = null;
+        int workers = configReader.getInt("batch", "workers", 0);
+        boolean resume = configReader.getBoolean("batch", "resume", true);
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--workers") && i + 1 < args.length) {
+                try {
+                    workers = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    System.err.println(USAGE);
+                    return;
+                }
+            } else if (args[i].equals("--no-resume")) {
+                resume = false;
+            } else if (input == null) {
+                input = Path.of(args[i]);
+            } else if (output == null) {
+                output = Path.of(args[i]);
+            }
+        }
+        if (input == null || output == null || !Files.isDirectory(input)) {
+            System.err.println(USAGE);
+            return;
+        }
+
+        // By default keep every engine busy, with as many files again decoded and waiting for one, and refine as many
+        // files at once as are recognized
+        int engines = TesseractEnginePool.fromConfig(configReader).getSize();
+        int threads = workers > 0 ? workers : engines;
+        try (BatchConversionTool tool = new BatchConversionTool(
+                ImageConversionUtility.createCapturePipeline(configReader, threads), threads, 2 * threads + engines)) {
+            tool.convertDirectory(input, output, resume);
+        } catch (IOException e) {
+            System.err.println("Error: batch conversion failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Converts every readable image under a directory, appending the results to an output file.
+     *
+     * @param input  The directory to walk.
+     * @param output The JSON Lines output file.
+     * @param resume Whether to skip files the output already has a result for, rather than starting it over.
+     * @throws IOException          If the directory can't be walked or the output can't be written.
+     * @throws InterruptedException If interrupted while waiting for files to finish.
+     */
+    public void convertDirectory(Path input, Path output, boolean resume) throws IOException, InterruptedException {
+        if (output.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(output.toAbsolutePath().getParent());
+        }
+        List<Path> files = listImages(input);
+
+        try (RandomAccessFile out = new RandomAccessFile(output.toFile(), "rw")) {
+            Set<String> done = resume ? readCompleted(out) : new HashSet<>();
+            if (!resume) {
+                out.setLength(0);
+            }
+
+            Semaphore slots = new Semaphore(maxInFlight);
+            long start = System.nanoTime();
+            for (Path file : files) {
+                String name = input.relativize(file).toString().replace('\\', '/');
+                if (done.contains(name)) {
+                    skipped.increment();
+                    continue;
+                }
+                slots.acquire();
+                convertFile(file).whenComplete((result, error) -> {
+                    try {
+                        write(out, toJson(name, result, error));
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+            // Wait for the last files to be written
+            slots.acquire(maxInFlight);
+            report(System.nanoTime() - start);
+        }
+    }
+
+    private CompletableFuture<CaptureResult> convertFile(Path file) {
+        long start = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                BufferedImage image = ImageIO.read(file.toFile());
+                if (image == null) {
+                    throw new IOException("Not a readable image");
+                }
+                return image;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, readExecutor).thenCompose(image -> {
+            record("read", (System.nanoTime() - start) / 1e6);
+            return pipeline.submit(image, null).getResult();
+        });
+    }
+
+    private JsonObject toJson(String name, CaptureResult result, Throwable error) {
+        JsonObject json = new JsonObject();
+        json.addProperty("file", name);
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            json.addProperty("error", String.valueOf(cause.getMessage()));
+            failed.increment();
+            return json;
+        }
+
+        json.addProperty("text", result.text());
+        json.addProperty("cached", result.cached());
+        JsonObject stages = new JsonObject();
+        result.stageMillis().forEach((stage, millis) -> {
+            stages.addProperty(stage, millis);
+            record(stage, millis);
+        });
+        json.add("stageMillis", stages);
+        json.addProperty("totalMillis", result.totalMillis());
+        record("total", result.totalMillis());
+        converted.increment();
+        return json;
+    }
+
+    private static void write(RandomAccessFile out, JsonObject json) {
+        // Gson escapes line breaks inside strings, so a result is always exactly one line
+        byte[] line = (json + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (out) {
+            try {
+                out.seek(out.length());
+                out.write(line);
+            } catch (IOException e) {
+                System.err.println("Error: could not write batch result for " + json.get("file") + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the files the output already has a successful result for, and rewrites the output with just those results:
+     * error lines, repeated results and a trailing line left incomplete by a crash are dropped.
+     */
+    private static Set<String> readCompleted(RandomAccessFile out) throws IOException {
+        byte[] bytes = new byte[(int) Math.min(Integer.MAX_VALUE - 8, out.length())];
+        out.readFully(bytes);
+
+        Set<String> done = new HashSet<>();
+        // Kept lines only ever move towards the start, so they can be compacted in place
+        int kept = 0;
+        int start = 0;
+        for (int end = 0; end < bytes.length; end++) {
+            if (bytes[end] != '\n') {
+                continue;
+            }
+            try {
+                JsonObject json = JsonParser.parseString(new String(bytes, start, end - start, StandardCharsets.UTF_8))
+                        .getAsJsonObject();
+                if (!json.has("error") && done.add(json.get("file").getAsString())) {
+                    System.arraycopy(bytes, start, bytes, kept, end + 1 - start);
+                    kept += end + 1 - start;
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error: skipping a corrupt batch result at offset " + start);
+            }
+            start = end + 1;
+        }
+        if (kept != bytes.length) {
+            out.seek(0);
+            out.write(bytes, 0, kept);
+            out.setLength(kept);
+        }
+        return done;
+    }
+
+    private static List<Path> listImages(Path input) throws IOException {
+        Set<String> suffixes = new HashSet<>();
+        for (String suffix : ImageIO.getReaderFileSuffixes()) {
+            suffixes.add(suffix.toLowerCase(Locale.ROOT));
+        }
+        try (Stream<Path> paths = Files.walk(input)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        int dot = name.lastIndexOf('.');
+                        return dot > 0 && suffixes.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private void record(String stage, double millis) {
+        stageMillis.computeIfAbsent(stage, key -> Collections.synchronizedList(new ArrayList<>())).add(millis);
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long files = converted.sum() + failed.sum();
+        System.out.printf("Batch: %d converted, %d failed, %d skipped as already done, in %.1f s (%.2f files/s)%n",
+                converted.sum(), failed.sum(), skipped.sum(), seconds, seconds > 0 ? files / seconds : 0);
+        synchronized (stageMillis) {
+            stageMillis.forEach((stage, samples) -> {
+                List<Double> sorted;
+                synchronized (samples) {
+                    sorted = new ArrayList<>(samples);
+                }
+                Collections.sort(sorted);
+                double total = 0;
+                for (double sample : sorted) {
+                    total += sample;
+                }
+                System.out.printf("  %-10s n=%-6d mean=%8.1f ms  p50=%8.1f ms  p99=%8.1f ms  max=%8.1f ms%n",
+                        stage, sorted.size(), total / sorted.size(), percentile(sorted, 0.50),
+                        percentile(sorted, 0.99), sorted.get(sorted.size() - 1));
+            });
+        }
+    }
+
+    private static double percentile(List<Double> sorted, double fraction) {
+        return sorted.get((int) Math.min(sorted.size() - 1, Math.ceil(fraction * sorted.size()) - 1));
+    }
+
+    public long getConverted() {
+        return converted.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    @Override
+    public void close() {
+        readExecutor.shutdownNow();
+        pipeline.close();
+    }
+}
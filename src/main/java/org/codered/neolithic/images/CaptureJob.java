@@ -0,0 +1,90 @@
+package org.codered.neolithic.images;
+
+import javax.swing.SwingUtilities;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * A capture making its way through the {@link CaptureScheduler} and {@link CapturePipeline}. The job can be cancelled
+ * at any point: a queued job never starts, stages that haven't started yet are skipped, and the result of a stage
+ * that is already running is dropped.
+ */
+public class CaptureJob {
+    private final long submittedAt = System.nanoTime();
+    private final Map<String, Double> stageMillis = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final CompletableFuture<CaptureResult> result = new CompletableFuture<>();
+    private volatile boolean cancelled;
+
+    CaptureJob() {
+    }
+
+    /**
+     * Stops the job. Nothing is presented for a cancelled job.
+     */
+    public void cancel() {
+        cancelled = true;
+        result.cancel(false);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throws if the job was cancelled, so the next stage doesn't start.
+     */
+    void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Capture cancelled");
+        }
+    }
+
+    void recordStage(String stage, long nanos) {
+        stageMillis.put(stage, nanos / 1e6);
+    }
+
+    Map<String, Double> getStageMillis() {
+        synchronized (stageMillis) {
+            return new LinkedHashMap<>(stageMillis);
+        }
+    }
+
+    double getElapsedMillis() {
+        return (System.nanoTime() - submittedAt) / 1e6;
+    }
+
+    /**
+     * Gets the future that completes with the text once the refine stage has finished.
+     *
+     * @return The job's result.
+     */
+    public CompletableFuture<CaptureResult> getResult() {
+        return result;
+    }
+
+    /**
+     * The present stage: hands the result, or the error that stopped the job, to the UI on the event dispatch
+     * thread. Neither callback runs if the job was cancelled.
+     *
+     * @param onResult Called with the result.
+     * @param onError  Called with the cause if any stage failed.
+     */
+    public void present(Consumer<CaptureResult> onResult, Consumer<Throwable> onError) {
+        result.whenCompleteAsync((captureResult, error) -> {
+            if (cancelled) {
+                return;
+            }
+            if (error == null) {
+                onResult.accept(captureResult);
+            } else {
+                onError.accept(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            }
+        }, SwingUtilities::invokeLater);
+    }
+}
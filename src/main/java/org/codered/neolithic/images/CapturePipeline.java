@@ -0,0 +1,239 @@
+package org.codered.neolithic.images;
+
+import org.codered.neolithic.images.conversion.ImageConverter;
+import org.codered.neolithic.images.conversion.OcrResult;
+import org.codered.neolithic.images.conversion.OcrResultCache;
+import org.codered.neolithic.images.processing.ConversionRefiner;
+import org.codered.neolithic.images.processing.ImagePreprocessor;
+import org.codered.neolithic.metrics.Metrics;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns captures into text off the event dispatch thread, in stages that each run on their own executor:
+ * <ol>
+ *     <li>crop: copies the selected region out of the screen capture, and looks it up in the result cache</li>
+ *     <li>preprocess: cleans the capture up with the {@link ImagePreprocessor}</li>
+ *     <li>ocr: recognizes the text, on as many threads as there are OCR engines</li>
+ *     <li>refine: spell and grammar checks the words Tesseract was unsure about, by default on one thread</li>
+ *     <li>present: hands the result to the UI, see {@link CaptureJob#present}</li>
+ * </ol>
+ * Stages are linked with {@link CompletableFuture}s, so captures submitted back to back overlap: one can be refined
+ * while the next is being recognized. A cache hit skips straight to the present stage.
+ * <p>
+ * Every stage's duration is recorded in the {@code pipeline.<stage>} timer, and the captures waiting for and
+ * running on its executor in the {@code pipeline.<stage>.queued} and {@code pipeline.<stage>.active} gauges.
+ */
+public class CapturePipeline implements AutoCloseable {
+    private final ImagePreprocessor preprocessor;
+    private final ImageConverter recognizer;
+    private final ConversionRefiner refiner;
+    private final float confidenceThreshold;
+    private final OcrResultCache cache;
+
+    private final ExecutorService cropExecutor = newExecutor("crop", 1);
+    private final ExecutorService preprocessExecutor = newExecutor("preprocess", 1);
+    private final ExecutorService ocrExecutor;
+    private final ExecutorService refineExecutor;
+
+    /**
+     * @param preprocessor        The preprocessor, or null to hand captures to OCR as they are.
+     * @param recognizer          The converter whose {@link ImageConverter#recognizeWords} does the OCR.
+     * @param refiner             The refiner for the recognized words.
+     * @param confidenceThreshold Only words recognized with a lower confidence (0 to 100) are refined.
+     * @param cache               The result cache, or null to always convert.
+     * @param ocrThreads          The number of captures recognized at once; should match the OCR engine pool.
+     */
+    public CapturePipeline(ImagePreprocessor preprocessor, ImageConverter recognizer, ConversionRefiner refiner,
+                           float confidenceThreshold, OcrResultCache cache, int ocrThreads) {
+        this(preprocessor, recognizer, refiner, confidenceThreshold, cache, ocrThreads, 1);
+    }
+
+    /**
+     * @param preprocessor        The preprocessor, or null to hand captures to OCR as they are.
+     * @param recognizer          The converter whose {@link ImageConverter#recognizeWords} does the OCR.
+     * @param refiner             The refiner for the recognized words.
+     * @param confidenceThreshold Only words recognized with a lower confidence (0 to 100) are refined.
+     * @param cache               The result cache, or null to always convert.
+     * @param ocrThreads          The number of captures recognized at once; should match the OCR engine pool.
+     * @param refineThreads       The number of captures refined at once; should match the refiner's grammar checkers.
+     */
+    public CapturePipeline(ImagePreprocessor preprocessor, ImageConverter recognizer, ConversionRefiner refiner,
+                           float confidenceThreshold, OcrResultCache cache, int ocrThreads, int refineThreads) {
+        this.preprocessor = preprocessor;
+        this.recognizer = recognizer;
+        this.refiner = refiner;
+        this.confidenceThreshold = confidenceThreshold;
+        this.cache = cache;
+        this.ocrExecutor = newExecutor("ocr", Math.max(1, ocrThreads));
+        this.refineExecutor = newExecutor("refine", Math.max(1, refineThreads));
+    }
+
+    /**
+     * Starts converting a region of a screen capture.
+     *
+     * @param source The screen capture.
+     * @param region The part of the capture to convert, or null for all of it.
+     * @return The job, which completes once the text is refined.
+     */
+    public CaptureJob submit(BufferedImage source, Rectangle region) {
+        return submit(source, region, false);
+    }
+
+    /**
+     * Starts converting a region of a screen capture.
+     *
+     * @param source      The screen capture.
+     * @param region      The part of the capture to convert, or null for all of it.
+     * @param bypassCache Whether to convert the capture even if its text is cached, e.g. to refresh it.
+     * @return The job, which completes once the text is refined.
+     */
+    public CaptureJob submit(BufferedImage source, Rectangle region, boolean bypassCache) {
+        CaptureJob job = new CaptureJob();
+        run(job, source, region, bypassCache);
+        return job;
+    }
+
+    /**
+     * Runs an existing job through the stages, completing its result when the refine stage is done.
+     *
+     * @return A future that completes once no stage of the job is running any more. A cancelled job's result
+     * completes straight away, but a stage that was already running, e.g. OCR, carries on until it is done.
+     */
+    CompletableFuture<?> run(CaptureJob job, BufferedImage source, Rectangle region, boolean bypassCache) {
+        Capture capture = new Capture();
+
+        CompletableFuture<Capture> cropped = stage(CompletableFuture.completedFuture(capture), job, "crop",
+                cropExecutor, current -> {
+                    current.image = crop(source, region);
+                    if (cache != null) {
+                        current.key = cache.keyOf(current.image);
+                        current.text = bypassCache ? null : cache.get(current.key);
+                        current.cached = current.text != null;
+                    }
+                });
+        CompletableFuture<Capture> preprocessed = stage(cropped, job, "preprocess", preprocessExecutor, current -> {
+            if (preprocessor != null) {
+                current.processedImage = preprocessor.process(current.image);
+            }
+        });
+        CompletableFuture<Capture> recognized = stage(preprocessed, job, "ocr", ocrExecutor, current -> {
+            current.ocrResult = recognizer.recognizeWords(
+                    current.processedImage != null ? current.processedImage : current.image);
+        });
+        CompletableFuture<Capture> refined = stage(recognized, job, "refine", refineExecutor, current -> {
+            current.text = refiner.refineConversion(current.ocrResult, confidenceThreshold);
+            if (cache != null) {
+                cache.put(current.key, current.text);
+            }
+        });
+
+        return refined.whenComplete((current, error) -> {
+            if (error != null) {
+                job.getResult().completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            } else {
+                job.getResult().complete(new CaptureResult(current.image, current.text, current.cached,
+                        job.getStageMillis(), job.getElapsedMillis()));
+            }
+        });
+    }
+
+    /**
+     * Chains a stage onto the previous one. The stage is skipped once the job is cancelled, or once the text is
+     * known, i.e. after a cache hit.
+     */
+    private static CompletableFuture<Capture> stage(CompletableFuture<Capture> previous, CaptureJob job, String name,
+                                                    Executor executor, Stage stage) {
+        return previous.thenApplyAsync(capture -> {
+            job.checkCancelled();
+            if (capture.text == null) {
+                long start = System.nanoTime();
+                try {
+                    stage.run(capture);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+                long nanos = System.nanoTime() - start;
+                job.recordStage(name, nanos);
+                Metrics.timer("pipeline." + name).record(nanos);
+            }
+            return capture;
+        }, executor);
+    }
+
+    /**
+     * Copies the region out of the capture, so the full-screen image can be collected while the region is
+     * converted, and later stages see a compact raster.
+     */
+    private static BufferedImage crop(BufferedImage source, Rectangle region) {
+        if (region == null) {
+            return source;
+        }
+        Rectangle bounds = region.intersection(new Rectangle(source.getWidth(), source.getHeight()));
+        if (bounds.isEmpty()) {
+            throw new IllegalArgumentException("The selected region is outside the capture");
+        }
+        WritableRaster raster = source.getColorModel().createCompatibleWritableRaster(bounds.width, bounds.height);
+        source.getSubimage(bounds.x, bounds.y, bounds.width, bounds.height).copyData(raster);
+        return new BufferedImage(source.getColorModel(), raster, source.isAlphaPremultiplied(), null);
+    }
+
+    private static ExecutorService newExecutor(String stage, int threads) {
+        String name = "capture-" + stage;
+        AtomicInteger threadCount = new AtomicInteger();
+        // What Executors.newFixedThreadPool builds, typed so the queue can be reported
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable,
+                            threads == 1 ? name : name + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        Metrics.gauge("pipeline." + stage + ".queued", () -> executor.getQueue().size());
+        Metrics.gauge("pipeline." + stage + ".active", executor::getActiveCount);
+        return executor;
+    }
+
+    public OcrResultCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public void close() {
+        cropExecutor.shutdownNow();
+        preprocessExecutor.shutdownNow();
+        ocrExecutor.shutdownNow();
+        refineExecutor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        void run(Capture capture) throws Exception;
+    }
+
+    /**
+     * The state a capture carries from one stage to the next. Stages run one after another, and the futures
+     * linking them make each stage's writes visible to the next.
+     */
+    private static final class Capture {
+        private BufferedImage image;
+        private BufferedImage processedImage;
+        private OcrResultCache.Key key;
+        private OcrResult ocrResult;
+        private String text;
+        private boolean cached;
+    }
+}
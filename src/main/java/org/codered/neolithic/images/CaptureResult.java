@@ -0,0 +1,17 @@
+package org.codered.neolithic.images;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+
+/**
+ * The outcome of a {@link CaptureJob}.
+ *
+ * @param image        The cropped capture that was converted.
+ * @param text         The refined text.
+ * @param cached       Whether the text came from the OCR result cache rather than Tesseract.
+ * @param stageMillis  The time spent in each stage that ran, in milliseconds, in pipeline order.
+ * @param totalMillis  The time from submission until the text was ready, including time spent queued.
+ */
+public record CaptureResult(BufferedImage image, String text, boolean cached, Map<String, Double> stageMillis,
+                            double totalMillis) {
+}
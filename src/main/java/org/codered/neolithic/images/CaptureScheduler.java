@@ -0,0 +1,310 @@
+package org.codered.neolithic.images;
+
+import org.codered.neolithic.metrics.Metrics;
+import org.codered.neolithic.utils.ConfigReader;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which captures go into the {@link CapturePipeline} and when, so bursts of captures degrade predictably
+ * instead of piling up work and memory.
+ * <ul>
+ *     <li>At most {@code maxInFlight} jobs are in the pipeline at once; the rest wait in a queue ordered by priority,
+ *     then by age.</li>
+ *     <li>The queue is bounded. When it's full, the oldest job of the lowest priority is dropped to make room, so on
+ *     a tie the newer capture wins. Only if every queued job has a higher priority than the new one is the new job
+ *     dropped instead.</li>
+ *     <li>A capture of the same screen area as a queued one takes that job's place in the queue: the queued job
+ *     is cancelled and its slot converts the newer pixels under a job of its own, instead of queuing a second
+ *     conversion. Captures are matched by the screen area they were taken from if the caller knows it, otherwise by
+ *     their region of the source; captures with neither aren't matched, since already cropped captures of the same
+ *     size may show anything.</li>
+ *     <li>In latest-wins mode a new capture cancels every queued and in-flight job of the same priority, so only the
+ *     most recent capture is shown.</li>
+ * </ul>
+ * Dropped and superseded jobs are cancelled, so nothing is presented for them. A cancelled job keeps its place in
+ * flight until its running stage has ended, so {@code maxInFlight} bounds the OCR work actually running.
+ */
+public class CaptureScheduler {
+    public static final int DEFAULT_QUEUE_CAPACITY = 8;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 2;
+
+    public enum Priority {
+        LOW, NORMAL, HIGH
+    }
+
+    private final CapturePipeline pipeline;
+    private final int queueCapacity;
+    private final int maxInFlight;
+    private final boolean latestWins;
+
+    private final PriorityQueue<Pending> queue = new PriorityQueue<>(
+            Comparator.comparing((Pending pending) -> pending.priority).reversed()
+                    .thenComparingLong(pending -> pending.sequence));
+    private final Set<Pending> inFlight = new HashSet<>();
+    private long nextSequence;
+    private int maxQueueDepth;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder superseded = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private volatile long maxWaitNanos;
+
+    /**
+     * @param pipeline      The pipeline jobs are run in.
+     * @param queueCapacity The most jobs that wait for the pipeline at once.
+     * @param maxInFlight   The most jobs in the pipeline at once.
+     * @param latestWins    Whether a new capture cancels the queued and in-flight captures of the same priority.
+     */
+    public CaptureScheduler(CapturePipeline pipeline, int queueCapacity, int maxInFlight, boolean latestWins) {
+        this.pipeline = pipeline;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.latestWins = latestWins;
+        Metrics.gauge("scheduler.queued", this::getQueueDepth);
+        Metrics.gauge("scheduler.inFlight", this::getInFlight);
+    }
+
+    /**
+     * Builds a scheduler for a pipeline from the "scheduler" section of the config.
+     *
+     * @param pipeline     The pipeline jobs are run in.
+     * @param configReader The config reader to use.
+     * @return The configured scheduler.
+     */
+    public static CaptureScheduler fromConfig(CapturePipeline pipeline, ConfigReader configReader) {
+        return new CaptureScheduler(pipeline,
+                configReader.getInt("scheduler", "queueCapacity", DEFAULT_QUEUE_CAPACITY),
+                configReader.getInt("scheduler", "maxInFlight", DEFAULT_MAX_IN_FLIGHT),
+                configReader.getBoolean("scheduler", "latestWins", false));
+    }
+
+    public CaptureJob submit(BufferedImage source, Rectangle region, Priority priority) {
+        return submit(source, region, null, priority, false);
+    }
+
+    public CaptureJob submit(BufferedImage source, Rectangle region, Priority priority, boolean bypassCache) {
+        return submit(source, region, null, priority, bypassCache);
+    }
+
+    /**
+     * Queues a region of a screen capture for conversion.
+     *
+     * @param source      The screen capture.
+     * @param region      The part of the capture to convert, or null for all of it.
+     * @param screenArea  Where on the screen the capture was taken, or null if unknown. A queued capture of the same
+     *                    screen area is replaced by this one.
+     * @param priority    The job's priority.
+     * @param bypassCache Whether to convert the capture even if its text is cached.
+     * @return A new job for this capture; if the same area was already queued, that job is cancelled in its favor.
+     */
+    public synchronized CaptureJob submit(BufferedImage source, Rectangle region, Rectangle screenArea,
+                                          Priority priority, boolean bypassCache) {
+        submitted.increment();
+        Rectangle area = region != null ? region : new Rectangle(source.getWidth(), source.getHeight());
+        Rectangle location = screenArea != null ? screenArea : region;
+
+        if (latestWins) {
+            supersede(priority);
+        }
+
+        if (location != null) {
+            for (Pending pending : queue) {
+                if (location.equals(pending.location) && pending.bypassCache == bypassCache && !pending.job.isCancelled()) {
+                    // The newer pixels are the ones worth converting; the older capture's job is cancelled
+                    deduplicated.increment();
+                    pending.job.cancel();
+                    pending.job = new CaptureJob();
+                    pending.source = source;
+                    if (priority.compareTo(pending.priority) > 0) {
+                        queue.remove(pending);
+                        pending.priority = priority;
+                        queue.add(pending);
+                    }
+                    return pending.job;
+                }
+            }
+        }
+
+        Pending pending = new Pending(new CaptureJob(), source, location, area, priority, bypassCache,
+                nextSequence++);
+        if (queue.size() >= queueCapacity && !makeRoomFor(pending)) {
+            dropped.increment();
+            pending.job.cancel();
+            return pending.job;
+        }
+
+        queue.add(pending);
+        maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+        dispatch();
+        return pending.job;
+    }
+
+    /**
+     * Drops the oldest queued job of the lowest priority, unless that priority is higher than the new job's.
+     *
+     * @return Whether there is room for the new job now.
+     */
+    private boolean makeRoomFor(Pending newcomer) {
+        Pending victim = null;
+        for (Pending pending : queue) {
+            if (victim == null || pending.priority.compareTo(victim.priority) < 0
+                    || (pending.priority == victim.priority && pending.sequence < victim.sequence)) {
+                victim = pending;
+            }
+        }
+        if (victim == null || victim.priority.compareTo(newcomer.priority) > 0) {
+            return false;
+        }
+        queue.remove(victim);
+        dropped.increment();
+        victim.job.cancel();
+        return true;
+    }
+
+    private void supersede(Priority priority) {
+        List<Pending> stale = new ArrayList<>();
+        for (Pending pending : queue) {
+            if (pending.priority == priority) {
+                stale.add(pending);
+            }
+        }
+        queue.removeAll(stale);
+        for (Pending pending : inFlight) {
+            if (pending.priority == priority) {
+                stale.add(pending);
+            }
+        }
+        for (Pending pending : stale) {
+            if (!pending.job.isCancelled()) {
+                superseded.increment();
+                pending.job.cancel();
+            }
+        }
+    }
+
+    /**
+     * Moves queued jobs into the pipeline while there is room in flight.
+     */
+    private synchronized void dispatch() {
+        while (inFlight.size() < maxInFlight && !queue.isEmpty()) {
+            Pending pending = queue.poll();
+            if (pending.job.isCancelled()) {
+                continue;
+            }
+
+            long waitNanos = System.nanoTime() - pending.enqueuedAt;
+            started.increment();
+            totalWaitNanos.add(waitNanos);
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+
+            inFlight.add(pending);
+            CompletableFuture<?> stages = pipeline.run(pending.job, pending.source, pending.area, pending.bypassCache);
+            // The capture is only needed until the crop stage has copied the region
+            pending.source = null;
+            // Not the job's result: a cancelled job completes at once, while its running stage may take a while
+            stages.whenComplete((result, error) -> finished(pending));
+        }
+    }
+
+    private synchronized void finished(Pending pending) {
+        inFlight.remove(pending);
+        dispatch();
+    }
+
+    /**
+     * Gets the number of jobs waiting for the pipeline.
+     *
+     * @return The current queue depth.
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    public synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Gets the average time jobs waited in the queue before entering the pipeline.
+     *
+     * @return The average wait in milliseconds, or 0 if no job has started.
+     */
+    public double getAverageWaitMillis() {
+        long count = started.sum();
+        return count == 0 ? 0 : totalWaitNanos.sum() / 1e6 / count;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos / 1e6;
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getDeduplicated() {
+        return deduplicated.sum();
+    }
+
+    /**
+     * Gets the number of jobs cancelled because the queue was full.
+     *
+     * @return The dropped job count.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Gets the number of jobs cancelled by a newer capture in latest-wins mode.
+     *
+     * @return The superseded job count.
+     */
+    public long getSuperseded() {
+        return superseded.sum();
+    }
+
+    public CapturePipeline getPipeline() {
+        return pipeline;
+    }
+
+    private static final class Pending {
+        // The screen area, or else the region of the source, that identifies a capture of the same place
+        private final Rectangle location;
+        private final Rectangle area;
+        private final boolean bypassCache;
+        private final long sequence;
+        private final long enqueuedAt = System.nanoTime();
+        private CaptureJob job;
+        private BufferedImage source;
+        private Priority priority;
+
+        private Pending(CaptureJob job, BufferedImage source, Rectangle location, Rectangle area, Priority priority,
+                        boolean bypassCache, long sequence) {
+            this.job = job;
+            this.source = source;
+            this.location = location;
+            this.area = area;
+            this.priority = priority;
+            this.bypassCache = bypassCache;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -1,28 +1,215 @@
 package org.codered.neolithic.images;
 
 import org.codered.neolithic.Neolithic;
+import org.codered.neolithic.images.conversion.CachingImageConverter;
 import org.codered.neolithic.images.conversion.ImageConverter;
+import org.codered.neolithic.images.conversion.OcrResultCache;
+import org.codered.neolithic.images.conversion.PreprocessingImageConverter;
+import org.codered.neolithic.images.conversion.RegionImageConverter;
 import org.codered.neolithic.images.conversion.TesseractConverter;
+import org.codered.neolithic.images.conversion.TesseractEnginePool;
+import org.codered.neolithic.images.conversion.TiledImageConverter;
+import org.codered.neolithic.images.processing.ConversionRefiner;
+import org.codered.neolithic.images.processing.DictionarySpellCorrector;
+import org.codered.neolithic.images.processing.GrammarCorrector;
+import org.codered.neolithic.images.processing.ImagePreprocessor;
+import org.codered.neolithic.images.processing.TextRegionDetector;
 import org.codered.neolithic.images.ui.ConversionDialog;
+import org.codered.neolithic.utils.ConfigReader;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 public class ImageConversionUtility {
+    private static CaptureScheduler sharedScheduler;
+    private static ImageConverter sharedImageConverter;
+    private static OcrResultCache sharedResultCache;
 
-    private final ImageConverter imageConverter;
+    private final CaptureScheduler captureScheduler;
     private final ConversionDialog conversionDialog;
 
     public ImageConversionUtility() {
-        imageConverter = new TesseractConverter(".\\tessdata");
-        conversionDialog = new ConversionDialog(Neolithic.getInstance().getFrame());
+        captureScheduler = getSharedScheduler();
+        conversionDialog = new ConversionDialog(Neolithic.getInstance().getFrame(), captureScheduler);
     }
 
-    public void convertImageToText(BufferedImage bufferedImage) {
-        try {
-            String converted = imageConverter.convertToText(bufferedImage);
-            conversionDialog.displayConvertedText(converted, bufferedImage);
-        } catch (Exception e) {
-            conversionDialog.showErrorDialog("Error: " + e.getMessage());
+    ImageConversionUtility(CaptureScheduler captureScheduler, ConversionDialog conversionDialog) {
+        this.captureScheduler = captureScheduler;
+        this.conversionDialog = conversionDialog;
+    }
+
+    /**
+     * Gets the scheduler, and the pipeline behind it, shared by all captures, building them from the config on
+     * first use.
+     *
+     * @return The shared capture scheduler.
+     */
+    public static synchronized CaptureScheduler getSharedScheduler() {
+        if (sharedScheduler == null) {
+            ConfigReader configReader = Neolithic.getConfigReader();
+            sharedScheduler = CaptureScheduler.fromConfig(
+                    createCapturePipeline(configReader, getSharedResultCache(configReader)), configReader);
+        }
+        return sharedScheduler;
+    }
+
+    /**
+     * Gets the synchronous converter shared by all region watchers, building it from the config on first use. Each
+     * converter owns a tiling thread pool, so watchers share this one rather than building and leaking their own.
+     *
+     * @return The shared image converter.
+     */
+    public static synchronized ImageConverter getSharedImageConverter() {
+        if (sharedImageConverter == null) {
+            ConfigReader configReader = Neolithic.getConfigReader();
+            sharedImageConverter = createImageConverter(configReader, getSharedResultCache(configReader));
+        }
+        return sharedImageConverter;
+    }
+
+    /**
+     * Gets the result cache behind both shared converters, so they never open two disk caches on the same directory.
+     *
+     * @param configReader The config reader to use.
+     * @return The shared cache, or null if caching is disabled.
+     */
+    private static synchronized OcrResultCache getSharedResultCache(ConfigReader configReader) {
+        if (sharedResultCache == null && configReader.getBoolean("cache", "enabled", true)) {
+            sharedResultCache = OcrResultCache.fromConfig(configReader);
+        }
+        return sharedResultCache;
+    }
+
+    /**
+     * Builds the staged capture pipeline described by the "ocr", "preprocessing", "refiner" and "cache" sections of
+     * the config.
+     *
+     * @param configReader The config reader to use.
+     * @return A new capture pipeline.
+     */
+    public static CapturePipeline createCapturePipeline(ConfigReader configReader) {
+        return createCapturePipeline(configReader, 1);
+    }
+
+    /**
+     * Builds the staged capture pipeline described by the config, refining several captures at once. Each refine
+     * thread gets a grammar checker of its own rather than sharing the one the UI uses.
+     *
+     * @param configReader  The config reader to use.
+     * @param refineThreads The number of captures refined at once.
+     * @return A new capture pipeline.
+     */
+    public static CapturePipeline createCapturePipeline(ConfigReader configReader, int refineThreads) {
+        ConversionRefiner refiner = refineThreads > 1
+                ? new ConversionRefiner(DictionarySpellCorrector.getInstance(),
+                        new GrammarCorrector(Runtime.getRuntime().availableProcessors(), refineThreads))
+                : new ConversionRefiner();
+        return createCapturePipeline(configReader,
+                configReader.getBoolean("cache", "enabled", true) ? OcrResultCache.fromConfig(configReader) : null,
+                refiner, refineThreads);
+    }
+
+    private static CapturePipeline createCapturePipeline(ConfigReader configReader, OcrResultCache resultCache) {
+        return createCapturePipeline(configReader, resultCache, new ConversionRefiner(), 1);
+    }
+
+    private static CapturePipeline createCapturePipeline(ConfigReader configReader, OcrResultCache resultCache,
+                                                         ConversionRefiner refiner, int refineThreads) {
+        return new CapturePipeline(
+                configReader.getBoolean("preprocessing", "enabled", true) ? ImagePreprocessor.fromConfig(configReader) : null,
+                createRecognizer(configReader),
+                refiner,
+                configReader.getInt("refiner", "confidenceThreshold", (int) ConversionRefiner.DEFAULT_CONFIDENCE_THRESHOLD),
+                resultCache,
+                TesseractEnginePool.fromConfig(configReader).getSize(),
+                refineThreads);
+    }
+
+    /**
+     * Builds a synchronous OCR converter described by the "ocr", "preprocessing", "refiner" and "cache" sections of
+     * the config, for callers that want text in a single call rather than through the pipeline.
+     *
+     * @param configReader The config reader to use.
+     * @return A new image converter.
+     */
+    public static ImageConverter createImageConverter(ConfigReader configReader) {
+        return createImageConverter(configReader,
+                configReader.getBoolean("cache", "enabled", true) ? OcrResultCache.fromConfig(configReader) : null);
+    }
+
+    private static ImageConverter createImageConverter(ConfigReader configReader, OcrResultCache resultCache) {
+        ImageConverter converter = createRecognizer(configReader);
+
+        if (configReader.getBoolean("preprocessing", "enabled", true)) {
+            // Preprocess before tiling so blank rows between bands are exactly flat
+            converter = new PreprocessingImageConverter(ImagePreprocessor.fromConfig(configReader), converter);
+        }
+
+        if (resultCache != null) {
+            // Outermost, so a repeat capture skips preprocessing as well
+            converter = new CachingImageConverter(converter, resultCache);
         }
+        return converter;
+    }
+
+    /**
+     * Builds the OCR part of the converter: Tesseract, with tiling and text-region detection in front of it if
+     * enabled. Its {@link ImageConverter#recognizeWords} skips refinement, its {@code convertToText} doesn't.
+     *
+     * @param configReader The config reader to use.
+     * @return A new image converter.
+     */
+    public static ImageConverter createRecognizer(ConfigReader configReader) {
+        TesseractEnginePool enginePool = TesseractEnginePool.fromConfig(configReader);
+        ImageConverter converter = new TesseractConverter(enginePool,
+                configReader.getBoolean("ocr", "inMemory", true),
+                configReader.getInt("refiner", "confidenceThreshold", (int) ConversionRefiner.DEFAULT_CONFIDENCE_THRESHOLD));
+
+        if (configReader.getBoolean("ocr", "tiling", true)) {
+            // Tiles are converted one per engine, so the engine pool bounds how many run at once
+            converter = new TiledImageConverter(converter, enginePool.getSize(),
+                    configReader.getInt("ocr", "minTiledPixels", TiledImageConverter.DEFAULT_MIN_TILED_PIXELS));
+        }
+
+        if (configReader.getBoolean("ocr", "textRegions", true)) {
+            // Large regions are still tiled, but blank space and pictures never reach an engine
+            converter = new RegionImageConverter(new TextRegionDetector(configReader.getInt("ocr", "maxLineHeight",
+                    TextRegionDetector.DEFAULT_MAX_LINE_HEIGHT)), converter);
+        }
+        return converter;
+    }
+
+    public CaptureJob convertImageToText(BufferedImage bufferedImage) {
+        return convertImageToText(bufferedImage, null);
+    }
+
+    /**
+     * Queues a region of a screen capture for conversion and shows the text in the conversion dialog once it's
+     * ready. Returns straight away, so it can be called on the event dispatch thread.
+     *
+     * @param screenCapture The screen capture.
+     * @param region        The selected region, or null for the whole capture.
+     * @return The job, which can be cancelled.
+     */
+    public CaptureJob convertImageToText(BufferedImage screenCapture, Rectangle region) {
+        return present(captureScheduler.submit(screenCapture, region, CaptureScheduler.Priority.NORMAL));
+    }
+
+    /**
+     * Queues a capture of an area of the screen for conversion and shows the text in the conversion dialog once it's
+     * ready. If a capture of the same area is still queued, this one takes its place.
+     *
+     * @param capture    The captured area.
+     * @param screenArea Where on the screen the capture was taken.
+     * @return The job, which can be cancelled.
+     */
+    public CaptureJob convertScreenArea(BufferedImage capture, Rectangle screenArea) {
+        return present(captureScheduler.submit(capture, null, screenArea, CaptureScheduler.Priority.NORMAL, false));
+    }
+
+    private CaptureJob present(CaptureJob job) {
+        job.present(result -> conversionDialog.displayConvertedText(result.text(), result.image()),
+                error -> conversionDialog.showErrorDialog("Error: " + error.getMessage()));
+        return job;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,52 @@
+package org.codered.neolithic.images.conversion;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * An {@link ImageConverter} that answers repeat captures from an {@link OcrResultCache} and only hands new ones to
+ * the wrapped converter.
+ */
+public class CachingImageConverter implements ImageConverter {
+    private final ImageConverter delegate;
+    private final OcrResultCache cache;
+
+    public CachingImageConverter(ImageConverter delegate, OcrResultCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public String convertToText(BufferedImage image) throws Exception {
+        OcrResultCache.Key key = cache.keyOf(image);
+        String text = cache.get(key);
+        if (text == null) {
+            text = delegate.convertToText(image);
+            cache.put(key, text);
+        }
+        return text;
+    }
+
+    /**
+     * Converts an image with the wrapped converter even if it is cached, and replaces the cached text. Used when
+     * the user asks for the text to be refreshed.
+     */
+    @Override
+    public String reconvertToText(BufferedImage image) throws Exception {
+        String text = delegate.reconvertToText(image);
+        cache.put(cache.keyOf(image), text);
+        return text;
+    }
+
+    /**
+     * Recognizes an image without refining it. Only refined text is cached, so this always goes to the wrapped
+     * converter.
+     */
+    @Override
+    public OcrResult recognizeWords(BufferedImage image) throws Exception {
+        return delegate.recognizeWords(image);
+    }
+
+    public OcrResultCache getCache() {
+        return cache;
+    }
+}
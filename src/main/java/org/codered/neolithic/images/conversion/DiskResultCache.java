@@ -0,0 +1,114 @@
+package org.codered.neolithic.images.conversion;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The on-disk tier of {@link CachingImageConverter}: one UTF-8 text file per result, named after the image hash.
+ * <p>
+ * Reading an entry touches its modification time, so when the directory grows past its limit the least recently
+ * used tenth of the files is deleted. I/O errors are reported and treated as misses; the cache is only an
+ * optimization and never fails a conversion.
+ */
+final class DiskResultCache {
+    private static final String EXTENSION = ".txt";
+
+    private final Path directory;
+    private final int maxEntries;
+    private final AtomicInteger entryCount;
+
+    DiskResultCache(Path directory, int maxEntries) throws IOException {
+        this.directory = directory;
+        this.maxEntries = Math.max(1, maxEntries);
+        Files.createDirectories(directory);
+        this.entryCount = new AtomicInteger(listEntries().size());
+    }
+
+    String get(long key) {
+        Path file = pathFor(key);
+        try {
+            String text = Files.readString(file, StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return text;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Error: could not read cached OCR result " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores a result, deleting the least recently used entries if the directory is over its limit.
+     *
+     * @return The number of entries deleted to make room.
+     */
+    int put(long key, String text) {
+        Path file = pathFor(key);
+        try {
+            boolean existed = Files.exists(file);
+            // Write to a temp file first so a crash never leaves a truncated entry behind
+            Path temp = Files.createTempFile(directory, "entry", ".tmp");
+            Files.writeString(temp, text, StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (!existed && entryCount.incrementAndGet() > maxEntries) {
+                return prune();
+            }
+        } catch (IOException e) {
+            System.err.println("Error: could not write cached OCR result " + file + ": " + e.getMessage());
+        }
+        return 0;
+    }
+
+    private synchronized int prune() throws IOException {
+        List<Path> entries = listEntries();
+        if (entries.size() <= maxEntries) {
+            entryCount.set(entries.size());
+            return 0;
+        }
+
+        entries.sort(Comparator.comparingLong(DiskResultCache::lastModified));
+        int target = maxEntries - maxEntries / 10;
+        int deleted = 0;
+        for (int i = 0; i < entries.size() - target; i++) {
+            if (Files.deleteIfExists(entries.get(i))) {
+                deleted++;
+            }
+        }
+        entryCount.set(entries.size() - deleted);
+        return deleted;
+    }
+
+    private List<Path> listEntries() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(EXTENSION))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private Path pathFor(long key) {
+        return directory.resolve(String.format("%016x", key) + EXTENSION);
+    }
+
+    int size() {
+        return entryCount.get();
+    }
+}
@@ -0,0 +1,46 @@
+package org.codered.neolithic.images.conversion;
+
+import net.sourceforge.tess4j.ITessAPI;
+import org.codered.neolithic.utils.ConfigReader;
+
+/**
+ * Identifies a Tesseract engine configuration. Engines are only interchangeable when all of these match,
+ * so this is also the key under which engine pools are shared.
+ *
+ * @param dataPath    The tessdata directory the traineddata files are loaded from.
+ * @param language    The Tesseract language code, e.g. "eng".
+ * @param pageSegMode The page segmentation mode, one of {@link ITessAPI.TessPageSegMode}.
+ */
+public record EngineSettings(String dataPath, String language, int pageSegMode) {
+
+    public static final String DEFAULT_DATA_PATH = ".\\tessdata";
+    public static final String DEFAULT_LANGUAGE = "eng";
+    // The base API defaults to a single uniform block of text, which is what a selected screen area usually is
+    public static final int DEFAULT_PAGE_SEG_MODE = ITessAPI.TessPageSegMode.PSM_SINGLE_BLOCK;
+
+    /**
+     * Creates settings for the given data path using the default language and page segmentation mode.
+     *
+     * @param dataPath The tessdata directory.
+     * @return The engine settings.
+     */
+    public static EngineSettings of(String dataPath) {
+        return new EngineSettings(dataPath, DEFAULT_LANGUAGE, DEFAULT_PAGE_SEG_MODE);
+    }
+
+    /**
+     * Reads the engine settings from the "ocr" section of the config file.
+     *
+     * @param configReader The config reader to use, may be null in which case defaults are used.
+     * @return The engine settings.
+     */
+    public static EngineSettings fromConfig(ConfigReader configReader) {
+        if (configReader == null) {
+            return of(DEFAULT_DATA_PATH);
+        }
+        return new EngineSettings(
+                configReader.getString("ocr", "dataPath", DEFAULT_DATA_PATH),
+                configReader.getString("ocr", "language", DEFAULT_LANGUAGE),
+                configReader.getInt("ocr", "pageSegMode", DEFAULT_PAGE_SEG_MODE));
+    }
+}
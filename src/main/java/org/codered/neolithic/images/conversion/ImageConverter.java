@@ -1,7 +1,29 @@
 package org.codered.neolithic.images.conversion;
 
 import java.awt.image.BufferedImage;
+import java.util.List;
 
 public interface ImageConverter {
     String convertToText(BufferedImage image) throws Exception;
+
+    /**
+     * Converts an image again, bypassing any cached result, e.g. when the user asks for the text to be refreshed.
+     *
+     * @param image The image to convert.
+     * @return The converted text.
+     */
+    default String reconvertToText(BufferedImage image) throws Exception {
+        return convertToText(image);
+    }
+
+    /**
+     * Runs OCR on an image without refining the result, keeping each word's confidence where the converter knows it,
+     * so refinement can run as a separate step.
+     *
+     * @param image The image to recognize.
+     * @return The raw recognition result; converters that can't tell their words apart return the text alone.
+     */
+    default OcrResult recognizeWords(BufferedImage image) throws Exception {
+        return new OcrResult(convertToText(image), List.of());
+    }
 }
\ No newline at end of file
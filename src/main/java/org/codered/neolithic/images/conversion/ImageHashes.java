@@ -0,0 +1,129 @@
+package org.codered.neolithic.images.conversion;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Hashes used as cache keys for captures.
+ */
+final class ImageHashes {
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    // The perceptual hash compares each cell of a 9x8 grid with its right neighbour
+    private static final int GRID_WIDTH = 9;
+    private static final int GRID_HEIGHT = 8;
+    private static final int SAMPLES_PER_CELL = 8;
+
+    private ImageHashes() {
+    }
+
+    /**
+     * Hashes the exact pixel data of an image, reading int and byte rasters straight from their data buffers.
+     *
+     * @param image The image to hash.
+     * @return A 64-bit hash of the image's size and pixels.
+     */
+    static long contentHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long hash = mix(((long) width << 32) | height);
+
+        Raster raster = image.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        int x0 = raster.getMinX() - raster.getSampleModelTranslateX();
+        int y0 = raster.getMinY() - raster.getSampleModelTranslateY();
+
+        if (dataBuffer instanceof DataBufferInt intBuffer && dataBuffer.getNumBanks() == 1
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel packedModel) {
+            int[] data = intBuffer.getData();
+            int stride = packedModel.getScanlineStride();
+            int offset = packedModel.getOffset(x0, y0) + dataBuffer.getOffset();
+            for (int y = 0; y < height; y++) {
+                int start = offset + y * stride;
+                for (int i = start; i < start + width; i++) {
+                    hash = (hash ^ data[i]) * MULTIPLIER;
+                }
+            }
+        } else if (dataBuffer instanceof DataBufferByte byteBuffer && dataBuffer.getNumBanks() == 1
+                && raster.getSampleModel() instanceof ComponentSampleModel componentModel) {
+            byte[] data = byteBuffer.getData();
+            int stride = componentModel.getScanlineStride();
+            int pixelStride = componentModel.getPixelStride();
+            int rowLength = width * pixelStride;
+            int offset = y0 * stride + x0 * pixelStride + dataBuffer.getOffset();
+            for (int y = 0; y < height; y++) {
+                int start = offset + y * stride;
+                int end = start + rowLength;
+                int i = start;
+                for (; i + Long.BYTES <= end; i += Long.BYTES) {
+                    hash = (hash ^ (long) LONGS.get(data, i)) * MULTIPLIER;
+                }
+                for (; i < end; i++) {
+                    hash = (hash ^ data[i]) * MULTIPLIER;
+                }
+            }
+        } else {
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int pixel : row) {
+                    hash = (hash ^ pixel) * MULTIPLIER;
+                }
+            }
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Computes a difference hash: the image is reduced to a 9x8 grid of mean luminances, and each bit records whether
+     * a cell is brighter than its right neighbour. Captures that differ only by noise, compression or a slightly
+     * different crop get the same or a nearby hash.
+     *
+     * @param image The image to hash.
+     * @return A 64-bit perceptual hash, compared with {@link Long#bitCount} of the XOR.
+     */
+    static long perceptualHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] cells = new int[GRID_WIDTH * GRID_HEIGHT];
+        for (int cellY = 0; cellY < GRID_HEIGHT; cellY++) {
+            for (int cellX = 0; cellX < GRID_WIDTH; cellX++) {
+                int total = 0;
+                for (int sampleY = 0; sampleY < SAMPLES_PER_CELL; sampleY++) {
+                    int y = (int) (((cellY * SAMPLES_PER_CELL + sampleY + 0.5) * height) / (GRID_HEIGHT * SAMPLES_PER_CELL));
+                    for (int sampleX = 0; sampleX < SAMPLES_PER_CELL; sampleX++) {
+                        int x = (int) (((cellX * SAMPLES_PER_CELL + sampleX + 0.5) * width) / (GRID_WIDTH * SAMPLES_PER_CELL));
+                        int pixel = image.getRGB(x, y);
+                        total += (((pixel >> 16) & 0xFF) * 77 + ((pixel >> 8) & 0xFF) * 150 + (pixel & 0xFF) * 29) >> 8;
+                    }
+                }
+                cells[cellY * GRID_WIDTH + cellX] = total;
+            }
+        }
+
+        long hash = 0;
+        for (int cellY = 0; cellY < GRID_HEIGHT; cellY++) {
+            for (int cellX = 0; cellX < GRID_WIDTH - 1; cellX++) {
+                int index = cellY * GRID_WIDTH + cellX;
+                hash = (hash << 1) | (cells[index] > cells[index + 1] ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,76 @@
+package org.codered.neolithic.images.conversion;
+
+import net.sourceforge.tess4j.Word;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The output of one OCR pass: the recognized text plus each word with its bounding box and confidence.
+ */
+public class OcrResult {
+    private final String text;
+    private final List<Word> words;
+
+    public OcrResult(String text, List<Word> words) {
+        this.text = text;
+        this.words = List.copyOf(words);
+    }
+
+    /**
+     * Combines the results of separately recognized parts of an image, e.g. bands or text regions, in order. Empty
+     * texts are skipped and the rest are joined by newlines. Word bounding boxes stay relative to their part.
+     *
+     * @param results The results to combine.
+     * @return The combined result.
+     */
+    public static OcrResult join(List<OcrResult> results) {
+        StringBuilder text = new StringBuilder();
+        List<Word> words = new ArrayList<>();
+        for (OcrResult result : results) {
+            String partText = result.getText().trim();
+            if (!partText.isEmpty()) {
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(partText);
+            }
+            words.addAll(result.getWords());
+        }
+        return new OcrResult(text.toString(), words);
+    }
+
+    /**
+     * Gets the recognized text with Tesseract's line and paragraph breaks.
+     *
+     * @return The recognized text.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Gets the recognized words in reading order. Confidences range from 0 to 100.
+     *
+     * @return The recognized words.
+     */
+    public List<Word> getWords() {
+        return words;
+    }
+
+    /**
+     * Gets the mean word confidence, or 0 if nothing was recognized.
+     *
+     * @return The mean confidence from 0 to 100.
+     */
+    public float getMeanConfidence() {
+        if (words.isEmpty()) {
+            return 0;
+        }
+        float total = 0;
+        for (Word word : words) {
+            total += word.getConfidence();
+        }
+        return total / words.size();
+    }
+}
@@ -0,0 +1,231 @@
+package org.codered.neolithic.images.conversion;
+
+import org.codered.neolithic.utils.ConfigReader;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the text of captures that have been converted, so capturing the same window or dialog again can skip
+ * preprocessing, Tesseract and the refiner.
+ * <p>
+ * Entries are keyed by a hash of the exact pixel data and kept in a bounded LRU map, optionally backed by a
+ * {@link DiskResultCache} that survives restarts. With perceptual matching enabled, a capture that misses the exact
+ * key is also compared with the in-memory entries of the same size by difference hash, so captures that differ only
+ * by noise, a blinking caret or anti-aliasing hit as well. Perceptual matching can return the text of a capture with
+ * the same layout but different words, which is why it is off by default.
+ * <p>
+ * Caches built from the config mix a fingerprint of the "ocr", "preprocessing" and "refiner" sections into every
+ * key, so after a change to any of those settings the disk tier no longer serves text produced under the old ones.
+ * The stale files are never hit again and age out as the least recently used.
+ */
+public class OcrResultCache {
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final int DEFAULT_MAX_DISK_ENTRIES = 5000;
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private final int maxPerceptualDistance;
+    private final long settingsFingerprint;
+    private final DiskResultCache diskCache;
+    private final Map<Long, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder perceptualHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public OcrResultCache(int maxEntries) {
+        this(maxEntries, -1, null, 0);
+    }
+
+    /**
+     * @param maxEntries            The number of results kept in memory.
+     * @param maxPerceptualDistance The largest number of differing perceptual hash bits that still counts as a hit,
+     *                              or -1 to only match exact pixels.
+     * @param diskCache             The on-disk tier, or null to keep results in memory only.
+     * @param settingsFingerprint   A hash of the settings the results depend on, mixed into every key.
+     */
+    OcrResultCache(int maxEntries, int maxPerceptualDistance, DiskResultCache diskCache, long settingsFingerprint) {
+        this.maxPerceptualDistance = maxPerceptualDistance;
+        this.settingsFingerprint = settingsFingerprint;
+        this.diskCache = diskCache;
+        int capacity = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > capacity) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Builds the cache described by the "cache" section of the config.
+     *
+     * @param configReader The config reader to use.
+     * @return The configured cache.
+     */
+    public static OcrResultCache fromConfig(ConfigReader configReader) {
+        int maxPerceptualDistance = configReader.getBoolean("cache", "perceptual", false)
+                ? configReader.getInt("cache", "maxPerceptualDistance", 2) : -1;
+
+        DiskResultCache diskCache = null;
+        if (configReader.getBoolean("cache", "disk", false)) {
+            Path directory = Path.of(configReader.getString("cache", "directory", "ocr-cache"));
+            try {
+                diskCache = new DiskResultCache(directory,
+                        configReader.getInt("cache", "maxDiskEntries", DEFAULT_MAX_DISK_ENTRIES));
+            } catch (IOException e) {
+                System.err.println("Error: could not open the OCR cache directory " + directory + ": " + e.getMessage());
+            }
+        }
+        return new OcrResultCache(configReader.getInt("cache", "maxEntries", DEFAULT_MAX_ENTRIES),
+                maxPerceptualDistance, diskCache, settingsFingerprint(configReader));
+    }
+
+    /**
+     * Hashes the config sections that decide what text a capture converts to.
+     *
+     * @param configReader The config reader to use.
+     * @return A 64-bit hash of the "ocr", "preprocessing" and "refiner" sections.
+     */
+    static long settingsFingerprint(ConfigReader configReader) {
+        String settings = configReader.getSectionJson("ocr") + configReader.getSectionJson("preprocessing")
+                + configReader.getSectionJson("refiner");
+        long hash = settings.length();
+        for (int i = 0; i < settings.length(); i++) {
+            hash = (hash ^ settings.charAt(i)) * MULTIPLIER;
+        }
+        return hash;
+    }
+
+    /**
+     * Hashes an image for {@link #get(Key)} and {@link #put(Key, String)}, so a miss and the following store only
+     * read the pixels once.
+     *
+     * @param image The image to hash.
+     * @return The image's cache key.
+     */
+    public Key keyOf(BufferedImage image) {
+        return new Key(ImageHashes.contentHash(image) ^ settingsFingerprint,
+                maxPerceptualDistance >= 0 ? ImageHashes.perceptualHash(image) : 0,
+                image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Looks up the text of an image, first in memory and then on disk.
+     *
+     * @param key The image's key.
+     * @return The cached text, or null on a miss.
+     */
+    public String get(Key key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key.hash());
+            if (entry != null) {
+                hits.increment();
+                return entry.text();
+            }
+            if (maxPerceptualDistance >= 0) {
+                for (Map.Entry<Long, Entry> candidate : entries.entrySet()) {
+                    Key candidateKey = candidate.getValue().key();
+                    int distance = Long.bitCount(candidateKey.perceptualHash() ^ key.perceptualHash());
+                    if (candidateKey.width() == key.width() && candidateKey.height() == key.height()
+                            && distance <= maxPerceptualDistance) {
+                        perceptualHits.increment();
+                        // Touch the entry so it counts as recently used
+                        return entries.get(candidate.getKey()).text();
+                    }
+                }
+            }
+        }
+
+        if (diskCache != null) {
+            String text = diskCache.get(key.hash());
+            if (text != null) {
+                diskHits.increment();
+                synchronized (entries) {
+                    entries.put(key.hash(), new Entry(key, text));
+                }
+                return text;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores the text of an image in memory and, if enabled, on disk.
+     *
+     * @param key  The image's key.
+     * @param text The converted text.
+     */
+    public void put(Key key, String text) {
+        synchronized (entries) {
+            entries.put(key.hash(), new Entry(key, text));
+        }
+        if (diskCache != null) {
+            evictions.add(diskCache.put(key.hash(), text));
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Gets the number of lookups answered from memory, exactly or perceptually, or from disk.
+     *
+     * @return The total hit count.
+     */
+    public long getHits() {
+        return hits.sum() + perceptualHits.sum() + diskHits.sum();
+    }
+
+    public long getPerceptualHits() {
+        return perceptualHits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of entries dropped from memory to stay within the size limit, plus the number deleted from
+     * disk for the same reason.
+     *
+     * @return The total eviction count.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Identifies a capture: the hash of its exact pixels combined with the settings fingerprint, its perceptual hash
+     * if perceptual matching is enabled, and its size.
+     */
+    public record Key(long hash, long perceptualHash, int width, int height) {
+    }
+
+    private record Entry(Key key, String text) {
+    }
+}
@@ -0,0 +1,171 @@
+package org.codered.neolithic.images.conversion;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.nio.ByteBuffer;
+import java.util.function.IntFunction;
+
+/**
+ * The raw pixels of a {@link BufferedImage} laid out the way {@code TessBaseAPISetImage} expects them:
+ * rows of 8-bit gray or 24-bit packed pixels.
+ * <p>
+ * Byte rasters whose layout already matches are handed over as-is, straight from their {@link DataBuffer}.
+ * Everything else, including the 32-bit packed images produced by {@link java.awt.Robot}, is converted to 8-bit gray
+ * into a scratch buffer supplied by the caller, so repeated conversions reuse the same native memory.
+ */
+final class PixelBuffer {
+    // Integer luminance weights (ITU-R BT.601) scaled by 256
+    private static final int RED_WEIGHT = 77;
+    private static final int GREEN_WEIGHT = 150;
+    private static final int BLUE_WEIGHT = 29;
+
+    private final ByteBuffer data;
+    private final int width;
+    private final int height;
+    private final int bytesPerPixel;
+    private final int bytesPerLine;
+
+    private PixelBuffer(ByteBuffer data, int width, int height, int bytesPerPixel, int bytesPerLine) {
+        this.data = data;
+        this.width = width;
+        this.height = height;
+        this.bytesPerPixel = bytesPerPixel;
+        this.bytesPerLine = bytesPerLine;
+    }
+
+    /**
+     * Builds a pixel buffer for an image.
+     *
+     * @param image   The image to read.
+     * @param scratch Supplies a direct buffer with at least the requested capacity, used when the pixels can't be
+     *                handed over as-is.
+     * @return The pixel buffer.
+     */
+    static PixelBuffer of(BufferedImage image, IntFunction<ByteBuffer> scratch) {
+        Raster raster = image.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+
+        if (dataBuffer instanceof DataBufferByte byteBuffer && sampleModel instanceof ComponentSampleModel componentModel
+                && dataBuffer.getNumBanks() == 1 && isSupportedByteLayout(image, componentModel)) {
+            return ofBytes(raster, byteBuffer, componentModel);
+        }
+        if (dataBuffer instanceof DataBufferInt intBuffer && sampleModel instanceof SinglePixelPackedSampleModel packedModel
+                && image.getColorModel().getNumColorComponents() == 3) {
+            return ofPackedInts(raster, intBuffer, packedModel, scratch);
+        }
+        return ofAnyImage(image, scratch);
+    }
+
+    private static boolean isSupportedByteLayout(BufferedImage image, ComponentSampleModel componentModel) {
+        int type = image.getType();
+        return (type == BufferedImage.TYPE_BYTE_GRAY && componentModel.getPixelStride() == 1)
+                // Tesseract reads three bytes as RGB; for BGR rasters this only changes how channels are weighted
+                // when it converts to gray, so the bytes are passed without reordering
+                || (type == BufferedImage.TYPE_3BYTE_BGR && componentModel.getPixelStride() == 3);
+    }
+
+    private static PixelBuffer ofBytes(Raster raster, DataBufferByte byteBuffer, ComponentSampleModel componentModel) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int pixelStride = componentModel.getPixelStride();
+        int scanlineStride = componentModel.getScanlineStride();
+        int offset = firstPixelOffset(raster, byteBuffer, componentModel);
+        int length = (height - 1) * scanlineStride + width * pixelStride;
+
+        // JNA passes the array of a heap buffer from its position on, so even a sub-image sharing its parent's
+        // array is handed to Tesseract without copying
+        ByteBuffer buffer = ByteBuffer.wrap(byteBuffer.getData(), offset, length);
+        return new PixelBuffer(buffer, width, height, pixelStride, scanlineStride);
+    }
+
+    private static PixelBuffer ofPackedInts(Raster raster, DataBufferInt intBuffer, SinglePixelPackedSampleModel packedModel,
+                                            IntFunction<ByteBuffer> scratch) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int scanlineStride = packedModel.getScanlineStride();
+        int offset = firstPixelOffset(raster, intBuffer, packedModel);
+        int[] masks = packedModel.getBitMasks();
+        int[] shifts = packedModel.getBitOffsets();
+        int[] pixels = intBuffer.getData();
+
+        ByteBuffer buffer = scratch.apply(width * height);
+        byte[] row = new byte[width];
+        for (int y = 0; y < height; y++) {
+            int index = offset + y * scanlineStride;
+            for (int x = 0; x < width; x++, index++) {
+                int pixel = pixels[index];
+                int red = (pixel & masks[0]) >>> shifts[0];
+                int green = (pixel & masks[1]) >>> shifts[1];
+                int blue = (pixel & masks[2]) >>> shifts[2];
+                row[x] = (byte) ((red * RED_WEIGHT + green * GREEN_WEIGHT + blue * BLUE_WEIGHT) >> 8);
+            }
+            buffer.put(row);
+        }
+        buffer.flip();
+        return new PixelBuffer(buffer, width, height, 1, width);
+    }
+
+    private static PixelBuffer ofAnyImage(BufferedImage image, IntFunction<ByteBuffer> scratch) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        ByteBuffer buffer = scratch.apply(width * height);
+        int[] argbRow = new int[width];
+        byte[] row = new byte[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, argbRow, 0, width);
+            for (int x = 0; x < width; x++) {
+                int pixel = argbRow[x];
+                row[x] = (byte) ((((pixel >> 16) & 0xFF) * RED_WEIGHT
+                        + ((pixel >> 8) & 0xFF) * GREEN_WEIGHT
+                        + (pixel & 0xFF) * BLUE_WEIGHT) >> 8);
+            }
+            buffer.put(row);
+        }
+        buffer.flip();
+        return new PixelBuffer(buffer, width, height, 1, width);
+    }
+
+    /**
+     * Finds the array index of the top-left pixel, which is non-zero for sub-images created with getSubimage.
+     */
+    private static int firstPixelOffset(Raster raster, DataBuffer dataBuffer, SampleModel sampleModel) {
+        int x = raster.getMinX() - raster.getSampleModelTranslateX();
+        int y = raster.getMinY() - raster.getSampleModelTranslateY();
+        int offset;
+        if (sampleModel instanceof ComponentSampleModel componentModel) {
+            // Not getOffset(x, y): that points at band 0, which is the last byte of a BGR pixel
+            offset = y * componentModel.getScanlineStride() + x * componentModel.getPixelStride();
+        } else {
+            offset = ((SinglePixelPackedSampleModel) sampleModel).getOffset(x, y);
+        }
+        return offset + dataBuffer.getOffset();
+    }
+
+    ByteBuffer getData() {
+        return data;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    int getBytesPerPixel() {
+        return bytesPerPixel;
+    }
+
+    int getBytesPerLine() {
+        return bytesPerLine;
+    }
+}
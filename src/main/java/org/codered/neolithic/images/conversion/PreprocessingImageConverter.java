@@ -0,0 +1,32 @@
+package org.codered.neolithic.images.conversion;
+
+import org.codered.neolithic.images.processing.ImagePreprocessor;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * An {@link ImageConverter} that cleans images up with an {@link ImagePreprocessor} before handing them on.
+ */
+public class PreprocessingImageConverter implements ImageConverter {
+    private final ImagePreprocessor preprocessor;
+    private final ImageConverter delegate;
+
+    public PreprocessingImageConverter(ImagePreprocessor preprocessor, ImageConverter delegate) {
+        this.preprocessor = preprocessor;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String convertToText(BufferedImage image) throws Exception {
+        return delegate.convertToText(preprocessor.process(image));
+    }
+
+    @Override
+    public OcrResult recognizeWords(BufferedImage image) throws Exception {
+        return delegate.recognizeWords(preprocessor.process(image));
+    }
+
+    public ImagePreprocessor getPreprocessor() {
+        return preprocessor;
+    }
+}
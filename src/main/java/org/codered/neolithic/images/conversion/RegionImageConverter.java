@@ -0,0 +1,75 @@
+package org.codered.neolithic.images.conversion;
+
+import org.codered.neolithic.images.processing.TextRegionDetector;
+import org.codered.neolithic.metrics.Counter;
+import org.codered.neolithic.metrics.Metrics;
+import org.codered.neolithic.metrics.StageTimer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link ImageConverter} that only hands the text regions of an image to the wrapped converter, found with a
+ * {@link TextRegionDetector}. Blank captures return an empty string without reaching Tesseract at all, and a capture
+ * that is one region is passed on cropped. Regions are converted top to bottom and their text is joined by newlines.
+ * Detection is timed by {@code ocr.regions.detect}, and the {@code ocr.regions.blankImages} and {@code ocr.regions.pixelsSkipped} counters show how much OCR the detector
+ * saves.
+ */
+public class RegionImageConverter implements ImageConverter {
+    private static final StageTimer DETECT_TIMER = Metrics.timer("ocr.regions.detect");
+    private static final Counter BLANK_IMAGES_COUNTER = Metrics.counter("ocr.regions.blankImages");
+    private static final Counter PIXELS_SKIPPED_COUNTER = Metrics.counter("ocr.regions.pixelsSkipped");
+
+    private final TextRegionDetector detector;
+    private final ImageConverter delegate;
+
+    public RegionImageConverter(TextRegionDetector detector, ImageConverter delegate) {
+        this.detector = detector;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String convertToText(BufferedImage image) throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (BufferedImage region : cropToRegions(image)) {
+            String regionText = delegate.convertToText(region).trim();
+            if (!regionText.isEmpty()) {
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(regionText);
+            }
+        }
+        return text.toString();
+    }
+
+    @Override
+    public OcrResult recognizeWords(BufferedImage image) throws Exception {
+        List<OcrResult> results = new ArrayList<>();
+        for (BufferedImage region : cropToRegions(image)) {
+            results.add(delegate.recognizeWords(region));
+        }
+        return OcrResult.join(results);
+    }
+
+    private List<BufferedImage> cropToRegions(BufferedImage image) {
+        long start = DETECT_TIMER.start();
+        List<Rectangle> regions = detector.detect(image);
+        DETECT_TIMER.stop(start);
+        if (regions.isEmpty()) {
+            BLANK_IMAGES_COUNTER.increment();
+        }
+
+        long pixelsSkipped = (long) image.getWidth() * image.getHeight();
+        List<BufferedImage> crops = new ArrayList<>(regions.size());
+        for (Rectangle region : regions) {
+            pixelsSkipped -= (long) region.width * region.height;
+            // Sub-images share the capture's raster, so cropping doesn't copy any pixels
+            crops.add(image.getSubimage(region.x, region.y, region.width, region.height));
+        }
+        PIXELS_SKIPPED_COUNTER.add(pixelsSkipped);
+        return crops;
+    }
+}
@@ -1,9 +1,9 @@
 package org.codered.neolithic.images.conversion;
 
-import net.sourceforge.tess4j.ITesseract;
-import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
 import org.codered.neolithic.images.processing.ConversionRefiner;
+import org.codered.neolithic.metrics.Metrics;
+import org.codered.neolithic.metrics.StageTimer;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -11,23 +11,87 @@ import java.io.File;
 import java.io.IOException;
 
 public class TesseractConverter implements ImageConverter {
-    private final ITesseract tesseract;
+    private static final StageTimer RECOGNIZE_TIMER = Metrics.timer("ocr.recognize");
+    private static final StageTimer PNG_ENCODE_TIMER = Metrics.timer("ocr.pngEncode");
+
+    private final TesseractEnginePool enginePool;
+    private final boolean inMemory;
+    private final float confidenceThreshold;
 
     public TesseractConverter(String dataPath) {
-        tesseract = new Tesseract();
-        tesseract.setDatapath(dataPath);
+        this(TesseractEnginePool.forSettings(EngineSettings.of(dataPath), TesseractEnginePool.DEFAULT_POOL_SIZE));
+    }
+
+    public TesseractConverter(TesseractEnginePool enginePool) {
+        this(enginePool, true);
+    }
+
+    /**
+     * @param enginePool The pool to check engines out of.
+     * @param inMemory   Whether to hand the image's pixels straight to the engine, or round-trip it through a
+     *                   temporary PNG file.
+     */
+    public TesseractConverter(TesseractEnginePool enginePool, boolean inMemory) {
+        this(enginePool, inMemory, ConversionRefiner.DEFAULT_CONFIDENCE_THRESHOLD);
+    }
+
+    /**
+     * @param enginePool          The pool to check engines out of.
+     * @param inMemory            Whether to hand the image's pixels straight to the engine, or round-trip it through
+     *                            a temporary PNG file.
+     * @param confidenceThreshold Only words recognized with a lower confidence (0 to 100) are refined.
+     */
+    public TesseractConverter(TesseractEnginePool enginePool, boolean inMemory, float confidenceThreshold) {
+        this.enginePool = enginePool;
+        this.inMemory = inMemory;
+        this.confidenceThreshold = confidenceThreshold;
     }
 
     @Override
     public String convertToText(BufferedImage image) throws TesseractException, IOException {
-        File tempFile = File.createTempFile("image", ".png");
-        ImageIO.write(image, "png", tempFile);
+        return new ConversionRefiner().refineConversion(recognizeWords(image), confidenceThreshold);
+    }
+
+    /**
+     * Runs OCR on an image without refining the result.
+     *
+     * @param image The image to recognize.
+     * @return The raw text recognized by Tesseract.
+     * @throws TesseractException If recognition failed.
+     * @throws IOException        If the temporary image file could not be written.
+     */
+    public String recognize(BufferedImage image) throws TesseractException, IOException {
+        return recognizeWords(image).getText();
+    }
 
+    /**
+     * Runs OCR on an image without refining the result, keeping each word's bounding box and confidence.
+     *
+     * @param image The image to recognize.
+     * @return The raw text and words recognized by Tesseract.
+     * @throws TesseractException If recognition failed.
+     * @throws IOException        If the temporary image file could not be written.
+     */
+    @Override
+    public OcrResult recognizeWords(BufferedImage image) throws TesseractException, IOException {
+        long start = RECOGNIZE_TIMER.start();
         try {
-            String result = tesseract.doOCR(tempFile);
-            return new ConversionRefiner().refineConversion(result);
+            if (inMemory) {
+                return enginePool.execute(engine -> engine.recognizeWords(image));
+            }
+
+            long encodeStart = PNG_ENCODE_TIMER.start();
+            File tempFile = File.createTempFile("image", ".png");
+            ImageIO.write(image, "png", tempFile);
+            PNG_ENCODE_TIMER.stop(encodeStart);
+
+            try {
+                return enginePool.execute(engine -> engine.recognizeWords(tempFile));
+            } finally {
+                tempFile.delete();
+            }
         } finally {
-            tempFile.delete();
+            RECOGNIZE_TIMER.stop(start);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,190 @@
+package org.codered.neolithic.images.conversion;
+
+import com.sun.jna.Pointer;
+import net.sourceforge.lept4j.Leptonica1;
+import net.sourceforge.lept4j.Pix;
+import net.sourceforge.lept4j.util.LeptUtils;
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.TessAPI;
+import net.sourceforge.tess4j.TesseractException;
+import net.sourceforge.tess4j.Word;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single native Tesseract instance with its traineddata already loaded.
+ * <p>
+ * {@link net.sourceforge.tess4j.Tesseract} initializes and tears down the native API on every call, which means
+ * the language data is loaded from disk for every image. This class keeps one initialized API handle alive so it
+ * can be reused across conversions. An engine is not thread-safe; use it through a {@link TesseractEnginePool}.
+ */
+public final class TesseractEngine implements AutoCloseable {
+    private final TessAPI api = TessAPI.INSTANCE;
+    private final ITessAPI.TessBaseAPI handle;
+    private final EngineSettings settings;
+    private ByteBuffer scratchBuffer;
+    private boolean closed;
+
+    /**
+     * Creates the native API and loads the traineddata for the given settings.
+     *
+     * @param settings The engine settings.
+     * @throws TesseractException If the language data could not be loaded.
+     */
+    TesseractEngine(EngineSettings settings) throws TesseractException {
+        this.settings = settings;
+        this.handle = api.TessBaseAPICreate();
+        if (api.TessBaseAPIInit3(handle, settings.dataPath(), settings.language()) != 0) {
+            api.TessBaseAPIDelete(handle);
+            throw new TesseractException("Could not initialize Tesseract for language '" + settings.language()
+                    + "' from " + settings.dataPath());
+        }
+        api.TessBaseAPISetPageSegMode(handle, settings.pageSegMode());
+    }
+
+    /**
+     * Recognizes the text in an image by handing its pixels straight to the engine, without encoding it first.
+     *
+     * @param image The image to recognize.
+     * @return The recognized text.
+     * @throws TesseractException If the image could not be recognized.
+     */
+    public String recognize(BufferedImage image) throws TesseractException {
+        return recognizeWords(image).getText();
+    }
+
+    /**
+     * Recognizes the text in an image file.
+     *
+     * @param imageFile The image file to read.
+     * @return The recognized text.
+     * @throws TesseractException If the image could not be read or recognized.
+     */
+    public String recognize(File imageFile) throws TesseractException {
+        return recognizeWords(imageFile).getText();
+    }
+
+    /**
+     * Recognizes an image, handing its pixels straight to the engine, and reports every word with its bounding box
+     * and confidence.
+     *
+     * @param image The image to recognize.
+     * @return The recognized text and words.
+     * @throws TesseractException If the image could not be recognized.
+     */
+    public OcrResult recognizeWords(BufferedImage image) throws TesseractException {
+        PixelBuffer pixels = PixelBuffer.of(image, this::scratchBuffer);
+        try {
+            api.TessBaseAPISetImage(handle, pixels.getData(), pixels.getWidth(), pixels.getHeight(),
+                    pixels.getBytesPerPixel(), pixels.getBytesPerLine());
+            return readResult();
+        } finally {
+            api.TessBaseAPIClear(handle);
+        }
+    }
+
+    /**
+     * Recognizes an image file and reports every word with its bounding box and confidence.
+     *
+     * @param imageFile The image file to read.
+     * @return The recognized text and words.
+     * @throws TesseractException If the image could not be read or recognized.
+     */
+    public OcrResult recognizeWords(File imageFile) throws TesseractException {
+        Pix pix = Leptonica1.pixRead(imageFile.getPath());
+        if (pix == null) {
+            throw new TesseractException("Could not read image " + imageFile.getPath());
+        }
+
+        try {
+            api.TessBaseAPISetImage2(handle, pix);
+            return readResult();
+        } finally {
+            api.TessBaseAPIClear(handle);
+            LeptUtils.disposePix(pix);
+        }
+    }
+
+    private OcrResult readResult() throws TesseractException {
+        if (api.TessBaseAPIRecognize(handle, null) != 0) {
+            throw new TesseractException("Tesseract could not recognize the image.");
+        }
+        // Both reads below use the recognition results above rather than recognizing again
+        return new OcrResult(readText(), readWords());
+    }
+
+    private String readText() throws TesseractException {
+        Pointer text = api.TessBaseAPIGetUTF8Text(handle);
+        if (text == null) {
+            throw new TesseractException("Tesseract could not recognize the image.");
+        }
+        try {
+            return text.getString(0, "UTF-8");
+        } finally {
+            api.TessDeleteText(text);
+        }
+    }
+
+    private List<Word> readWords() {
+        List<Word> words = new ArrayList<>();
+        ITessAPI.TessResultIterator resultIterator = api.TessBaseAPIGetIterator(handle);
+        if (resultIterator == null) {
+            return words;
+        }
+
+        int level = ITessAPI.TessPageIteratorLevel.RIL_WORD;
+        ITessAPI.TessPageIterator pageIterator = api.TessResultIteratorGetPageIterator(resultIterator);
+        IntBuffer left = IntBuffer.allocate(1);
+        IntBuffer top = IntBuffer.allocate(1);
+        IntBuffer right = IntBuffer.allocate(1);
+        IntBuffer bottom = IntBuffer.allocate(1);
+        try {
+            do {
+                Pointer wordText = api.TessResultIteratorGetUTF8Text(resultIterator, level);
+                if (wordText == null) {
+                    continue;
+                }
+                String text = wordText.getString(0, "UTF-8");
+                api.TessDeleteText(wordText);
+
+                float confidence = api.TessResultIteratorConfidence(resultIterator, level);
+                api.TessPageIteratorBoundingBox(pageIterator, level, left, top, right, bottom);
+                Rectangle boundingBox = new Rectangle(left.get(0), top.get(0),
+                        right.get(0) - left.get(0), bottom.get(0) - top.get(0));
+                words.add(new Word(text, confidence, boundingBox));
+            } while (api.TessResultIteratorNext(resultIterator, level) == ITessAPI.TRUE);
+        } finally {
+            api.TessResultIteratorDelete(resultIterator);
+        }
+        return words;
+    }
+
+    /**
+     * Returns this engine's direct buffer for converted pixels, growing it when an image needs more room.
+     */
+    private ByteBuffer scratchBuffer(int capacity) {
+        if (scratchBuffer == null || scratchBuffer.capacity() < capacity) {
+            scratchBuffer = ByteBuffer.allocateDirect(capacity);
+        }
+        return scratchBuffer.clear().limit(capacity);
+    }
+
+    public EngineSettings getSettings() {
+        return settings;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            api.TessBaseAPIEnd(handle);
+            api.TessBaseAPIDelete(handle);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package org.codered.neolithic.images.conversion;
+
+import net.sourceforge.tess4j.TesseractException;
+import org.codered.neolithic.metrics.Metrics;
+import org.codered.neolithic.metrics.StageTimer;
+import org.codered.neolithic.utils.ConfigReader;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of initialized {@link TesseractEngine}s sharing the same {@link EngineSettings}.
+ * <p>
+ * Engines are created lazily up to the pool size (or eagerly through {@link #warmUp()}), checked out for a single
+ * conversion and returned afterwards. Pools are shared per settings through {@link #forSettings}, so every
+ * converter using the same data path, language and page segmentation mode draws from the same engines.
+ * <p>
+ * Each pool publishes its size, created, idle and busy engines as gauges named after its language and page
+ * segmentation mode, e.g. {@code ocr.enginePool.eng.psm3.busy}.
+ */
+public final class TesseractEnginePool implements AutoCloseable {
+    public static final int DEFAULT_POOL_SIZE = 2;
+    private static final long ACQUIRE_TIMEOUT_SECONDS = 60;
+    private static final Map<EngineSettings, TesseractEnginePool> POOLS = new ConcurrentHashMap<>();
+    private static final StageTimer ACQUIRE_TIMER = Metrics.timer("ocr.engineAcquire");
+    private static final StageTimer CREATE_TIMER = Metrics.timer("ocr.engineCreate");
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(TesseractEnginePool::closeAll, "tesseract-pool-shutdown"));
+    }
+
+    private final EngineSettings settings;
+    private final int size;
+    private final BlockingQueue<TesseractEngine> idleEngines;
+    private final AtomicInteger createdEngines = new AtomicInteger();
+    private volatile boolean closed;
+
+    private TesseractEnginePool(EngineSettings settings, int size) {
+        this.settings = settings;
+        this.size = Math.max(1, size);
+        this.idleEngines = new ArrayBlockingQueue<>(this.size);
+
+        String prefix = "ocr.enginePool." + settings.language() + ".psm" + settings.pageSegMode();
+        Metrics.gauge(prefix + ".size", () -> this.size);
+        Metrics.gauge(prefix + ".created", this::getCreatedCount);
+        Metrics.gauge(prefix + ".idle", this::getIdleCount);
+        Metrics.gauge(prefix + ".busy", () -> getCreatedCount() - getIdleCount());
+    }
+
+    /**
+     * Returns the shared pool for the given settings, creating it on first use.
+     * The size only applies when the pool is created; later calls return the existing pool unchanged.
+     *
+     * @param settings The engine settings.
+     * @param size     The maximum number of engines in the pool.
+     * @return The shared pool.
+     */
+    public static TesseractEnginePool forSettings(EngineSettings settings, int size) {
+        return POOLS.computeIfAbsent(settings, key -> new TesseractEnginePool(key, size));
+    }
+
+    /**
+     * Returns the shared pool described by the "ocr" section of the config file.
+     *
+     * @param configReader The config reader to use, may be null in which case defaults are used.
+     * @return The shared pool.
+     */
+    public static TesseractEnginePool fromConfig(ConfigReader configReader) {
+        int size = configReader != null
+                ? configReader.getInt("ocr", "enginePoolSize", DEFAULT_POOL_SIZE)
+                : DEFAULT_POOL_SIZE;
+        return forSettings(EngineSettings.fromConfig(configReader), size);
+    }
+
+    /**
+     * Closes every shared pool and releases their native engines.
+     */
+    public static void closeAll() {
+        POOLS.values().forEach(TesseractEnginePool::close);
+        POOLS.clear();
+    }
+
+    /**
+     * Creates engines until the pool is full, so the first conversions don't pay for loading the traineddata.
+     *
+     * @throws TesseractException If an engine could not be initialized.
+     */
+    public void warmUp() throws TesseractException {
+        while (!closed && reserveEngine()) {
+            release(createEngine());
+        }
+    }
+
+    /**
+     * Runs a task with an engine checked out of the pool, returning the engine once the task is done.
+     *
+     * @param task The task to run.
+     * @param <T>  The result type of the task.
+     * @return The result of the task.
+     * @throws TesseractException If no engine could be obtained or the task failed.
+     */
+    public <T> T execute(EngineTask<T> task) throws TesseractException {
+        TesseractEngine engine = acquire();
+        try {
+            return task.run(engine);
+        } finally {
+            release(engine);
+        }
+    }
+
+    /**
+     * Checks an engine out of the pool, creating one if the pool isn't full yet, or waiting for one to be returned.
+     * Every acquired engine must be handed back through {@link #release}.
+     *
+     * @return An engine for exclusive use by the caller.
+     * @throws TesseractException If the pool is closed, an engine could not be created or none became available.
+     */
+    public TesseractEngine acquire() throws TesseractException {
+        if (closed) {
+            throw new TesseractException("The Tesseract engine pool has been closed.");
+        }
+        long start = ACQUIRE_TIMER.start();
+        try {
+            return acquireEngine();
+        } finally {
+            ACQUIRE_TIMER.stop(start);
+        }
+    }
+
+    private TesseractEngine acquireEngine() throws TesseractException {
+        TesseractEngine engine = idleEngines.poll();
+        if (engine != null) {
+            return engine;
+        }
+        if (reserveEngine()) {
+            return createEngine();
+        }
+
+        try {
+            engine = idleEngines.poll(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TesseractException("Interrupted while waiting for a Tesseract engine.", e);
+        }
+        if (engine == null) {
+            throw new TesseractException("Timed out waiting for a Tesseract engine.");
+        }
+        return engine;
+    }
+
+    /**
+     * Returns an engine to the pool.
+     *
+     * @param engine The engine obtained from {@link #acquire()}.
+     */
+    public void release(TesseractEngine engine) {
+        if (closed || !idleEngines.offer(engine)) {
+            engine.close();
+            createdEngines.decrementAndGet();
+        }
+    }
+
+    private boolean reserveEngine() {
+        int created;
+        do {
+            created = createdEngines.get();
+            if (created >= size) {
+                return false;
+            }
+        } while (!createdEngines.compareAndSet(created, created + 1));
+        return true;
+    }
+
+    private TesseractEngine createEngine() throws TesseractException {
+        long start = CREATE_TIMER.start();
+        try {
+            TesseractEngine engine = new TesseractEngine(settings);
+            CREATE_TIMER.stop(start);
+            return engine;
+        } catch (TesseractException | RuntimeException | Error e) {
+            createdEngines.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public EngineSettings getSettings() {
+        return settings;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getCreatedCount() {
+        return createdEngines.get();
+    }
+
+    public int getIdleCount() {
+        return idleEngines.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        TesseractEngine engine;
+        while ((engine = idleEngines.poll()) != null) {
+            engine.close();
+            createdEngines.decrementAndGet();
+        }
+    }
+
+    /**
+     * A unit of work that needs exclusive use of an engine.
+     *
+     * @param <T> The result type.
+     */
+    @FunctionalInterface
+    public interface EngineTask<T> {
+        T run(TesseractEngine engine) throws TesseractException;
+    }
+}
@@ -0,0 +1,191 @@
+package org.codered.neolithic.images.conversion;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link ImageConverter} that splits large images into horizontal bands and converts them concurrently.
+ * <p>
+ * Bands are only cut through rows that are blank (a single flat color), so no line of text is split between two
+ * bands. The bands are converted by the wrapped converter on a fixed thread pool, which should match the size of
+ * the engine pool behind it, and their text is joined top to bottom. Images below the size threshold, or without
+ * any blank row to cut at, are passed to the wrapped converter unchanged.
+ */
+public class TiledImageConverter implements ImageConverter, AutoCloseable {
+    public static final int DEFAULT_MIN_TILED_PIXELS = 1920 * 1080;
+    // Luminance spread below which a row counts as blank background
+    private static final int BLANK_ROW_CONTRAST = 24;
+    // Bands shorter than this are not worth the per-call overhead
+    private static final int MIN_BAND_HEIGHT = 64;
+
+    private final ImageConverter delegate;
+    private final int parallelism;
+    private final int minTiledPixels;
+    private final ExecutorService executor;
+
+    public TiledImageConverter(ImageConverter delegate, int parallelism) {
+        this(delegate, parallelism, DEFAULT_MIN_TILED_PIXELS);
+    }
+
+    /**
+     * @param delegate       The converter used for each band.
+     * @param parallelism    The number of bands converted at once, and the most bands an image is split into.
+     * @param minTiledPixels Images with fewer pixels than this are converted whole.
+     */
+    public TiledImageConverter(ImageConverter delegate, int parallelism, int minTiledPixels) {
+        this.delegate = delegate;
+        this.parallelism = Math.max(1, parallelism);
+        this.minTiledPixels = minTiledPixels;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "ocr-tile-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public String convertToText(BufferedImage image) throws Exception {
+        List<BufferedImage> bands = splitIntoBands(image);
+        if (bands.size() == 1) {
+            return delegate.convertToText(image);
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (String bandText : convertBands(bands, delegate::convertToText)) {
+            bandText = bandText.trim();
+            if (!bandText.isEmpty()) {
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(bandText);
+            }
+        }
+        return text.toString();
+    }
+
+    @Override
+    public OcrResult recognizeWords(BufferedImage image) throws Exception {
+        List<BufferedImage> bands = splitIntoBands(image);
+        if (bands.size() == 1) {
+            return delegate.recognizeWords(image);
+        }
+        return OcrResult.join(convertBands(bands, delegate::recognizeWords));
+    }
+
+    /**
+     * Runs a conversion on every band concurrently and collects the results top to bottom. If any band fails, the
+     * others are cancelled.
+     */
+    private <T> List<T> convertBands(List<BufferedImage> bands, BandConversion<T> conversion) throws Exception {
+        List<Future<T>> results = new ArrayList<>(bands.size());
+        for (BufferedImage band : bands) {
+            results.add(executor.submit(() -> conversion.convert(band)));
+        }
+
+        List<T> converted = new ArrayList<>(bands.size());
+        try {
+            for (Future<T> result : results) {
+                converted.add(result.get());
+            }
+        } catch (ExecutionException e) {
+            results.forEach(result -> result.cancel(true));
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        } catch (InterruptedException e) {
+            results.forEach(result -> result.cancel(true));
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+        return converted;
+    }
+
+    /**
+     * Splits an image into up to {@code parallelism} bands of roughly equal height, cutting only through blank rows.
+     * The bands share the image's raster rather than copying it.
+     *
+     * @param image The image to split.
+     * @return The bands from top to bottom, or just the image if it should not be split.
+     */
+    List<BufferedImage> splitIntoBands(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int bandCount = Math.min(parallelism, height / MIN_BAND_HEIGHT);
+        if (bandCount < 2 || (long) width * height < minTiledPixels) {
+            return List.of(image);
+        }
+
+        boolean[] blankRows = findBlankRows(image);
+        List<BufferedImage> bands = new ArrayList<>(bandCount);
+        int top = 0;
+        for (int band = 1; band < bandCount; band++) {
+            int cut = findCut(blankRows, band * height / bandCount, height / bandCount / 2);
+            if (cut - top >= MIN_BAND_HEIGHT && height - cut >= MIN_BAND_HEIGHT) {
+                bands.add(image.getSubimage(0, top, width, cut - top));
+                top = cut;
+            }
+        }
+        bands.add(top == 0 ? image : image.getSubimage(0, top, width, height - top));
+        return bands;
+    }
+
+    /**
+     * Finds the blank row nearest to the target, preferring the middle of a run of blank rows so the cut keeps
+     * clear of the glyphs on either side.
+     *
+     * @return The row to cut at, or -1 if no blank row is within range.
+     */
+    private static int findCut(boolean[] blankRows, int target, int range) {
+        for (int distance = 0; distance <= range; distance++) {
+            for (int row : new int[]{target - distance, target + distance}) {
+                if (row > 0 && row < blankRows.length && blankRows[row]) {
+                    int start = row;
+                    int end = row;
+                    while (start > 0 && blankRows[start - 1]) {
+                        start--;
+                    }
+                    while (end < blankRows.length - 1 && blankRows[end + 1]) {
+                        end++;
+                    }
+                    return (start + end + 1) / 2;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean[] findBlankRows(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean[] blankRows = new boolean[height];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int min = 255;
+            int max = 0;
+            for (int x = 0; x < width && max - min < BLANK_ROW_CONTRAST; x++) {
+                int pixel = row[x];
+                int luminance = (((pixel >> 16) & 0xFF) * 77 + ((pixel >> 8) & 0xFF) * 150 + (pixel & 0xFF) * 29) >> 8;
+                min = Math.min(min, luminance);
+                max = Math.max(max, luminance);
+            }
+            blankRows[y] = max - min < BLANK_ROW_CONTRAST;
+        }
+        return blankRows;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface BandConversion<T> {
+        T convert(BufferedImage band) throws Exception;
+    }
+}
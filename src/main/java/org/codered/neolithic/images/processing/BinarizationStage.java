@@ -0,0 +1,82 @@
+package org.codered.neolithic.images.processing;
+
+/**
+ * Adaptive binarization: a pixel becomes black if it is darker than the mean of the window around it by more than an
+ * offset, and white otherwise. Unlike a global threshold this copes with gradients, colored panels and mixed themes.
+ * <p>
+ * The window mean is computed with running column and row sums, so the cost per pixel is constant regardless of the
+ * window size and the only extra memory is one int per column.
+ */
+public class BinarizationStage implements PreprocessingStage {
+    public static final int DEFAULT_WINDOW = 31;
+    public static final int DEFAULT_OFFSET = 15;
+
+    private final int radius;
+    private final int offset;
+
+    /**
+     * @param window The side of the square window in pixels; should be a few times the stroke width.
+     * @param offset How much darker than the local mean a pixel must be to count as ink.
+     */
+    public BinarizationStage(int window, int offset) {
+        this.radius = Math.max(1, window / 2);
+        this.offset = offset;
+    }
+
+    @Override
+    public String getName() {
+        return "binarize";
+    }
+
+    @Override
+    public void apply(GrayRaster raster) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        byte[] source = raster.getPixels();
+        byte[] target = raster.getTarget();
+        int[] columnSums = raster.getScratch(0, width);
+
+        // Column sums over rows [0, radius - 1]; each row below adds its lower row and drops the one above the window
+        for (int x = 0; x < width; x++) {
+            columnSums[x] = 0;
+        }
+        for (int y = 0; y < Math.min(radius, height); y++) {
+            addRow(columnSums, source, y * width, width, 1);
+        }
+
+        for (int y = 0; y < height; y++) {
+            if (y + radius < height) {
+                addRow(columnSums, source, (y + radius) * width, width, 1);
+            }
+            if (y - radius - 1 >= 0) {
+                addRow(columnSums, source, (y - radius - 1) * width, width, -1);
+            }
+            int rows = Math.min(height - 1, y + radius) - Math.max(0, y - radius) + 1;
+
+            int sum = 0;
+            for (int x = 0; x < Math.min(radius, width); x++) {
+                sum += columnSums[x];
+            }
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                if (x + radius < width) {
+                    sum += columnSums[x + radius];
+                }
+                if (x - radius - 1 >= 0) {
+                    sum -= columnSums[x - radius - 1];
+                }
+                int count = (Math.min(width - 1, x + radius) - Math.max(0, x - radius) + 1) * rows;
+                int pixel = source[row + x] & 0xFF;
+                target[row + x] = (pixel + offset) * count < sum ? 0 : (byte) 255;
+            }
+        }
+
+        raster.swap();
+    }
+
+    private static void addRow(int[] columnSums, byte[] source, int rowStart, int width, int sign) {
+        for (int x = 0; x < width; x++) {
+            columnSums[x] += sign * (source[rowStart + x] & 0xFF);
+        }
+    }
+}
@@ -1,32 +1,112 @@
 package org.codered.neolithic.images.processing;
 
-import org.languagetool.JLanguageTool;
-import org.languagetool.language.AmericanEnglish;
-import org.languagetool.rules.RuleMatch;
+import net.sourceforge.tess4j.Word;
+import org.codered.neolithic.images.conversion.OcrResult;
+import org.codered.neolithic.metrics.Metrics;
+import org.codered.neolithic.metrics.StageTimer;
 
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 
 public class ConversionRefiner {
-    private static final Pattern NON_WORD_PATTERN = Pattern.compile("[^\\w\\s]");
+    // Sentence punctuation is kept so the grammar stage can split the text into sentences
+    private static final Pattern NON_WORD_PATTERN = Pattern.compile("[^\\w\\s.!?]");
     private static final Pattern MULTIPLE_SPACES_PATTERN = Pattern.compile("\\s+");
     private static final Pattern LINE_BREAK_PATTERN = Pattern.compile("\\n");
-    private static final JLanguageTool LANGUAGE_TOOL = new JLanguageTool(new AmericanEnglish());
+    // Tesseract word confidences range from 0 to 100; clean screen text mostly scores above 90
+    public static final float DEFAULT_CONFIDENCE_THRESHOLD = 85;
+    private static final StageTimer CLEANUP_TIMER = Metrics.timer("refine.cleanup");
+    private static final StageTimer SPELL_TIMER = Metrics.timer("refine.spell");
+    private static final StageTimer GRAMMAR_TIMER = Metrics.timer("refine.grammar");
+
+    private final SpellCorrector spellCorrector;
+    private final GrammarCorrector grammarCorrector;
+
+    public ConversionRefiner() {
+        this(DictionarySpellCorrector.getInstance());
+    }
+
+    public ConversionRefiner(SpellCorrector spellCorrector) {
+        this(spellCorrector, GrammarCorrector.getInstance());
+    }
+
+    public ConversionRefiner(SpellCorrector spellCorrector, GrammarCorrector grammarCorrector) {
+        this.spellCorrector = spellCorrector;
+        this.grammarCorrector = grammarCorrector;
+    }
 
     public String refineConversion(String text) {
         // Text cleanup
+        long start = CLEANUP_TIMER.start();
         String cleanedText = cleanText(text);
+        CLEANUP_TIMER.stop(start);
 
         // Perform spell-checking and correction
-        cleanedText = spellCheck(cleanedText);
+        start = SPELL_TIMER.start();
+        cleanedText = spellCorrector.correctSpelling(cleanedText);
+        SPELL_TIMER.stop(start);
 
         // Perform grammar correction
-        cleanedText = grammarCorrection(cleanedText);
+        start = GRAMMAR_TIMER.start();
+        cleanedText = grammarCorrector.correctGrammar(cleanedText);
+        GRAMMAR_TIMER.stop(start);
 
         return cleanedText.trim();
     }
 
+    /**
+     * Refines OCR output, but only spell checks the words Tesseract was unsure about and only grammar checks the
+     * sentences containing them. Everything else is just cleaned up.
+     *
+     * @param result              The OCR result with word confidences.
+     * @param confidenceThreshold Words with a confidence below this (0 to 100) are refined.
+     * @return The refined text.
+     */
+    public String refineConversion(OcrResult result, float confidenceThreshold) {
+        if (result.getWords().isEmpty()) {
+            return refineConversion(result.getText());
+        }
+
+        // Rebuild the cleaned text word by word so every token keeps the confidence of the word it came from. Cleanup
+        // and spell checking alternate, so the spell checks are added up and recorded once, like the cleanup
+        long start = System.nanoTime();
+        long spellNanos = 0;
+        StringBuilder text = new StringBuilder();
+        List<Integer> suspectOffsets = new ArrayList<>();
+        for (Word word : result.getWords()) {
+            boolean suspect = word.getConfidence() < confidenceThreshold;
+            for (String token : cleanText(word.getText()).split(" ")) {
+                if (token.isEmpty()) {
+                    continue;
+                }
+                if (text.length() > 0) {
+                    text.append(' ');
+                }
+                if (suspect) {
+                    suspectOffsets.add(text.length());
+                    long spellStart = System.nanoTime();
+                    token = spellCorrector.correctWord(token);
+                    spellNanos += System.nanoTime() - spellStart;
+                }
+                text.append(token);
+            }
+        }
+
+        CLEANUP_TIMER.record(System.nanoTime() - start - spellNanos);
+
+        if (suspectOffsets.isEmpty()) {
+            return text.toString();
+        }
+        SPELL_TIMER.record(spellNanos);
+        start = GRAMMAR_TIMER.start();
+        try {
+            return grammarCorrector.correctGrammar(text.toString(), suspectOffsets).trim();
+        } finally {
+            GRAMMAR_TIMER.stop(start);
+        }
+    }
+
     private String cleanText(String text) {
         // Remove non-word characters
         String cleanedText = NON_WORD_PATTERN.matcher(text).replaceAll(" ");
@@ -39,43 +119,4 @@ public class ConversionRefiner {
 
         return cleanedText;
     }
-
-    private String spellCheck(String text) {
-        StringBuilder newText = new StringBuilder();
-        String[] words = text.split(" "); // Split into individual words
-
-        try {
-            for (String word : words) {
-                List<RuleMatch> matches = LANGUAGE_TOOL.check(word);
-
-                if (!matches.isEmpty() && matches.get(0).getSuggestedReplacements().size() > 0) {
-                    // A potential misspelling with suggestions
-                    newText.append(matches.get(0).getSuggestedReplacements().get(0)).append(" ");
-                } else {
-                    // No misspellings detected
-                    newText.append(word).append(" ");
-                }
-            }
-        } catch (IOException e) {
-            // Log the error or handle it appropriately
-            System.err.println("Error during spell check: " + e.getMessage());
-        }
-
-        return newText.toString().trim();
-    }
-
-
-    private String grammarCorrection(String text) {
-        try {
-            List<RuleMatch> matches = LANGUAGE_TOOL.check(text);
-            for (RuleMatch match : matches) {
-                if (match.getSuggestedReplacements().size() > 0) {
-                    text = text.replaceAll(match.getFromPos() + "(?=" + Pattern.quote(String.valueOf(match.getToPos())) + ")", match.getSuggestedReplacements().get(0));
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Error during grammar check: " + e.getMessage());
-        }
-        return text;
-    }
 }
@@ -0,0 +1,133 @@
+package org.codered.neolithic.images.processing;
+
+/**
+ * Straightens slightly rotated text, e.g. from photographed screens or tilted windows.
+ * <p>
+ * The skew is estimated with projection profiles: dark pixels are sampled, and for each candidate angle their rows
+ * are sheared by that angle and histogrammed. Text lines line up into tall, narrow peaks at the right angle, which
+ * maximizes the sum of squared bin counts. The image is then rotated back around its center.
+ */
+public class DeskewStage implements PreprocessingStage {
+    public static final double DEFAULT_MAX_ANGLE = 5.0;
+    private static final double ANGLE_STEP = 0.25;
+    // Rotations smaller than this don't affect recognition and aren't worth resampling for
+    private static final double MIN_CORRECTED_ANGLE = 0.3;
+    private static final int SAMPLE_STEP = 2;
+    private static final int MAX_SAMPLES = 200_000;
+    private static final int DARK_THRESHOLD = 128;
+
+    private final double maxAngle;
+
+    /**
+     * @param maxAngle The largest skew in degrees, in either direction, that is searched for.
+     */
+    public DeskewStage(double maxAngle) {
+        this.maxAngle = maxAngle;
+    }
+
+    @Override
+    public String getName() {
+        return "deskew";
+    }
+
+    @Override
+    public void apply(GrayRaster raster) {
+        double angle = estimateSkew(raster);
+        if (Math.abs(angle) >= MIN_CORRECTED_ANGLE) {
+            rotate(raster, Math.toRadians(-angle));
+        }
+    }
+
+    /**
+     * Estimates the skew of the text in degrees, positive when lines fall towards the right.
+     *
+     * @param raster The image to measure.
+     * @return The estimated skew, or 0 if there is too little text to tell.
+     */
+    public double estimateSkew(GrayRaster raster) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        byte[] pixels = raster.getPixels();
+
+        // Sample dark pixel coordinates, packed as x * height + y
+        int[] samples = raster.getScratch(0, MAX_SAMPLES);
+        int sampleCount = 0;
+        for (int y = 0; y < height && sampleCount < MAX_SAMPLES; y += SAMPLE_STEP) {
+            int row = y * width;
+            for (int x = 0; x < width && sampleCount < MAX_SAMPLES; x += SAMPLE_STEP) {
+                if ((pixels[row + x] & 0xFF) < DARK_THRESHOLD) {
+                    samples[sampleCount++] = x * height + y;
+                }
+            }
+        }
+        if (sampleCount < 100) {
+            return 0;
+        }
+
+        int maxShift = (int) Math.ceil(width * Math.tan(Math.toRadians(maxAngle)));
+        int[] histogram = raster.getScratch(1, height + 2 * maxShift + 1);
+        double bestAngle = 0;
+        long bestScore = -1;
+        for (double angle = -maxAngle; angle <= maxAngle + 1e-9; angle += ANGLE_STEP) {
+            double slope = Math.tan(Math.toRadians(angle));
+            int bins = height + 2 * maxShift + 1;
+            for (int i = 0; i < bins; i++) {
+                histogram[i] = 0;
+            }
+            for (int i = 0; i < sampleCount; i++) {
+                int x = samples[i] / height;
+                int y = samples[i] % height;
+                histogram[(int) Math.round(y - x * slope) + maxShift]++;
+            }
+            long score = 0;
+            for (int i = 0; i < bins; i++) {
+                score += (long) histogram[i] * histogram[i];
+            }
+            // Prefer the smaller correction when scores tie, so straight text stays untouched
+            if (score > bestScore || (score == bestScore && Math.abs(angle) < Math.abs(bestAngle))) {
+                bestScore = score;
+                bestAngle = angle;
+            }
+        }
+        return bestAngle;
+    }
+
+    /**
+     * Rotates the image around its center with bilinear sampling, filling uncovered corners with white.
+     */
+    private static void rotate(GrayRaster raster, double radians) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        byte[] source = raster.getPixels();
+        byte[] target = raster.getTarget();
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        double centerX = width / 2.0;
+        double centerY = height / 2.0;
+
+        for (int y = 0; y < height; y++) {
+            double dy = y - centerY;
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                // Inverse mapping: find where this target pixel comes from in the source
+                double dx = x - centerX;
+                double sourceX = dx * cos + dy * sin + centerX;
+                double sourceY = -dx * sin + dy * cos + centerY;
+                int x0 = (int) Math.floor(sourceX);
+                int y0 = (int) Math.floor(sourceY);
+                if (x0 < 0 || y0 < 0 || x0 + 1 >= width || y0 + 1 >= height) {
+                    target[row + x] = (byte) 255;
+                    continue;
+                }
+                double fx = sourceX - x0;
+                double fy = sourceY - y0;
+                int index = y0 * width + x0;
+                double top = (source[index] & 0xFF) * (1 - fx) + (source[index + 1] & 0xFF) * fx;
+                double bottom = (source[index + width] & 0xFF) * (1 - fx) + (source[index + width + 1] & 0xFF) * fx;
+                target[row + x] = (byte) (int) Math.round(top * (1 - fy) + bottom * fy);
+            }
+        }
+
+        raster.swap();
+    }
+}
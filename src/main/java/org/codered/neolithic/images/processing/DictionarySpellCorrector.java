@@ -0,0 +1,144 @@
+package org.codered.neolithic.images.processing;
+
+import morfologik.speller.Speller;
+import morfologik.stemming.Dictionary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Spell correction backed by a compact finite-state dictionary that is loaded once and shared.
+ * <p>
+ * Known words are a single automaton lookup; only unknown words pay for the edit-distance candidate search. By
+ * default this uses the en_US dictionary that ships with LanguageTool, which LanguageTool itself uses for its
+ * spelling rule, so results match closely without running LanguageTool's whole rule pipeline per word.
+ */
+public class DictionarySpellCorrector implements SpellCorrector {
+    private static final String BUNDLED_DICTIONARY = "/org/languagetool/resource/en/hunspell/en_US.dict";
+    // OCR confusions like "rn" for "m" are two edits away from the intended word
+    public static final int DEFAULT_MAX_EDIT_DISTANCE = 2;
+
+    private final Dictionary dictionary;
+    private final int maxEditDistance;
+    // Spellers keep per-lookup scratch buffers and are not thread-safe; the dictionary itself is immutable
+    private final ThreadLocal<Speller> nearSpellers;
+    private final ThreadLocal<Speller> farSpellers;
+
+    public DictionarySpellCorrector(Dictionary dictionary, int maxEditDistance) {
+        this.dictionary = dictionary;
+        this.maxEditDistance = maxEditDistance;
+        this.nearSpellers = ThreadLocal.withInitial(() -> new Speller(dictionary, 1));
+        this.farSpellers = ThreadLocal.withInitial(() -> new Speller(dictionary, maxEditDistance));
+    }
+
+    /**
+     * Returns the shared corrector for the bundled en_US dictionary, loading it on first use.
+     *
+     * @return The shared corrector.
+     */
+    public static DictionarySpellCorrector getInstance() {
+        return BundledDictionaryHolder.INSTANCE;
+    }
+
+    /**
+     * Loads a morfologik dictionary; its .info metadata file must sit next to it.
+     *
+     * @param dictionaryUrl   The location of the .dict file.
+     * @param maxEditDistance The maximum number of edits between a misspelling and its candidates.
+     * @return A corrector for the dictionary.
+     * @throws IOException If the dictionary could not be read.
+     */
+    public static DictionarySpellCorrector load(URL dictionaryUrl, int maxEditDistance) throws IOException {
+        return new DictionarySpellCorrector(Dictionary.read(dictionaryUrl), maxEditDistance);
+    }
+
+    @Override
+    public String correctWord(String token) {
+        // Keep sentence punctuation attached to the word out of the lookup
+        int end = token.length();
+        while (end > 0 && !Character.isLetterOrDigit(token.charAt(end - 1))) {
+            end--;
+        }
+        if (end == 0) {
+            return token;
+        }
+        return correctWord(token.substring(0, end), token.substring(end));
+    }
+
+    private String correctWord(String word, String punctuation) {
+        Speller speller = nearSpellers.get();
+        int digits = countDigits(word);
+        if (digits > 0) {
+            // The speller ignores anything containing digits, so undo the usual digit-for-letter misreads, but only in
+            // words that are mostly letters and only if that gives a known word. Numbers, sizes, units and versions
+            // like "1080p", "128GB" or "Windows10" are kept as they are.
+            String letters = replaceDigitLookalikes(word);
+            boolean mostlyLetters = word.length() - digits > digits;
+            if (mostlyLetters && countDigits(letters) == 0 && !speller.isMisspelled(letters)) {
+                return letters + punctuation;
+            }
+            return word + punctuation;
+        }
+        if (!speller.isMisspelled(word)) {
+            return word + punctuation;
+        }
+
+        // The candidate search grows steeply with distance, so only widen it when nothing is one edit away
+        List<String> replacements = speller.findReplacements(word);
+        if (replacements.isEmpty() && maxEditDistance > 1) {
+            replacements = farSpellers.get().findReplacements(word);
+        }
+        return (replacements.isEmpty() ? word : replacements.get(0)) + punctuation;
+    }
+
+    private static int countDigits(String word) {
+        int digits = 0;
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.isDigit(word.charAt(i))) {
+                digits++;
+            }
+        }
+        return digits;
+    }
+
+    private static String replaceDigitLookalikes(String word) {
+        char[] chars = null;
+        for (int i = 0; i < word.length(); i++) {
+            char replacement = switch (word.charAt(i)) {
+                case '0' -> 'o';
+                case '1' -> 'l';
+                case '5' -> 's';
+                default -> 0;
+            };
+            if (replacement != 0) {
+                if (chars == null) {
+                    chars = word.toCharArray();
+                }
+                chars[i] = replacement;
+            }
+        }
+        return chars == null ? word : new String(chars);
+    }
+
+    public Dictionary getDictionary() {
+        return dictionary;
+    }
+
+    private static class BundledDictionaryHolder {
+        private static final DictionarySpellCorrector INSTANCE = loadBundled();
+
+        private static DictionarySpellCorrector loadBundled() {
+            URL dictionaryUrl = DictionarySpellCorrector.class.getResource(BUNDLED_DICTIONARY);
+            if (dictionaryUrl == null) {
+                throw new IllegalStateException("Spelling dictionary not found on the classpath: " + BUNDLED_DICTIONARY);
+            }
+            try {
+                return load(dictionaryUrl, DEFAULT_MAX_EDIT_DISTANCE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error loading spelling dictionary", e);
+            }
+        }
+    }
+}
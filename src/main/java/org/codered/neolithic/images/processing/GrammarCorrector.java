@@ -0,0 +1,254 @@
+package org.codered.neolithic.images.processing;
+
+import org.languagetool.JLanguageTool;
+import org.languagetool.MultiThreadedJLanguageTool;
+import org.languagetool.language.AmericanEnglish;
+import org.languagetool.rules.Rule;
+import org.languagetool.rules.RuleMatch;
+import org.languagetool.rules.spelling.SpellingCheckRule;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The grammar-correction stage of {@link ConversionRefiner}.
+ * <p>
+ * Checking runs on LanguageTool's multi-threaded checker, which splits the text into sentences, analyzes them in
+ * parallel and spreads the rules over a thread pool sized to the machine. The suggested replacements are then applied
+ * in a single right-to-left pass over the text, so earlier offsets stay valid while later ones are patched.
+ * Spelling rules are disabled here because spelling is already handled by the {@link SpellCorrector} stage.
+ * <p>
+ * A checker keeps per-check state, so each check has one to itself. A corrector can hold several checkers for callers
+ * refining on several threads at once, creating them as they are needed since each loads its own rules.
+ */
+public class GrammarCorrector {
+    private static final GrammarCorrector INSTANCE = new GrammarCorrector(Runtime.getRuntime().availableProcessors());
+
+    private final int threadsPerChecker;
+    private final int maxCheckers;
+    private final BlockingQueue<JLanguageTool> idleCheckers = new LinkedBlockingQueue<>();
+    private int createdCheckers;
+
+    public GrammarCorrector(int threads) {
+        this(threads, 1);
+    }
+
+    /**
+     * @param threads  The threads the checkers spread their rules over, between them.
+     * @param checkers The most checks that can run at once.
+     */
+    public GrammarCorrector(int threads, int checkers) {
+        this.maxCheckers = Math.max(1, checkers);
+        this.threadsPerChecker = Math.max(1, threads / maxCheckers);
+        idleCheckers.add(createChecker());
+        createdCheckers = 1;
+    }
+
+    private JLanguageTool createChecker() {
+        JLanguageTool languageTool = new MultiThreadedJLanguageTool(new AmericanEnglish(), threadsPerChecker);
+        for (Rule rule : languageTool.getAllActiveRules()) {
+            if (rule instanceof SpellingCheckRule) {
+                languageTool.disableRule(rule.getId());
+            }
+        }
+        return languageTool;
+    }
+
+    /**
+     * Returns the shared grammar corrector using one thread per core.
+     *
+     * @return The shared corrector.
+     */
+    public static GrammarCorrector getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Checks the text and applies the first suggestion of every grammar rule match.
+     *
+     * @param text The text to correct.
+     * @return The corrected text, or the original text if checking failed.
+     */
+    public String correctGrammar(String text) {
+        try {
+            return applyMatches(text, check(text));
+        } catch (IOException e) {
+            System.err.println("Error during grammar check: " + e.getMessage());
+            return text;
+        }
+    }
+
+    /**
+     * Checks and corrects only the sentences that contain at least one of the given offsets, leaving the rest of
+     * the text untouched. The selected sentences are checked together in one call, so they are still processed in
+     * parallel.
+     *
+     * @param text           The text to correct.
+     * @param suspectOffsets Ascending character offsets of the words that need checking.
+     * @return The corrected text, or the original text if checking failed.
+     */
+    public String correctGrammar(String text, List<Integer> suspectOffsets) {
+        List<String> sentences = splitSentences(text);
+
+        // Gather the flagged sentences, remembering where each one sits in the selection and in the text
+        StringBuilder selection = new StringBuilder();
+        List<int[]> spans = new ArrayList<>(); // {selection start, text start, length}
+        int sentenceStart = 0;
+        int nextSuspect = 0;
+        for (String sentence : sentences) {
+            int sentenceEnd = sentenceStart + sentence.length();
+            boolean flagged = false;
+            while (nextSuspect < suspectOffsets.size() && suspectOffsets.get(nextSuspect) < sentenceEnd) {
+                flagged |= suspectOffsets.get(nextSuspect) >= sentenceStart;
+                nextSuspect++;
+            }
+            if (flagged) {
+                spans.add(new int[]{selection.length(), sentenceStart, sentence.length()});
+                selection.append(sentence);
+            }
+            sentenceStart = sentenceEnd;
+        }
+
+        if (sentenceStart != text.length()) {
+            // The tokenizer didn't preserve every character, so the spans can't be trusted
+            return correctGrammar(text);
+        }
+        if (spans.isEmpty()) {
+            return text;
+        }
+
+        try {
+            List<Patch> patches = new ArrayList<>();
+            for (RuleMatch match : check(selection.toString())) {
+                int[] span = findSpan(spans, match.getFromPos());
+                if (match.getSuggestedReplacements().isEmpty() || span == null
+                        || match.getToPos() > span[0] + span[2]) {
+                    continue;
+                }
+                int shift = span[1] - span[0];
+                patches.add(new Patch(match.getFromPos() + shift, match.getToPos() + shift,
+                        match.getSuggestedReplacements().get(0)));
+            }
+            return applyPatches(text, patches);
+        } catch (IOException e) {
+            System.err.println("Error during grammar check: " + e.getMessage());
+            return text;
+        }
+    }
+
+    private static int[] findSpan(List<int[]> spans, int selectionOffset) {
+        for (int[] span : spans) {
+            if (selectionOffset >= span[0] && selectionOffset < span[0] + span[2]) {
+                return span;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Splits text into sentences. The sentences keep their trailing whitespace, so they add up to the original text.
+     *
+     * @param text The text to split.
+     * @return The sentences in order.
+     */
+    public List<String> splitSentences(String text) {
+        JLanguageTool languageTool = acquire();
+        try {
+            return languageTool.sentenceTokenize(text);
+        } finally {
+            idleCheckers.add(languageTool);
+        }
+    }
+
+    /**
+     * Runs the grammar rules over the text without applying anything.
+     *
+     * @param text The text to check.
+     * @return The rule matches, with offsets into the text.
+     * @throws IOException If LanguageTool failed to check the text.
+     */
+    public List<RuleMatch> check(String text) throws IOException {
+        JLanguageTool languageTool = acquire();
+        try {
+            return languageTool.check(text);
+        } finally {
+            idleCheckers.add(languageTool);
+        }
+    }
+
+    /**
+     * Takes an idle checker, creating one if every checker is busy and there is room for another, or otherwise
+     * waiting for one to be handed back.
+     */
+    private JLanguageTool acquire() {
+        JLanguageTool languageTool = idleCheckers.poll();
+        if (languageTool != null) {
+            return languageTool;
+        }
+        synchronized (idleCheckers) {
+            if (createdCheckers < maxCheckers) {
+                createdCheckers++;
+                return createChecker();
+            }
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return idleCheckers.take();
+                } catch (InterruptedException e) {
+                    // Checks are short, so finish waiting and let the caller see the interrupt afterwards
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Applies the first suggested replacement of each match in one right-to-left pass.
+     *
+     * @param text    The checked text.
+     * @param matches The matches found in the text.
+     * @return The patched text.
+     */
+    public static String applyMatches(String text, List<RuleMatch> matches) {
+        List<Patch> patches = new ArrayList<>(matches.size());
+        for (RuleMatch match : matches) {
+            if (!match.getSuggestedReplacements().isEmpty()) {
+                patches.add(new Patch(match.getFromPos(), match.getToPos(), match.getSuggestedReplacements().get(0)));
+            }
+        }
+        return applyPatches(text, patches);
+    }
+
+    /**
+     * Applies replacements in one right-to-left pass over a single buffer. Patches that overlap a patch further
+     * right are skipped, since their offsets no longer point at the same text.
+     */
+    private static String applyPatches(String text, List<Patch> patches) {
+        List<Patch> sorted = new ArrayList<>(patches);
+        sorted.sort(Comparator.comparingInt(Patch::from).reversed());
+
+        StringBuilder patched = new StringBuilder(text);
+        int patchedFrom = text.length();
+        for (Patch patch : sorted) {
+            if (patch.to() > patchedFrom || patch.from() < 0) {
+                continue;
+            }
+            patched.replace(patch.from(), patch.to(), patch.replacement());
+            patchedFrom = patch.from();
+        }
+        return patched.toString();
+    }
+
+    private record Patch(int from, int to, String replacement) {
+    }
+}
@@ -0,0 +1,192 @@
+package org.codered.neolithic.images.processing;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+
+/**
+ * An 8-bit gray working image for {@link PreprocessingStage}s, stored as a flat row-major {@code byte[]}.
+ * <p>
+ * The raster owns two pixel buffers so stages that can't work in place write into {@link #getTarget()} and then
+ * {@link #swap()}. All buffers only ever grow, so one raster can be reused for any number of images without
+ * allocating once it has seen the largest size. A raster is not thread-safe.
+ */
+public final class GrayRaster {
+    // Integer luminance weights (ITU-R BT.601) scaled by 256
+    private static final int RED_WEIGHT = 77;
+    private static final int GREEN_WEIGHT = 150;
+    private static final int BLUE_WEIGHT = 29;
+
+    private int width;
+    private int height;
+    private byte[] pixels = new byte[0];
+    private byte[] target = new byte[0];
+    private final int[][] scratch = {new int[0], new int[0]};
+
+    /**
+     * Loads an image as gray, reading packed-int and byte rasters directly from their data buffers.
+     *
+     * @param image The image to load.
+     */
+    public void load(BufferedImage image) {
+        width = image.getWidth();
+        height = image.getHeight();
+        int length = width * height;
+        if (pixels.length < length) {
+            pixels = new byte[length];
+            target = new byte[length];
+        }
+
+        Raster raster = image.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        int x0 = raster.getMinX() - raster.getSampleModelTranslateX();
+        int y0 = raster.getMinY() - raster.getSampleModelTranslateY();
+
+        if (dataBuffer instanceof DataBufferInt intBuffer
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel packedModel
+                && image.getColorModel().getNumColorComponents() == 3) {
+            loadPackedInts(intBuffer.getData(), packedModel, packedModel.getOffset(x0, y0) + dataBuffer.getOffset());
+        } else if (dataBuffer instanceof DataBufferByte byteBuffer && dataBuffer.getNumBanks() == 1
+                && raster.getSampleModel() instanceof ComponentSampleModel componentModel
+                && (image.getType() == BufferedImage.TYPE_BYTE_GRAY || image.getType() == BufferedImage.TYPE_3BYTE_BGR)) {
+            int offset = y0 * componentModel.getScanlineStride() + x0 * componentModel.getPixelStride() + dataBuffer.getOffset();
+            loadBytes(byteBuffer.getData(), componentModel, offset);
+        } else {
+            loadAnyImage(image);
+        }
+    }
+
+    private void loadPackedInts(int[] data, SinglePixelPackedSampleModel packedModel, int offset) {
+        int[] masks = packedModel.getBitMasks();
+        int[] shifts = packedModel.getBitOffsets();
+        int stride = packedModel.getScanlineStride();
+        for (int y = 0; y < height; y++) {
+            int source = offset + y * stride;
+            int destination = y * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = data[source + x];
+                pixels[destination + x] = luminance((pixel & masks[0]) >>> shifts[0],
+                        (pixel & masks[1]) >>> shifts[1], (pixel & masks[2]) >>> shifts[2]);
+            }
+        }
+    }
+
+    private void loadBytes(byte[] data, ComponentSampleModel componentModel, int offset) {
+        int stride = componentModel.getScanlineStride();
+        if (componentModel.getPixelStride() == 1) {
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(data, offset + y * stride, pixels, y * width, width);
+            }
+            return;
+        }
+
+        // TYPE_3BYTE_BGR
+        for (int y = 0; y < height; y++) {
+            int source = offset + y * stride;
+            int destination = y * width;
+            for (int x = 0; x < width; x++, source += 3) {
+                pixels[destination + x] = luminance(data[source + 2] & 0xFF, data[source + 1] & 0xFF, data[source] & 0xFF);
+            }
+        }
+    }
+
+    private void loadAnyImage(BufferedImage image) {
+        int[] row = getScratch(0, width);
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int destination = y * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = row[x];
+                pixels[destination + x] = luminance((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+            }
+        }
+    }
+
+    private static byte luminance(int red, int green, int blue) {
+        return (byte) ((red * RED_WEIGHT + green * GREEN_WEIGHT + blue * BLUE_WEIGHT) >> 8);
+    }
+
+    /**
+     * Copies the current pixels into a new gray image. The copy is needed because the raster's buffers are
+     * reused for the next image.
+     *
+     * @return A TYPE_BYTE_GRAY image of the current pixels.
+     */
+    public BufferedImage toImage() {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        System.arraycopy(pixels, 0, data, 0, width * height);
+        return image;
+    }
+
+    /**
+     * Makes the target buffer the current pixels, after a stage has written its output into it.
+     */
+    public void swap() {
+        byte[] previous = pixels;
+        pixels = target;
+        target = previous;
+    }
+
+    /**
+     * Changes the dimensions of the image held in the buffers, e.g. after a stage rotated or rescaled it into the
+     * target. Both buffers are grown if needed, keeping the current pixels.
+     *
+     * @param width  The new width.
+     * @param height The new height.
+     */
+    public void resize(int width, int height) {
+        int length = width * height;
+        if (pixels.length < length) {
+            pixels = Arrays.copyOf(pixels, length);
+            target = new byte[length];
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Gets a reusable int buffer for a stage's intermediate results. Its contents are undefined.
+     *
+     * @param slot   Which of the two scratch buffers to use.
+     * @param length The minimum length.
+     * @return The scratch buffer.
+     */
+    public int[] getScratch(int slot, int length) {
+        if (scratch[slot].length < length) {
+            scratch[slot] = new int[length];
+        }
+        return scratch[slot];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the current pixels, row-major with a stride of {@link #getWidth()}. The array may be longer than the image.
+     *
+     * @return The pixel buffer.
+     */
+    public byte[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Gets the buffer a stage writes its output into before calling {@link #swap()}.
+     *
+     * @return The target buffer, at least as long as the pixel buffer.
+     */
+    public byte[] getTarget() {
+        return target;
+    }
+}
@@ -0,0 +1,42 @@
+package org.codered.neolithic.images.processing;
+
+/**
+ * Inverts light-on-dark images, such as captures of dark themes, so text is dark on a light background the way
+ * Tesseract expects it.
+ */
+public class InversionStage implements PreprocessingStage {
+    private final boolean automatic;
+
+    /**
+     * @param automatic If true, only images whose mean luminance is dark are inverted; otherwise every image is.
+     */
+    public InversionStage(boolean automatic) {
+        this.automatic = automatic;
+    }
+
+    @Override
+    public String getName() {
+        return "invert";
+    }
+
+    @Override
+    public void apply(GrayRaster raster) {
+        byte[] pixels = raster.getPixels();
+        int length = raster.getWidth() * raster.getHeight();
+
+        if (automatic) {
+            // Text covers a small part of a capture, so the mean is dominated by the background
+            long total = 0;
+            for (int i = 0; i < length; i++) {
+                total += pixels[i] & 0xFF;
+            }
+            if (length == 0 || total / length >= 128) {
+                return;
+            }
+        }
+
+        for (int i = 0; i < length; i++) {
+            pixels[i] = (byte) ~pixels[i];
+        }
+    }
+}
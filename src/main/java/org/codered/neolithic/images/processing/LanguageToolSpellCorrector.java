@@ -0,0 +1,34 @@
+package org.codered.neolithic.images.processing;
+
+import org.languagetool.JLanguageTool;
+import org.languagetool.language.AmericanEnglish;
+import org.languagetool.rules.RuleMatch;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Spell correction that runs every word through the full LanguageTool rule pipeline.
+ * Much slower than {@link DictionarySpellCorrector}, but it can fix words LanguageTool's other rules flag too.
+ */
+public class LanguageToolSpellCorrector implements SpellCorrector {
+    private final JLanguageTool languageTool = new JLanguageTool(new AmericanEnglish());
+
+    @Override
+    public synchronized String correctWord(String word) {
+        try {
+            List<RuleMatch> matches = languageTool.check(word);
+
+            if (!matches.isEmpty() && matches.get(0).getSuggestedReplacements().size() > 0) {
+                // A potential misspelling with suggestions
+                return matches.get(0).getSuggestedReplacements().get(0);
+            }
+        } catch (IOException e) {
+            // Log the error or handle it appropriately
+            System.err.println("Error during spell check: " + e.getMessage());
+        }
+
+        // No misspellings detected
+        return word;
+    }
+}
@@ -0,0 +1,22 @@
+package org.codered.neolithic.images.processing;
+
+/**
+ * One step of the {@link ImagePreprocessor} pipeline, working on a gray raster in place or through its target buffer.
+ * Stages are shared between threads, so any per-image state belongs in the raster.
+ */
+public interface PreprocessingStage {
+
+    /**
+     * Gets the name the stage's timings are reported under.
+     *
+     * @return The stage name.
+     */
+    String getName();
+
+    /**
+     * Processes the raster's current pixels.
+     *
+     * @param raster The working image.
+     */
+    void apply(GrayRaster raster);
+}
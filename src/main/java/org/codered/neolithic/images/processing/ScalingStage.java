@@ -0,0 +1,217 @@
+package org.codered.neolithic.images.processing;
+
+import org.codered.neolithic.metrics.Counter;
+import org.codered.neolithic.metrics.Metrics;
+
+import java.util.Arrays;
+
+/**
+ * Resamples images so their text is close to the height Tesseract recognizes best. HiDPI captures are usually far
+ * larger than needed, which only makes recognition slower, while small UI fonts are too small to recognize reliably.
+ * <p>
+ * The dominant text height is estimated from the row profiles of vertical strips: runs of rows containing dark pixels
+ * are text lines, and the median run height across all strips is taken as the line height, which copes with columns
+ * whose lines aren't aligned. Images whose lines are above the target are downscaled with area averaging, and those
+ * well below it are upscaled bilinearly, but only as far as needed; anything in between is left alone. The stage
+ * expects dark text, so it should run after {@link InversionStage}.
+ * <p>
+ * The pixels going in and out are counted by the {@code preprocess.scale.*} metrics, and
+ * {@code preprocess.scale.pixelsSaved} is the difference. Upscaled images count against it, so it can be negative if
+ * most captures have small text.
+ */
+public class ScalingStage implements PreprocessingStage {
+    public static final int DEFAULT_TARGET_TEXT_HEIGHT = 32;
+    private static final int STRIP_WIDTH = 256;
+    private static final int DARK_THRESHOLD = 128;
+    // Shorter runs are noise, underlines or dots; taller ones are images or solid panels
+    private static final int MIN_LINE_HEIGHT = 4;
+    private static final int MAX_LINE_HEIGHT = 400;
+    private static final int MIN_LINES = 3;
+    private static final double MAX_UPSCALE = 3.0;
+    private static final int MIN_SCALED_SIZE = 32;
+
+    private static final Counter PIXELS_IN_COUNTER = Metrics.counter("preprocess.scale.pixelsIn");
+    private static final Counter PIXELS_OUT_COUNTER = Metrics.counter("preprocess.scale.pixelsOut");
+    private static final Counter DOWNSCALED_COUNTER = Metrics.counter("preprocess.scale.downscaled");
+    private static final Counter UPSCALED_COUNTER = Metrics.counter("preprocess.scale.upscaled");
+
+    static {
+        Metrics.gauge("preprocess.scale.pixelsSaved",
+                () -> PIXELS_IN_COUNTER.getCount() - PIXELS_OUT_COUNTER.getCount());
+    }
+
+    private final int targetTextHeight;
+
+    /**
+     * @param targetTextHeight The line height in pixels, from ascender to descender, that images are scaled towards.
+     *                         Images with taller lines are downscaled to it; images whose lines are less than half
+     *                         as tall are upscaled to two thirds of it.
+     */
+    public ScalingStage(int targetTextHeight) {
+        this.targetTextHeight = Math.max(MIN_LINE_HEIGHT, targetTextHeight);
+    }
+
+    @Override
+    public String getName() {
+        return "scale";
+    }
+
+    @Override
+    public void apply(GrayRaster raster) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        PIXELS_IN_COUNTER.add((long) width * height);
+
+        double scale = chooseScale(estimateTextHeight(raster));
+        int scaledWidth = (int) Math.round(width * scale);
+        int scaledHeight = (int) Math.round(height * scale);
+        if (scale == 1.0 || Math.min(scaledWidth, scaledHeight) < MIN_SCALED_SIZE) {
+            PIXELS_OUT_COUNTER.add((long) width * height);
+            return;
+        }
+
+        // Growing keeps the current pixels at the start of the buffer, still with the old stride
+        raster.resize(scaledWidth, scaledHeight);
+        if (scale < 1) {
+            downscale(raster.getPixels(), width, height, raster.getTarget(), scaledWidth, scaledHeight,
+                    raster.getScratch(0, scaledWidth));
+            DOWNSCALED_COUNTER.increment();
+        } else {
+            upscale(raster.getPixels(), width, height, raster.getTarget(), scaledWidth, scaledHeight,
+                    raster.getScratch(0, scaledWidth), raster.getScratch(1, scaledWidth));
+            UPSCALED_COUNTER.increment();
+        }
+        raster.swap();
+        PIXELS_OUT_COUNTER.add((long) scaledWidth * scaledHeight);
+    }
+
+    private double chooseScale(int textHeight) {
+        if (textHeight == 0) {
+            return 1.0;
+        }
+        if (textHeight * 4 > targetTextHeight * 5) {
+            return (double) targetTextHeight / textHeight;
+        }
+        // Upscaling multiplies the work for every later stage and Tesseract, so only go as far as is readable
+        if (textHeight * 2 < targetTextHeight) {
+            return Math.min(MAX_UPSCALE, targetTextHeight * 2.0 / 3 / textHeight);
+        }
+        return 1.0;
+    }
+
+    /**
+     * Estimates the dominant line height of the text in the raster.
+     *
+     * @param raster The image to measure, with dark text.
+     * @return The median line height in pixels, or 0 if too few lines were found to tell.
+     */
+    public int estimateTextHeight(GrayRaster raster) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        byte[] pixels = raster.getPixels();
+        int strips = Math.max(1, width / STRIP_WIDTH);
+        // Every line is at least MIN_LINE_HEIGHT rows plus a blank row, which bounds the number of runs per strip
+        int[] lineHeights = raster.getScratch(1, strips * (height / (MIN_LINE_HEIGHT + 1) + 1));
+        int lineCount = 0;
+
+        for (int strip = 0; strip < strips; strip++) {
+            int left = strip * width / strips;
+            int right = (strip + 1) * width / strips;
+            int runStart = -1;
+            for (int y = 0; y <= height; y++) {
+                boolean ink = false;
+                if (y < height) {
+                    int row = y * width;
+                    for (int x = left; x < right; x++) {
+                        if ((pixels[row + x] & 0xFF) < DARK_THRESHOLD) {
+                            ink = true;
+                            break;
+                        }
+                    }
+                }
+                if (ink && runStart < 0) {
+                    runStart = y;
+                } else if (!ink && runStart >= 0) {
+                    int runHeight = y - runStart;
+                    // A run touching the top or bottom edge may be a cut-off line
+                    if (runHeight >= MIN_LINE_HEIGHT && runHeight <= MAX_LINE_HEIGHT && runStart > 0 && y < height) {
+                        lineHeights[lineCount++] = runHeight;
+                    }
+                    runStart = -1;
+                }
+            }
+        }
+
+        if (lineCount < MIN_LINES) {
+            return 0;
+        }
+        Arrays.sort(lineHeights, 0, lineCount);
+        return lineHeights[lineCount / 2];
+    }
+
+    /**
+     * Downscales by averaging the block of source pixels that falls into each target pixel, which keeps thin strokes
+     * visible where sampling would drop them.
+     */
+    private static void downscale(byte[] source, int width, int height, byte[] target, int scaledWidth,
+                                  int scaledHeight, int[] columnSums) {
+        for (int targetY = 0; targetY < scaledHeight; targetY++) {
+            int top = targetY * height / scaledHeight;
+            int bottom = Math.max(top + 1, (targetY + 1) * height / scaledHeight);
+            Arrays.fill(columnSums, 0, scaledWidth, 0);
+
+            for (int y = top; y < bottom; y++) {
+                int row = y * width;
+                int targetX = 0;
+                int nextColumn = width / scaledWidth;
+                for (int x = 0; x < width; x++) {
+                    while (x >= nextColumn && targetX < scaledWidth - 1) {
+                        targetX++;
+                        nextColumn = (targetX + 1) * width / scaledWidth;
+                    }
+                    columnSums[targetX] += source[row + x] & 0xFF;
+                }
+            }
+
+            int row = targetY * scaledWidth;
+            int rows = bottom - top;
+            for (int targetX = 0; targetX < scaledWidth; targetX++) {
+                int columns = (targetX + 1) * width / scaledWidth - targetX * width / scaledWidth;
+                target[row + targetX] = (byte) (columnSums[targetX] / (rows * Math.max(1, columns)));
+            }
+        }
+    }
+
+    /**
+     * Upscales bilinearly in 8-bit fixed point, with the source columns and weights for each target column computed
+     * once per image.
+     */
+    private static void upscale(byte[] source, int width, int height, byte[] target, int scaledWidth, int scaledHeight,
+                                int[] columns, int[] weights) {
+        for (int targetX = 0; targetX < scaledWidth; targetX++) {
+            int sourceX = Math.max(0, (int) (((targetX + 0.5) * width / scaledWidth - 0.5) * 256));
+            columns[targetX] = Math.min(width - 2, sourceX >> 8);
+            weights[targetX] = Math.min(256, sourceX - (columns[targetX] << 8));
+        }
+
+        for (int targetY = 0; targetY < scaledHeight; targetY++) {
+            int sourceY = Math.max(0, (int) (((targetY + 0.5) * height / scaledHeight - 0.5) * 256));
+            int y0 = Math.min(height - 2, sourceY >> 8);
+            int fy = Math.min(256, sourceY - (y0 << 8));
+            int topRow = y0 * width;
+            int bottomRow = topRow + width;
+            int row = targetY * scaledWidth;
+            for (int targetX = 0; targetX < scaledWidth; targetX++) {
+                int x0 = columns[targetX];
+                int fx = weights[targetX];
+                int top = (source[topRow + x0] & 0xFF) * (256 - fx) + (source[topRow + x0 + 1] & 0xFF) * fx;
+                int bottom = (source[bottomRow + x0] & 0xFF) * (256 - fx) + (source[bottomRow + x0 + 1] & 0xFF) * fx;
+                target[row + targetX] = (byte) ((top * (256 - fy) + bottom * fy + (1 << 15)) >> 16);
+            }
+        }
+    }
+
+    public int getTargetTextHeight() {
+        return targetTextHeight;
+    }
+}
@@ -0,0 +1,31 @@
+package org.codered.neolithic.images.processing;
+
+/**
+ * The spell-correction stage of {@link ConversionRefiner}.
+ */
+public interface SpellCorrector {
+
+    /**
+     * Replaces a single word with its most likely correction, or returns it unchanged if it is spelled correctly.
+     *
+     * @param word A word, possibly followed by sentence punctuation.
+     * @return The corrected word.
+     */
+    String correctWord(String word);
+
+    /**
+     * Replaces misspelled words in the text with their most likely correction.
+     *
+     * @param text Cleaned text with words separated by single spaces.
+     * @return The corrected text.
+     */
+    default String correctSpelling(String text) {
+        StringBuilder newText = new StringBuilder(text.length());
+        for (String word : text.split(" ")) {
+            if (!word.isEmpty()) {
+                newText.append(correctWord(word)).append(' ');
+            }
+        }
+        return newText.toString().trim();
+    }
+}
@@ -0,0 +1,169 @@
+package org.codered.neolithic.images.processing;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the parts of an image that may contain text, so OCR can skip blank space, pictures and empty UI chrome.
+ * <p>
+ * Regions are found with projection profiles. A row or column has ink if its luminance spread is at least
+ * {@value #INK_CONTRAST}, which works for light and dark themes alike. Runs of inked rows separated by less than a
+ * line gap become blocks, each block is split at wide blank column gaps, and every piece is trimmed to its ink.
+ * Pieces containing an unbroken run of inked rows taller than any line of text are taken to be pictures and dropped,
+ * unless they cover most of the image, in which case it's safer to let Tesseract look at it than to return nothing.
+ * <p>
+ * Each thread gets its own {@link GrayRaster}, so detection allocates nothing but the result list once the buffers
+ * have grown to the capture size.
+ */
+public class TextRegionDetector {
+    public static final int DEFAULT_MAX_LINE_HEIGHT = 256;
+    public static final int INK_CONTRAST = 24;
+    // Blank gaps up to this many rows are spacing between lines of the same block
+    private static final int LINE_GAP = 32;
+    // Blank gaps at least this many columns wide separate side-by-side blocks
+    private static final int COLUMN_GAP = 48;
+    private static final int MIN_REGION_HEIGHT = 6;
+    private static final int MIN_REGION_WIDTH = 6;
+    // Tesseract recognizes glyphs touching the image edge poorly, so regions keep a margin of background
+    private static final int PADDING = 4;
+
+    private final int maxLineHeight;
+    private final ThreadLocal<GrayRaster> rasters = ThreadLocal.withInitial(GrayRaster::new);
+
+    /**
+     * @param maxLineHeight The tallest unbroken run of inked rows that still counts as a line of text; taller
+     *                      pieces are skipped as pictures.
+     */
+    public TextRegionDetector(int maxLineHeight) {
+        this.maxLineHeight = maxLineHeight;
+    }
+
+    /**
+     * Detects the text regions of an image.
+     *
+     * @param image The image to search.
+     * @return The regions from top to bottom and left to right, padded and clipped to the image, or an empty list if
+     * the image is blank.
+     */
+    public List<Rectangle> detect(BufferedImage image) {
+        GrayRaster raster = rasters.get();
+        raster.load(image);
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        byte[] pixels = raster.getPixels();
+
+        List<Rectangle> regions = new ArrayList<>();
+        int[] columnMin = raster.getScratch(0, width);
+        int[] columnMax = raster.getScratch(1, width);
+        int blockTop = -1;
+        int blockBottom = -1;
+        for (int y = 0; y <= height; y++) {
+            boolean ink = y < height && hasInk(pixels, y * width, width);
+            if (ink) {
+                if (blockTop < 0) {
+                    blockTop = y;
+                }
+                blockBottom = y + 1;
+            } else if (blockTop >= 0 && (y == height || y - blockBottom >= LINE_GAP)) {
+                splitBlock(pixels, width, height, blockTop, blockBottom, columnMin, columnMax, regions);
+                blockTop = -1;
+            }
+        }
+
+        Rectangle bounds = new Rectangle(width, height);
+        for (Rectangle region : regions) {
+            region.grow(PADDING, PADDING);
+            region.setBounds(region.intersection(bounds));
+        }
+        return regions;
+    }
+
+    /**
+     * Splits a block of rows at wide blank column gaps and adds each trimmed piece that looks like text.
+     */
+    private void splitBlock(byte[] pixels, int width, int height, int top, int bottom, int[] columnMin,
+                            int[] columnMax, List<Rectangle> regions) {
+        for (int x = 0; x < width; x++) {
+            columnMin[x] = 255;
+            columnMax[x] = 0;
+        }
+        for (int y = top; y < bottom; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int luminance = pixels[row + x] & 0xFF;
+                if (luminance < columnMin[x]) {
+                    columnMin[x] = luminance;
+                }
+                if (luminance > columnMax[x]) {
+                    columnMax[x] = luminance;
+                }
+            }
+        }
+
+        int left = -1;
+        int right = -1;
+        for (int x = 0; x <= width; x++) {
+            boolean ink = x < width && columnMax[x] - columnMin[x] >= INK_CONTRAST;
+            if (ink) {
+                if (left < 0) {
+                    left = x;
+                }
+                right = x + 1;
+            } else if (left >= 0 && (x == width || x - right >= COLUMN_GAP)) {
+                addPiece(pixels, width, height, left, right, top, bottom, regions);
+                left = -1;
+            }
+        }
+    }
+
+    /**
+     * Trims a piece to its inked rows and adds it, unless it is too small to hold text or looks like a picture.
+     */
+    private void addPiece(byte[] pixels, int width, int height, int left, int right, int top, int bottom,
+                          List<Rectangle> regions) {
+        int pieceWidth = right - left;
+        int inkTop = -1;
+        int inkBottom = -1;
+        int run = 0;
+        int longestRun = 0;
+        for (int y = top; y < bottom; y++) {
+            if (hasInk(pixels, y * width + left, pieceWidth)) {
+                if (inkTop < 0) {
+                    inkTop = y;
+                }
+                inkBottom = y + 1;
+                longestRun = Math.max(longestRun, ++run);
+            } else {
+                run = 0;
+            }
+        }
+
+        if (inkTop < 0 || inkBottom - inkTop < MIN_REGION_HEIGHT || pieceWidth < MIN_REGION_WIDTH) {
+            return;
+        }
+        if (longestRun > maxLineHeight && (long) pieceWidth * (inkBottom - inkTop) * 10 < (long) width * height * 9) {
+            return;
+        }
+        regions.add(new Rectangle(left, inkTop, pieceWidth, inkBottom - inkTop));
+    }
+
+    private static boolean hasInk(byte[] pixels, int start, int count) {
+        int min = 255;
+        int max = 0;
+        for (int index = start; index < start + count; index++) {
+            int luminance = pixels[index] & 0xFF;
+            if (luminance < min) {
+                min = luminance;
+            }
+            if (luminance > max) {
+                max = luminance;
+            }
+            if (max - min >= INK_CONTRAST) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
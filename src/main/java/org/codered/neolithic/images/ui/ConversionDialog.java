@@ -1,6 +1,7 @@
 package org.codered.neolithic.images.ui;
 
-import org.codered.neolithic.images.conversion.TesseractConverter;
+import org.codered.neolithic.images.CaptureJob;
+import org.codered.neolithic.images.CaptureScheduler;
 import org.codered.neolithic.openai.AIRequest;
 
 import javax.swing.*;
@@ -15,13 +16,16 @@ public class ConversionDialog extends JDialog {
     private static final int DIALOG_HEIGHT = 700;
 
     private final JFrame parentFrame;
+    private final CaptureScheduler captureScheduler;
     private JTextArea instructionsArea;
     private JTextArea textArea;
     private BufferedImage bufferedImage;
+    private CaptureJob refreshJob;
 
-    public ConversionDialog(JFrame parentFrame) {
+    public ConversionDialog(JFrame parentFrame, CaptureScheduler captureScheduler) {
         super(parentFrame, "Converted Text", true);
         this.parentFrame = parentFrame;
+        this.captureScheduler = captureScheduler;
         setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
         setSize(DIALOG_WIDTH, DIALOG_HEIGHT);
         setLayout(new BorderLayout());
@@ -87,18 +91,30 @@ public class ConversionDialog extends JDialog {
         refreshButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                try {
-                    String converted = new TesseractConverter(".\\tessdata")
-                            .convertToText(bufferedImage);
-                    textArea.setText(converted);
-                } catch (Exception ex) {
-                    showErrorDialog("Error: " + ex.getMessage());
-                }
+                // Convert in the background, ahead of new captures and bypassing the cache, and keep the button
+                // disabled until it's done
+                refreshButton.setEnabled(false);
+                refreshJob = captureScheduler.submit(bufferedImage, null, CaptureScheduler.Priority.HIGH, true);
+                refreshJob.present(result -> {
+                    textArea.setText(result.text());
+                    refreshButton.setEnabled(true);
+                }, error -> {
+                    showErrorDialog("Error: " + error.getMessage());
+                    refreshButton.setEnabled(true);
+                });
             }
         });
         return refreshButton;
     }
 
+    @Override
+    public void dispose() {
+        if (refreshJob != null) {
+            refreshJob.cancel();
+        }
+        super.dispose();
+    }
+
     public void showErrorDialog(String errorMessage) {
         JOptionPane.showMessageDialog(parentFrame, errorMessage, "Error", JOptionPane.ERROR_MESSAGE);
     }
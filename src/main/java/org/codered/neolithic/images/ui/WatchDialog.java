@@ -0,0 +1,68 @@
+package org.codered.neolithic.images.ui;
+
+import org.codered.neolithic.screenshot.RegionWatcher;
+
+import javax.swing.*;
+import javax.swing.border.TitledBorder;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+/**
+ * Shows the live text of a watched screen region. Closing the dialog stops the watcher.
+ */
+public class WatchDialog extends JDialog {
+    private static final int DIALOG_WIDTH = 600;
+    private static final int DIALOG_HEIGHT = 500;
+
+    private final JTextArea textArea;
+    private final JLabel statusLabel;
+    private RegionWatcher regionWatcher;
+
+    public WatchDialog(JFrame parentFrame) {
+        super(parentFrame, "Watching Region", false);
+        setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        setSize(DIALOG_WIDTH, DIALOG_HEIGHT);
+        setLayout(new BorderLayout());
+        setLocationRelativeTo(parentFrame);
+
+        textArea = new JTextArea();
+        textArea.setLineWrap(true);
+        textArea.setWrapStyleWord(true);
+        textArea.setEditable(false);
+        TitledBorder titledBorder = BorderFactory.createTitledBorder("Live Text");
+        titledBorder.setTitleColor(Color.WHITE);
+        textArea.setBorder(titledBorder);
+        statusLabel = new JLabel(" ");
+
+        add(new JScrollPane(textArea), BorderLayout.CENTER);
+        add(statusLabel, BorderLayout.SOUTH);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                if (regionWatcher != null) {
+                    regionWatcher.close();
+                }
+            }
+        });
+    }
+
+    public void setRegionWatcher(RegionWatcher regionWatcher) {
+        this.regionWatcher = regionWatcher;
+    }
+
+    /**
+     * Replaces the shown text, keeping the view scrolled to the end so new log lines stay visible.
+     *
+     * @param text The watched region's current text.
+     */
+    public void updateText(String text) {
+        textArea.setText(text);
+        textArea.setCaretPosition(textArea.getDocument().getLength());
+        if (regionWatcher != null) {
+            statusLabel.setText(String.format("Frames: %d (%d unchanged)   Blocks converted: %d, reused: %d",
+                    regionWatcher.getFrames(), regionWatcher.getUnchangedFrames(),
+                    regionWatcher.getConvertedBlocks(), regionWatcher.getReusedBlocks()));
+        }
+    }
+}
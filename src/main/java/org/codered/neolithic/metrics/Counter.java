@@ -0,0 +1,32 @@
+package org.codered.neolithic.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events, e.g. accepted captures or failed AI requests. Counters are shared by name through
+ * {@link Metrics#counter} and published over JMX.
+ */
+public final class Counter implements CounterMXBean {
+    private final LongAdder count = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long events) {
+        count.add(events);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+    }
+}
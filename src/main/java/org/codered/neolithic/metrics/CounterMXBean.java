@@ -0,0 +1,10 @@
+package org.codered.neolithic.metrics;
+
+/**
+ * The JMX view of a {@link Counter}.
+ */
+public interface CounterMXBean {
+    long getCount();
+
+    void reset();
+}
@@ -0,0 +1,20 @@
+package org.codered.neolithic.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Reads a current value when asked, e.g. the depth of a queue or the number of busy engines, from the object that
+ * owns it. Gauges are registered through {@link Metrics#gauge}.
+ */
+public final class Gauge implements GaugeMXBean {
+    private final LongSupplier value;
+
+    Gauge(LongSupplier value) {
+        this.value = value;
+    }
+
+    @Override
+    public long getValue() {
+        return value.getAsLong();
+    }
+}
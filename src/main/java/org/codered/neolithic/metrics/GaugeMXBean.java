@@ -0,0 +1,8 @@
+package org.codered.neolithic.metrics;
+
+/**
+ * The JMX view of a {@link Gauge}.
+ */
+public interface GaugeMXBean {
+    long getValue();
+}
@@ -0,0 +1,108 @@
+package org.codered.neolithic.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The application's timers, counters and gauges, by name, so a slow capture can be traced to the stage that took the
+ * time: grabbing the screen, each preprocessing step, region detection, encoding, OCR, the spell or grammar check, or
+ * the AI call.
+ * <p>
+ * Every metric is published as an MXBean in the {@code org.codered.neolithic} domain, e.g.
+ * {@code org.codered.neolithic:type=Timer,name=ocr.recognize}, where JConsole or VisualVM can read it from the running
+ * application. {@link MetricsReporter} can also write them to a log file at an interval. Names are dotted, starting
+ * with the area they belong to:
+ * <ul>
+ *     <li>{@code capture.*}: the capture tool</li>
+ *     <li>{@code pipeline.*}: the stages of the {@code CapturePipeline}, and their executors' queues</li>
+ *     <li>{@code preprocess.*}: the steps of preprocessing, within {@code pipeline.preprocess}</li>
+ *     <li>{@code ocr.*}: text region detection, Tesseract and its engine pools</li>
+ *     <li>{@code refine.*}: the cleanup, spell and grammar checks</li>
+ *     <li>{@code ai.*}: AI requests, their scheduler and the HTTP client</li>
+ *     <li>{@code server.*}: the OCR server</li>
+ * </ul>
+ */
+public final class Metrics {
+    private static final String DOMAIN = "org.codered.neolithic";
+
+    private static final Map<String, StageTimer> TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, Gauge> GAUGES = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Gets the timer of the given name, creating and publishing it on first use. Callers keep the timer in a field,
+     * rather than looking it up for every duration.
+     *
+     * @param name The timer's name.
+     * @return The shared timer.
+     */
+    public static StageTimer timer(String name) {
+        return TIMERS.computeIfAbsent(name, key -> publish("Timer", key, new StageTimer(key)));
+    }
+
+    /**
+     * Gets the counter of the given name, creating and publishing it on first use.
+     *
+     * @param name The counter's name.
+     * @return The shared counter.
+     */
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, key -> publish("Counter", key, new Counter()));
+    }
+
+    /**
+     * Registers a gauge. A gauge registered under a name already in use replaces the old one, so a pool or queue
+     * that is created again reports the new instance.
+     *
+     * @param name  The gauge's name.
+     * @param value Reads the current value; called from JMX and reporter threads.
+     */
+    public static synchronized void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, publish("Gauge", name, new Gauge(value)));
+    }
+
+    /**
+     * Formats every metric as a table, sorted by name, for logs and the console.
+     *
+     * @return The report, one metric per line.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder(String.format("%-36s %9s %10s %10s %10s %10s %10s%n",
+                "timer", "count", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        new TreeMap<>(TIMERS).forEach((name, timer) -> report.append(String.format(
+                "%-36s %9d %10.2f %10.2f %10.2f %10.2f %10.2f%n", name, timer.getCount(), timer.getMeanMillis(),
+                timer.getP50Millis(), timer.getP90Millis(), timer.getP99Millis(), timer.getMaxMillis())));
+        new TreeMap<>(COUNTERS).forEach((name, counter) ->
+                report.append(String.format("%-36s %9d%n", name, counter.getCount())));
+        new TreeMap<>(GAUGES).forEach((name, gauge) ->
+                report.append(String.format("%-36s %9d%n", name, gauge.getValue())));
+        return report.toString();
+    }
+
+    /**
+     * Publishes a metric over JMX, replacing any earlier one of the same name. Metrics work without JMX, so failures
+     * are only reported.
+     */
+    private static <T> T publish(String type, String name, T metric) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(metric, objectName);
+        } catch (JMException e) {
+            System.err.println("Error publishing the metric " + name + " over JMX: " + e.getMessage());
+        }
+        return metric;
+    }
+}
@@ -0,0 +1,80 @@
+package org.codered.neolithic.metrics;
+
+import org.codered.neolithic.utils.ConfigReader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends the {@link Metrics#report() metrics report} to a log file at a fixed interval, and once more when the
+ * application exits, so slow captures can be looked into afterwards without a JMX console attached. The values are
+ * totals since startup; comparing two reports gives the interval between them.
+ */
+public class MetricsReporter implements AutoCloseable {
+    public static final String DEFAULT_LOG_FILE = "metrics.log";
+
+    private final Path logFile;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Thread shutdownHook = new Thread(this::write, "metrics-final-report");
+
+    /**
+     * @param logFile         The file reports are appended to.
+     * @param intervalSeconds The time between reports.
+     */
+    public MetricsReporter(Path logFile, long intervalSeconds) {
+        this.logFile = logFile;
+        executor.scheduleAtFixedRate(this::write, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Starts a reporter as described by the "metrics" section of the config.
+     *
+     * @param configReader The config reader to use.
+     * @return The running reporter, or null if reports are disabled, i.e. the interval isn't positive.
+     */
+    public static MetricsReporter fromConfig(ConfigReader configReader) {
+        int intervalSeconds = configReader.getInt("metrics", "logIntervalSeconds", 0);
+        if (intervalSeconds <= 0) {
+            return null;
+        }
+        return new MetricsReporter(Path.of(configReader.getString("metrics", "logFile", DEFAULT_LOG_FILE)),
+                intervalSeconds);
+    }
+
+    private synchronized void write() {
+        String report = "--- " + LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
+                + System.lineSeparator() + Metrics.report() + System.lineSeparator();
+        try {
+            Files.writeString(logFile, report, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Error writing metrics to " + logFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops reporting, after writing a last report.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down, the hook writes the last report
+            return;
+        }
+        write();
+    }
+}
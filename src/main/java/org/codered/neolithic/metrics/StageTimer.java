@@ -0,0 +1,91 @@
+package org.codered.neolithic.metrics;
+
+/**
+ * Times one stage of the work, e.g. recognizing a capture or spell checking it, into a {@link LatencyHistogram}.
+ * Timers are shared by name through {@link Metrics#timer} and published over JMX.
+ * <pre>{@code
+ * long start = TIMER.start();
+ * try {
+ *     ...
+ * } finally {
+ *     TIMER.stop(start);
+ * }
+ * }</pre>
+ */
+public final class StageTimer implements StageTimerMXBean {
+    private final String name;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    StageTimer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return The current time, to hand to {@link #stop} once the stage is done.
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time since {@link #start}.
+     *
+     * @param start The time returned by {@link #start}.
+     */
+    public void stop(long start) {
+        histogram.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Records a duration measured elsewhere.
+     *
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        histogram.record(nanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return histogram.getMeanMillis();
+    }
+
+    @Override
+    public double getP50Millis() {
+        return histogram.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getP90Millis() {
+        return histogram.getPercentileMillis(90);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return histogram.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getP999Millis() {
+        return histogram.getPercentileMillis(99.9);
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return histogram.getMaxMillis();
+    }
+
+    @Override
+    public void reset() {
+        histogram.reset();
+    }
+}
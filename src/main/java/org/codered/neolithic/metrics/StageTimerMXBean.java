@@ -0,0 +1,22 @@
+package org.codered.neolithic.metrics;
+
+/**
+ * The JMX view of a {@link StageTimer}. Durations are in milliseconds, since the timer was created or last reset.
+ */
+public interface StageTimerMXBean {
+    long getCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+    void reset();
+}
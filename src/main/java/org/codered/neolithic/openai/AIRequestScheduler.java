@@ -0,0 +1,445 @@
+package org.codered.neolithic.openai;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.completion.chat.ChatMessageRole;
+import org.codered.neolithic.Neolithic;
+import org.codered.neolithic.metrics.Metrics;
+import org.codered.neolithic.utils.ConfigReader;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Sits between the chats and the {@link OpenAIClient} and keeps them within the account's rate limits, so a burst of
+ * captures from several people waits its turn instead of failing with 429 errors.
+ * <ul>
+ *     <li>Two token buckets limit requests per minute and tokens per minute. A request's tokens are its prompt, counted
+ *     locally, plus its max_tokens, because that is what the API reserves against the limit.</li>
+ *     <li>Requests that don't fit yet wait in a FIFO queue; a single dispatcher thread starts them in order as soon as
+ *     both buckets allow.</li>
+ *     <li>With batching enabled, small requests marked as independent, i.e. the first question of a chat, are held for
+ *     a short window and sent together as one completion that answers each of them in a JSON array. The answers are
+ *     split apart again and delivered to each request whole. If the batch fails or its reply can't be split, its
+ *     requests go back to the head of the queue and are sent on their own, each charged to the buckets again.</li>
+ * </ul>
+ */
+public class AIRequestScheduler implements AutoCloseable {
+    public static final int DEFAULT_REQUESTS_PER_MINUTE = 500;
+    public static final int DEFAULT_TOKENS_PER_MINUTE = 30_000;
+    public static final int DEFAULT_BATCH_WINDOW_MILLIS = 250;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 5;
+    public static final int DEFAULT_MAX_BATCH_ITEM_TOKENS = 1000;
+    // The most completion tokens a batched call asks for, whatever its items asked for together
+    private static final int MAX_BATCH_COMPLETION_TOKENS = 4096;
+    private static final String BATCH_INSTRUCTIONS = "You will receive %d independent requests, each with its own "
+            + "instructions. Answer each one separately, as if it were the only one. Reply with nothing but a JSON "
+            + "array of %d strings, where string i is your complete answer to request i.";
+
+    private static AIRequestScheduler sharedScheduler;
+
+    private final OpenAIClient client;
+    private final TokenBucket requestBucket;
+    private final TokenBucket tokenBucket;
+    private final boolean batching;
+    private final long batchWindowNanos;
+    private final int maxBatchSize;
+    private final int maxBatchItemTokens;
+
+    private final Deque<ScheduledChat> queue = new ArrayDeque<>();
+    private final Thread dispatcher;
+    private final ExecutorService batchExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ai-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean closed;
+    private int maxQueueDepth;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder totalQueueNanos = new LongAdder();
+    private volatile long maxQueueNanos;
+    private final LongAdder throttleEvents = new LongAdder();
+    private final LongAdder throttledNanos = new LongAdder();
+    private final LongAdder apiCalls = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedRequests = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+
+    /**
+     * @param client             The client requests are sent with.
+     * @param requestsPerMinute  The request rate limit.
+     * @param tokensPerMinute    The token rate limit.
+     * @param batching           Whether independent small requests may be batched.
+     * @param batchWindowMillis  How long the first request of a possible batch waits for others.
+     * @param maxBatchSize       The most requests in one batch.
+     * @param maxBatchItemTokens The largest request, in estimated tokens, that may be batched.
+     */
+    public AIRequestScheduler(OpenAIClient client, int requestsPerMinute, int tokensPerMinute, boolean batching,
+                              long batchWindowMillis, int maxBatchSize, int maxBatchItemTokens) {
+        this.client = client;
+        this.requestBucket = new TokenBucket(requestsPerMinute);
+        this.tokenBucket = new TokenBucket(tokensPerMinute);
+        this.batching = batching && maxBatchSize > 1;
+        this.batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, batchWindowMillis));
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxBatchItemTokens = maxBatchItemTokens;
+        this.dispatcher = new Thread(this::dispatch, "ai-scheduler");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        Metrics.gauge("ai.scheduler.queued", this::getQueueDepth);
+    }
+
+    /**
+     * Builds a scheduler for a client from the "aiScheduler" section of the config.
+     *
+     * @param client       The client requests are sent with.
+     * @param configReader The config reader to use.
+     * @return The configured scheduler.
+     */
+    public static AIRequestScheduler fromConfig(OpenAIClient client, ConfigReader configReader) {
+        return new AIRequestScheduler(client,
+                configReader.getInt("aiScheduler", "requestsPerMinute", DEFAULT_REQUESTS_PER_MINUTE),
+                configReader.getInt("aiScheduler", "tokensPerMinute", DEFAULT_TOKENS_PER_MINUTE),
+                configReader.getBoolean("aiScheduler", "batching", false),
+                configReader.getInt("aiScheduler", "batchWindowMillis", DEFAULT_BATCH_WINDOW_MILLIS),
+                configReader.getInt("aiScheduler", "maxBatchSize", DEFAULT_MAX_BATCH_SIZE),
+                configReader.getInt("aiScheduler", "maxBatchItemTokens", DEFAULT_MAX_BATCH_ITEM_TOKENS));
+    }
+
+    /**
+     * Gets the scheduler shared by all chats, in front of the shared client.
+     *
+     * @return The shared scheduler.
+     */
+    public static synchronized AIRequestScheduler getShared() {
+        if (sharedScheduler == null) {
+            sharedScheduler = fromConfig(OpenAIClient.getShared(), Neolithic.getConfigReader());
+        }
+        return sharedScheduler;
+    }
+
+    /**
+     * Queues a chat request. Callbacks are called on a background thread, never after the request was cancelled.
+     *
+     * @param request     The request.
+     * @param independent Whether the request stands on its own, without earlier turns, and so may be batched.
+     * @param onText      Called with each piece of the answer; a batched request gets its whole answer at once.
+     * @param onError     Called if the request fails.
+     * @param onComplete  Called with the request once the whole answer has arrived, see {@link ScheduledChat#getText}.
+     * @return The queued request, which can be cancelled.
+     */
+    public ScheduledChat submit(ChatCompletionRequest request, boolean independent, Consumer<String> onText,
+                                Consumer<Throwable> onError, Consumer<ScheduledChat> onComplete) {
+        int promptTokens = ConversationContext.countTokens(request.getMessages());
+        long maxTokens = request.getMaxTokens() != null ? request.getMaxTokens() : 0;
+        ScheduledChat chat = new ScheduledChat(request, independent && promptTokens <= maxBatchItemTokens,
+                promptTokens + maxTokens, onText, onError, onComplete);
+        submitted.increment();
+        synchronized (queue) {
+            queue.addLast(chat);
+            maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+            queue.notifyAll();
+        }
+        return chat;
+    }
+
+    private void dispatch() {
+        while (!closed) {
+            try {
+                List<ScheduledChat> next = takeNext();
+                if (next.size() == 1) {
+                    startStream(next.get(0));
+                } else {
+                    batchExecutor.execute(() -> runBatch(next));
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // Keep dispatching; the failed request has already been told
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Waits for the next request, or batch of requests, that the rate limits allow, and takes it off the queue.
+     */
+    private List<ScheduledChat> takeNext() throws InterruptedException {
+        while (true) {
+            List<ScheduledChat> next = new ArrayList<>();
+            synchronized (queue) {
+                queue.removeIf(ScheduledChat::isCancelled);
+                while (queue.isEmpty()) {
+                    queue.wait();
+                    queue.removeIf(ScheduledChat::isCancelled);
+                }
+                ScheduledChat head = queue.peekFirst();
+                next.add(head);
+                if (batching && head.batchable) {
+                    long windowLeft = head.submittedAt + batchWindowNanos - System.nanoTime();
+                    if (windowLeft > 0 && countBatchable(head) < maxBatchSize) {
+                        TimeUnit.NANOSECONDS.timedWait(queue, windowLeft);
+                        continue;
+                    }
+                    collectBatch(head, next);
+                }
+            }
+
+            long tokens = next.stream().mapToLong(chat -> chat.estimatedTokens).sum();
+            long waitNanos = Math.max(requestBucket.nanosUntilAvailable(1), tokenBucket.nanosUntilAvailable(tokens));
+            if (waitNanos > 0) {
+                throttleEvents.increment();
+                throttledNanos.add(waitNanos);
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+                continue;
+            }
+
+            synchronized (queue) {
+                queue.removeAll(next);
+            }
+            requestBucket.take(1);
+            tokenBucket.take(tokens);
+            for (ScheduledChat chat : next) {
+                if (chat.isStarted()) {
+                    // Back from a failed batch; its time in the queue was counted the first time round
+                    continue;
+                }
+                long queueNanos = System.nanoTime() - chat.submittedAt;
+                started.increment();
+                totalQueueNanos.add(queueNanos);
+                maxQueueNanos = Math.max(maxQueueNanos, queueNanos);
+                chat.started();
+            }
+            apiCalls.increment();
+            return next;
+        }
+    }
+
+    private int countBatchable(ScheduledChat head) {
+        int count = 0;
+        for (ScheduledChat chat : queue) {
+            if (canBatch(head, chat)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void collectBatch(ScheduledChat head, List<ScheduledChat> batch) {
+        Iterator<ScheduledChat> iterator = queue.iterator();
+        iterator.next();
+        while (iterator.hasNext() && batch.size() < maxBatchSize) {
+            ScheduledChat chat = iterator.next();
+            if (chat != head && canBatch(head, chat)) {
+                batch.add(chat);
+            }
+        }
+    }
+
+    private static boolean canBatch(ScheduledChat head, ScheduledChat chat) {
+        return chat.batchable && !chat.isCancelled()
+                && Objects.equals(head.request.getModel(), chat.request.getModel())
+                && Objects.equals(head.request.getTemperature(), chat.request.getTemperature());
+    }
+
+    private void startStream(ScheduledChat chat) {
+        if (chat.isCancelled()) {
+            return;
+        }
+        chat.streaming(client.streamChatCompletion(chat.request, chat::received, chat::failed, chat::completed));
+    }
+
+    private void runBatch(List<ScheduledChat> batch) {
+        batches.increment();
+        batchedRequests.add(batch.size());
+        try {
+            String reply = client.createChatCompletion(batchRequest(batch)).getChoices().get(0).getMessage()
+                    .getContent();
+            List<String> answers = splitAnswers(reply, batch.size());
+            if (answers != null) {
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).answered(answers.get(i));
+                }
+                return;
+            }
+            System.err.println("Error: could not split a batched AI reply, sending its requests one by one");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.forEach(chat -> chat.failed(e));
+            return;
+        } catch (RuntimeException e) {
+            System.err.println("Error: batched AI request failed, sending its requests one by one: " + e.getMessage());
+        }
+
+        failedBatches.increment();
+        requeue(batch);
+    }
+
+    /**
+     * Puts the requests of a failed batch back at the head of the queue, in order, to be sent one by one. They wait for
+     * the rate limits like any other request, so a batch that failed because it was throttled doesn't turn into a
+     * burst of requests.
+     */
+    private void requeue(List<ScheduledChat> batch) {
+        synchronized (queue) {
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                ScheduledChat chat = batch.get(i);
+                chat.batchable = false;
+                queue.addFirst(chat);
+            }
+            queue.notifyAll();
+        }
+    }
+
+    private static ChatCompletionRequest batchRequest(List<ScheduledChat> batch) {
+        StringBuilder requests = new StringBuilder();
+        int maxTokens = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            ChatCompletionRequest request = batch.get(i).request;
+            requests.append("Request ").append(i + 1).append(":\n");
+            for (ChatMessage message : request.getMessages()) {
+                requests.append(message.getContent()).append("\n");
+            }
+            requests.append("\n");
+            maxTokens += request.getMaxTokens() != null ? request.getMaxTokens() : 0;
+        }
+
+        ChatCompletionRequest first = batch.get(0).request;
+        List<ChatMessage> messages = List.of(
+                new ChatMessage(ChatMessageRole.SYSTEM.value(), String.format(BATCH_INSTRUCTIONS, batch.size(), batch.size())),
+                new ChatMessage(ChatMessageRole.USER.value(), requests.toString()));
+        return ChatCompletionRequest.builder()
+                .model(first.getModel())
+                .messages(messages)
+                .temperature(first.getTemperature())
+                .maxTokens(Math.min(MAX_BATCH_COMPLETION_TOKENS, Math.max(1, maxTokens)))
+                .build();
+    }
+
+    /**
+     * Splits a batched reply into its answers.
+     *
+     * @return The answers, or null if the reply isn't a JSON array of the expected number of strings.
+     */
+    static List<String> splitAnswers(String reply, int count) {
+        if (reply == null) {
+            return null;
+        }
+        String json = reply.strip();
+        // Models like to wrap JSON in a Markdown code block
+        int start = json.indexOf('[');
+        int end = json.lastIndexOf(']');
+        if (start < 0 || end < start) {
+            return null;
+        }
+        try {
+            JsonArray array = JsonParser.parseString(json.substring(start, end + 1)).getAsJsonArray();
+            if (array.size() != count) {
+                return null;
+            }
+            List<String> answers = new ArrayList<>(count);
+            for (JsonElement element : array) {
+                answers.add(element.getAsString());
+            }
+            return answers;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the number of requests waiting for the rate limits.
+     *
+     * @return The current queue depth.
+     */
+    public int getQueueDepth() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    public int getMaxQueueDepth() {
+        synchronized (queue) {
+            return maxQueueDepth;
+        }
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * Gets the average time requests waited in the queue before being sent.
+     *
+     * @return The average queue time in milliseconds, or 0 if nothing was sent yet.
+     */
+    public double getAverageQueueMillis() {
+        long count = started.sum();
+        return count == 0 ? 0 : totalQueueNanos.sum() / 1e6 / count;
+    }
+
+    public double getMaxQueueMillis() {
+        return maxQueueNanos / 1e6;
+    }
+
+    /**
+     * Gets the number of times the dispatcher had to wait for a rate limit before it could send the next request.
+     *
+     * @return The throttle event count.
+     */
+    public long getThrottleEvents() {
+        return throttleEvents.sum();
+    }
+
+    public double getThrottledMillis() {
+        return throttledNanos.sum() / 1e6;
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getBatchedRequests() {
+        return batchedRequests.sum();
+    }
+
+    /**
+     * Gets the number of batches whose reply couldn't be used, so their requests were sent one by one.
+     *
+     * @return The failed batch count.
+     */
+    public long getFailedBatches() {
+        return failedBatches.sum();
+    }
+
+    /**
+     * Gets the number of requests answered per API call, which batching raises above 1.
+     *
+     * @return The requests per call, or 0 if nothing was sent yet.
+     */
+    public double getBatchEfficiency() {
+        long calls = apiCalls.sum();
+        return calls == 0 ? 0 : (double) started.sum() / calls;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+        batchExecutor.shutdownNow();
+    }
+}
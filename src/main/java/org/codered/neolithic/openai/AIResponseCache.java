@@ -0,0 +1,219 @@
+package org.codered.neolithic.openai;
+
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import org.codered.neolithic.Neolithic;
+import org.codered.neolithic.utils.ConfigReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the answers to chat requests, so sending the same captured text with the same instructions again shows
+ * the answer at once instead of paying for another completion.
+ * <p>
+ * Requests are keyed by a SHA-256 hash of the model, the sampling parameters and the messages, with the whitespace of
+ * every message normalized, so re-OCRing the same text with different line wrapping still hits. Answers are kept in a
+ * bounded LRU map, optionally backed by a {@link DiskResponseStore} that survives restarts. Both tiers drop an answer
+ * once it is older than the TTL, counted from when it was first stored, so promoting it from disk doesn't renew it.
+ * Only complete answers should be stored; a stopped or failed stream is not an answer to the request.
+ */
+public class AIResponseCache {
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    public static final int DEFAULT_TTL_HOURS = 24 * 7;
+    public static final int DEFAULT_MAX_DISK_MEGABYTES = 16;
+
+    private static AIResponseCache sharedCache;
+
+    private final long ttlMillis;
+    private final DiskResponseStore diskStore;
+    private final Map<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public AIResponseCache(int maxEntries) {
+        this(maxEntries, TimeUnit.HOURS.toMillis(DEFAULT_TTL_HOURS), null);
+    }
+
+    /**
+     * @param maxEntries The number of answers kept in memory.
+     * @param ttlMillis  How long an answer stays valid, in memory and on disk.
+     * @param diskStore  The on-disk tier, or null to keep answers in memory only.
+     */
+    AIResponseCache(int maxEntries, long ttlMillis, DiskResponseStore diskStore) {
+        this.ttlMillis = ttlMillis;
+        this.diskStore = diskStore;
+        int capacity = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > capacity) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Builds the cache described by the "responseCache" section of the config.
+     *
+     * @param configReader The config reader to use.
+     * @return The configured cache.
+     */
+    public static AIResponseCache fromConfig(ConfigReader configReader) {
+        long ttlMillis = TimeUnit.HOURS.toMillis(configReader.getInt("responseCache", "ttlHours", DEFAULT_TTL_HOURS));
+        DiskResponseStore diskStore = null;
+        if (configReader.getBoolean("responseCache", "disk", true)) {
+            Path file = Path.of(configReader.getString("responseCache", "file", "ai-cache/responses.log"));
+            try {
+                diskStore = new DiskResponseStore(file, ttlMillis,
+                        configReader.getInt("responseCache", "maxDiskMegabytes", DEFAULT_MAX_DISK_MEGABYTES) * 1024L * 1024L);
+            } catch (IOException e) {
+                System.err.println("Error: could not open the AI response cache " + file + ": " + e.getMessage());
+            }
+        }
+        return new AIResponseCache(configReader.getInt("responseCache", "maxEntries", DEFAULT_MAX_ENTRIES), ttlMillis,
+                diskStore);
+    }
+
+    /**
+     * Gets the cache shared by all chats, building it from the config on first use.
+     *
+     * @return The shared cache, or null if the cache is disabled.
+     */
+    public static synchronized AIResponseCache getShared() {
+        ConfigReader configReader = Neolithic.getConfigReader();
+        if (sharedCache == null && configReader.getBoolean("responseCache", "enabled", true)) {
+            sharedCache = fromConfig(configReader);
+        }
+        return sharedCache;
+    }
+
+    /**
+     * Computes the cache key of a request.
+     *
+     * @param request The request.
+     * @return The hex SHA-256 of the model, parameters and normalized messages.
+     */
+    public static String keyOf(ChatCompletionRequest request) {
+        StringBuilder canonical = new StringBuilder();
+        canonical.append(request.getModel()).append('\u0000')
+                .append(request.getTemperature()).append('\u0000')
+                .append(request.getTopP()).append('\u0000')
+                .append(request.getMaxTokens()).append('\u0000');
+        for (ChatMessage message : request.getMessages()) {
+            canonical.append(message.getRole()).append('\u0000')
+                    .append(normalize(message.getContent())).append('\u0000');
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String normalize(String content) {
+        return content == null ? "" : content.strip().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Looks up the answer to a request.
+     *
+     * @param key The request's key.
+     * @return The answer, or null on a miss.
+     */
+    public String get(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && !isExpired(entry)) {
+                hits.increment();
+                return entry.response();
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+
+        String response = diskStore != null ? diskStore.get(key) : null;
+        long storedAt = diskStore != null ? diskStore.getStoredAt(key) : -1;
+        if (response == null || storedAt < 0) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        diskHits.increment();
+        synchronized (entries) {
+            entries.put(key, new Entry(response, storedAt));
+        }
+        return response;
+    }
+
+    /**
+     * Stores the complete answer to a request.
+     *
+     * @param key      The request's key.
+     * @param response The answer.
+     */
+    public void put(String key, String response) {
+        synchronized (entries) {
+            entries.put(key, new Entry(response, System.currentTimeMillis()));
+        }
+        if (diskStore != null) {
+            evictions.add(diskStore.put(key, response));
+        }
+    }
+
+    private boolean isExpired(Entry entry) {
+        return System.currentTimeMillis() - entry.storedAt() > ttlMillis;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups answered from disk after missing in memory, which are also counted as hits.
+     *
+     * @return The disk hit count.
+     */
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getDiskSize() {
+        return diskStore != null ? diskStore.size() : 0;
+    }
+
+    private record Entry(String response, long storedAt) {
+    }
+}
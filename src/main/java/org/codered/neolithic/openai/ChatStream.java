@@ -0,0 +1,112 @@
+package org.codered.neolithic.openai;
+
+import com.theokanning.openai.completion.chat.ChatCompletionChoice;
+import com.theokanning.openai.completion.chat.ChatCompletionChunk;
+import io.reactivex.Flowable;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+
+import java.util.function.Consumer;
+
+/**
+ * A chat completion being streamed from the API, started by {@link OpenAIClient#streamChatCompletion}.
+ * <p>
+ * Text is passed on chunk by chunk as it arrives, on the HTTP client's thread. Cancelling cancels the HTTP call, which
+ * closes the connection, so the API stops generating (and billing) the rest of the answer instead of the client
+ * reading and discarding it. The subscription stays in place to receive the resulting error, which is dropped; once
+ * disposed, RxJava would report it as undeliverable on the HTTP client's thread.
+ */
+public class ChatStream {
+    private final Call<ResponseBody> call;
+    private final long startNanos = System.nanoTime();
+    private final StringBuilder text = new StringBuilder();
+    private volatile long firstTokenNanos;
+    private volatile boolean cancelled;
+    private volatile boolean finished;
+
+    ChatStream(Call<ResponseBody> call) {
+        this.call = call;
+    }
+
+    /**
+     * Subscribes to the chunks. Callbacks are not called after the stream has been cancelled.
+     */
+    void start(Flowable<ChatCompletionChunk> chunks, Consumer<String> onText, Consumer<Throwable> onError,
+               Runnable onComplete, Consumer<ChatStream> onFirstToken) {
+        chunks.subscribe(chunk -> {
+            String delta = getDelta(chunk);
+            if (cancelled || delta == null || delta.isEmpty()) {
+                return;
+            }
+            if (firstTokenNanos == 0) {
+                firstTokenNanos = System.nanoTime();
+                onFirstToken.accept(this);
+            }
+            synchronized (text) {
+                text.append(delta);
+            }
+            onText.accept(delta);
+        }, error -> {
+            finished = true;
+            if (!cancelled) {
+                onError.accept(error);
+            }
+        }, () -> {
+            finished = true;
+            if (!cancelled) {
+                onComplete.run();
+            }
+        });
+    }
+
+    private static String getDelta(ChatCompletionChunk chunk) {
+        if (chunk.getChoices() == null || chunk.getChoices().isEmpty()) {
+            return null;
+        }
+        ChatCompletionChoice choice = chunk.getChoices().get(0);
+        return choice.getMessage() != null ? choice.getMessage().getContent() : null;
+    }
+
+    /**
+     * Stops the stream and aborts the HTTP request. Does nothing if the stream already finished.
+     */
+    public void cancel() {
+        if (finished || cancelled) {
+            return;
+        }
+        cancelled = true;
+        call.cancel();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Gets the text received so far.
+     *
+     * @return The streamed text.
+     */
+    public String getText() {
+        synchronized (text) {
+            return text.toString();
+        }
+    }
+
+    /**
+     * Gets the time from starting the request until the first text arrived.
+     *
+     * @return The time to first token in milliseconds, or -1 if no text arrived yet.
+     */
+    public double getTimeToFirstTokenMillis() {
+        return firstTokenNanos == 0 ? -1 : (firstTokenNanos - startNanos) / 1e6;
+    }
+
+    public double getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1e6;
+    }
+}
@@ -0,0 +1,245 @@
+package org.codered.neolithic.openai;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.completion.chat.ChatMessageRole;
+import org.codered.neolithic.utils.ConfigReader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the history of a chat about a capture and decides what of it is sent with each request.
+ * <p>
+ * The captured text is sent once, in the system message, and wherever a turn repeats it verbatim it is replaced by a
+ * short reference. Tokens are counted locally with the cl100k_base encoding used by GPT-4 models, the same way the API
+ * bills them. If a request would exceed the token budget, the oldest turns are folded into a summary of truncated
+ * one-line excerpts, and excerpts are dropped oldest first if that isn't enough. The newest user turn is always sent
+ * in full, and as a last resort the captured text itself is truncated.
+ * <p>
+ * For every request the context records how many tokens the old approach would have sent, which was the whole
+ * history with the captured text repeated in it, against how many were actually sent.
+ */
+public class ConversationContext {
+    public static final int DEFAULT_TOKEN_BUDGET = 6000;
+    // Every message costs a few tokens for its role and separators, and every reply is primed with a few more
+    private static final int MESSAGE_OVERHEAD_TOKENS = 3;
+    private static final int REPLY_PRIMING_TOKENS = 3;
+    private static final int EXCERPT_TOKENS = 40;
+    // Shorter captured texts cost less than the reference that would replace them
+    private static final int MIN_DEDUPLICATED_LENGTH = 64;
+    private static final String SYSTEM_PROMPT = "You are a chat assistant. The user captured the following text "
+            + "from their screen:\n\n";
+    private static final String CAPTURED_TEXT_REFERENCE = "[the captured text above]";
+    private static final String SUMMARY_HEADER = "Summary of the earlier conversation:";
+    private static final Encoding ENCODING = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+
+    private final String capturedText;
+    private final int tokenBudget;
+    private final List<ChatMessage> turns = new ArrayList<>();
+
+    private long requests;
+    private long naiveTokens;
+    private long sentTokens;
+    private int lastNaiveTokens;
+    private int lastSentTokens;
+    private int lastSummarizedTurns;
+
+    /**
+     * @param capturedText The text the chat is about.
+     * @param tokenBudget  The most prompt tokens sent with one request.
+     */
+    public ConversationContext(String capturedText, int tokenBudget) {
+        this.capturedText = capturedText != null ? capturedText.trim() : "";
+        this.tokenBudget = Math.max(256, tokenBudget);
+    }
+
+    /**
+     * Creates a context with the budget from the "conversation" section of the config.
+     *
+     * @param capturedText The text the chat is about.
+     * @param configReader The config reader to use.
+     * @return The new context.
+     */
+    public static ConversationContext fromConfig(String capturedText, ConfigReader configReader) {
+        return new ConversationContext(capturedText,
+                configReader.getInt("conversation", "tokenBudget", DEFAULT_TOKEN_BUDGET));
+    }
+
+    /**
+     * Adds a user turn and builds the messages to send for it.
+     *
+     * @param userMessage The user's message.
+     * @return The messages, within the token budget where at all possible.
+     */
+    public synchronized List<ChatMessage> prepareRequest(String userMessage) {
+        turns.add(new ChatMessage(ChatMessageRole.USER.value(), userMessage));
+
+        List<ChatMessage> messages = fit();
+        lastSentTokens = countTokens(messages);
+        lastNaiveTokens = countNaiveTokens();
+        requests++;
+        sentTokens += lastSentTokens;
+        naiveTokens += lastNaiveTokens;
+        return messages;
+    }
+
+    /**
+     * Adds the assistant's reply to the last request, or as much of it as arrived if it was stopped.
+     *
+     * @param reply The reply text.
+     */
+    public synchronized void addAssistantReply(String reply) {
+        if (reply != null && !reply.isBlank()) {
+            turns.add(new ChatMessage(ChatMessageRole.ASSISTANT.value(), reply));
+        }
+    }
+
+    /**
+     * Removes the last assistant reply, so it can be replaced by a regenerated one.
+     */
+    public synchronized void discardLastReply() {
+        if (!turns.isEmpty() && ChatMessageRole.ASSISTANT.value().equals(turns.get(turns.size() - 1).getRole())) {
+            turns.remove(turns.size() - 1);
+        }
+    }
+
+    private List<ChatMessage> fit() {
+        List<ChatMessage> recent = new ArrayList<>();
+        List<Integer> recentTokens = new ArrayList<>();
+        int total = REPLY_PRIMING_TOKENS;
+        for (ChatMessage turn : turns) {
+            ChatMessage message = new ChatMessage(turn.getRole(), deduplicate(turn.getContent()));
+            int tokens = countTokens(message);
+            recent.add(message);
+            recentTokens.add(tokens);
+            total += tokens;
+        }
+        String system = SYSTEM_PROMPT + capturedText;
+        int systemTokens = countTokens(new ChatMessage(ChatMessageRole.SYSTEM.value(), system));
+        total += systemTokens;
+
+        // Fold the oldest turns into excerpts until the rest fits, but never the newest user turn
+        List<String> excerpts = new ArrayList<>();
+        lastSummarizedTurns = 0;
+        while (recent.size() > 1 && total + summaryTokens(excerpts) > tokenBudget) {
+            excerpts.add(excerpt(recent.remove(0)));
+            total -= recentTokens.remove(0);
+            lastSummarizedTurns++;
+        }
+        while (!excerpts.isEmpty() && total + summaryTokens(excerpts) > tokenBudget) {
+            excerpts.remove(0);
+        }
+
+        int overflow = total + summaryTokens(excerpts) - tokenBudget;
+        if (overflow > 0) {
+            system = SYSTEM_PROMPT + truncate(capturedText, ENCODING.countTokens(capturedText) - overflow);
+        }
+        return assemble(system, excerpts, recent);
+    }
+
+    private static int summaryTokens(List<String> excerpts) {
+        return excerpts.isEmpty() ? 0 : countTokens(summary(excerpts));
+    }
+
+    private static ChatMessage summary(List<String> excerpts) {
+        return new ChatMessage(ChatMessageRole.SYSTEM.value(), SUMMARY_HEADER + "\n" + String.join("\n", excerpts));
+    }
+
+    private String deduplicate(String content) {
+        if (capturedText.length() < MIN_DEDUPLICATED_LENGTH || !content.contains(capturedText)) {
+            return content;
+        }
+        return content.replace(capturedText, CAPTURED_TEXT_REFERENCE);
+    }
+
+    private static String excerpt(ChatMessage turn) {
+        String who = ChatMessageRole.USER.value().equals(turn.getRole()) ? "The user" : "You";
+        return "- " + who + ": " + truncate(turn.getContent().replace('\n', ' '), EXCERPT_TOKENS);
+    }
+
+    private static String truncate(String text, int maxTokens) {
+        EncodingResult result = ENCODING.encode(text, Math.max(0, maxTokens));
+        return result.isTruncated() ? ENCODING.decode(result.getTokens()) + "..." : text;
+    }
+
+    private static List<ChatMessage> assemble(String system, List<String> excerpts, List<ChatMessage> recent) {
+        List<ChatMessage> messages = new ArrayList<>(recent.size() + 2);
+        messages.add(new ChatMessage(ChatMessageRole.SYSTEM.value(), system));
+        if (!excerpts.isEmpty()) {
+            messages.add(summary(excerpts));
+        }
+        messages.addAll(recent);
+        return messages;
+    }
+
+    /**
+     * Counts the prompt tokens a list of messages will be billed for.
+     *
+     * @param messages The messages.
+     * @return The token count.
+     */
+    public static int countTokens(List<ChatMessage> messages) {
+        int tokens = REPLY_PRIMING_TOKENS;
+        for (ChatMessage message : messages) {
+            tokens += countTokens(message);
+        }
+        return tokens;
+    }
+
+    private static int countTokens(ChatMessage message) {
+        return MESSAGE_OVERHEAD_TOKENS + ENCODING.countTokens(message.getRole())
+                + ENCODING.countTokens(message.getContent());
+    }
+
+    /**
+     * Counts what the request would have cost before the context was managed: the whole history, without
+     * deduplication, plus the captured text repeated in a system message.
+     */
+    private int countNaiveTokens() {
+        List<ChatMessage> messages = new ArrayList<>(turns);
+        messages.add(new ChatMessage(ChatMessageRole.SYSTEM.value(), SYSTEM_PROMPT + capturedText));
+        return countTokens(messages);
+    }
+
+    public synchronized int getLastSentTokens() {
+        return lastSentTokens;
+    }
+
+    public synchronized int getLastNaiveTokens() {
+        return lastNaiveTokens;
+    }
+
+    /**
+     * Gets the number of turns the last request folded into the summary.
+     *
+     * @return The summarized turn count.
+     */
+    public synchronized int getLastSummarizedTurns() {
+        return lastSummarizedTurns;
+    }
+
+    public synchronized long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Gets the tokens saved over all requests compared to sending the unmanaged history.
+     *
+     * @return The saved token count.
+     */
+    public synchronized long getSavedTokens() {
+        return naiveTokens - sentTokens;
+    }
+
+    public synchronized long getSentTokens() {
+        return sentTokens;
+    }
+
+    public int getTokenBudget() {
+        return tokenBudget;
+    }
+}
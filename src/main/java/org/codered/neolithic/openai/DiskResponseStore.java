@@ -0,0 +1,191 @@
+package org.codered.neolithic.openai;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The on-disk tier of {@link AIResponseCache}: a single append-only log with one JSON record per line, holding the
+ * key, the time the response was stored and the response itself.
+ * <p>
+ * Only an index of record offsets is kept in memory; responses are read back from the log on demand. Writes only ever
+ * append, so storing a response costs one small write however large the log is. Records older than the TTL are
+ * treated as misses, and once the log grows past its size limit it is compacted: the newest live records are copied
+ * to a new log up to half the limit, which then atomically replaces the old one. A record cut short by a crash is
+ * dropped when the log is opened. I/O errors are reported and treated as misses.
+ */
+final class DiskResponseStore {
+    private final Path file;
+    private final long ttlMillis;
+    private final long maxBytes;
+    private final Map<String, Record> index = new HashMap<>();
+    private RandomAccessFile log;
+
+    private record Record(long offset, int length, long storedAt) {
+    }
+
+    /**
+     * @param file      The log file, created if missing.
+     * @param ttlMillis How long a stored response stays valid.
+     * @param maxBytes  The log size that triggers compaction.
+     * @throws IOException If the log can't be opened.
+     */
+    DiskResponseStore(Path file, long ttlMillis, long maxBytes) throws IOException {
+        this.file = file;
+        this.ttlMillis = ttlMillis;
+        this.maxBytes = Math.max(4096, maxBytes);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        open();
+    }
+
+    private void open() throws IOException {
+        index.clear();
+        log = new RandomAccessFile(file.toFile(), "rw");
+        byte[] bytes = new byte[(int) Math.min(Integer.MAX_VALUE - 8, log.length())];
+        log.readFully(bytes);
+
+        int start = 0;
+        for (int end = 0; end < bytes.length; end++) {
+            if (bytes[end] != '\n') {
+                continue;
+            }
+            try {
+                JsonObject json = JsonParser.parseString(new String(bytes, start, end - start, StandardCharsets.UTF_8))
+                        .getAsJsonObject();
+                // A later record for the same key replaces the earlier one
+                index.put(json.get("key").getAsString(), new Record(start, end - start, json.get("storedAt").getAsLong()));
+            } catch (RuntimeException e) {
+                System.err.println("Error: skipping a corrupt record in " + file + " at offset " + start);
+            }
+            start = end + 1;
+        }
+        // Anything after the last newline is a record that was being written when the process died
+        log.setLength(start);
+        log.seek(start);
+    }
+
+    synchronized String get(String key) {
+        Record record = index.get(key);
+        if (record == null) {
+            return null;
+        }
+        if (isExpired(record)) {
+            index.remove(key);
+            return null;
+        }
+        try {
+            byte[] bytes = new byte[record.length()];
+            log.seek(record.offset());
+            log.readFully(bytes);
+            log.seek(log.length());
+            return JsonParser.parseString(new String(bytes, StandardCharsets.UTF_8)).getAsJsonObject()
+                    .get("response").getAsString();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error: could not read cached AI response from " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Appends a response, compacting the log if it has grown past its limit.
+     *
+     * @return The number of records dropped by compaction.
+     */
+    synchronized int put(String key, String response) {
+        JsonObject json = new JsonObject();
+        json.addProperty("key", key);
+        json.addProperty("storedAt", System.currentTimeMillis());
+        json.addProperty("response", response);
+        try {
+            append(json, key);
+            if (log.length() > maxBytes) {
+                return compact();
+            }
+        } catch (IOException e) {
+            System.err.println("Error: could not write cached AI response to " + file + ": " + e.getMessage());
+        }
+        return 0;
+    }
+
+    private void append(JsonObject json, String key) throws IOException {
+        // Gson escapes line breaks inside strings, so a record is always exactly one line
+        byte[] bytes = (json + "\n").getBytes(StandardCharsets.UTF_8);
+        long offset = log.length();
+        log.seek(offset);
+        log.write(bytes);
+        index.put(key, new Record(offset, bytes.length - 1, json.get("storedAt").getAsLong()));
+    }
+
+    private int compact() throws IOException {
+        List<Map.Entry<String, Record>> live = new ArrayList<>();
+        for (Map.Entry<String, Record> entry : index.entrySet()) {
+            if (!isExpired(entry.getValue())) {
+                live.add(entry);
+            }
+        }
+        live.sort((a, b) -> Long.compare(b.getValue().storedAt(), a.getValue().storedAt()));
+
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), "responses", ".tmp");
+        int kept = 0;
+        try (RandomAccessFile compacted = new RandomAccessFile(temp.toFile(), "rw")) {
+            long written = 0;
+            for (Map.Entry<String, Record> entry : live) {
+                Record record = entry.getValue();
+                if (written + record.length() + 1 > maxBytes / 2) {
+                    break;
+                }
+                byte[] bytes = new byte[record.length()];
+                log.seek(record.offset());
+                log.readFully(bytes);
+                compacted.write(bytes);
+                compacted.write('\n');
+                written += record.length() + 1;
+                kept++;
+            }
+        }
+
+        int dropped = index.size() - kept;
+        log.close();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+        return dropped;
+    }
+
+    /**
+     * Gets when the response to a request was stored, so a copy kept in memory can expire at the same time.
+     *
+     * @return The time in epoch milliseconds, or -1 if nothing is stored for the key.
+     */
+    synchronized long getStoredAt(String key) {
+        Record record = index.get(key);
+        return record != null ? record.storedAt() : -1;
+    }
+
+    private boolean isExpired(Record record) {
+        return System.currentTimeMillis() - record.storedAt() > ttlMillis;
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    synchronized long sizeInBytes() {
+        try {
+            return log.length();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.codered.neolithic.openai;
+
+import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.StyledDocument;
+
+/**
+ * Appends streamed text to a text pane without flooding the event dispatch thread.
+ * <p>
+ * Text can be appended from any thread; it is collected in a buffer and written to the document once per frame by a
+ * Swing timer, so a fast stream costs one document insert and one layout per frame rather than one per token.
+ */
+public class DocumentStreamWriter {
+    // About one frame at 60 Hz
+    private static final int FRAME_MILLIS = 16;
+
+    private final JTextPane textPane;
+    private final AttributeSet attributes;
+    private final StringBuilder pending = new StringBuilder();
+    private final Timer timer;
+    private long flushes;
+
+    /**
+     * Creates a writer and starts flushing. Must be called on the event dispatch thread.
+     *
+     * @param textPane   The pane to append to.
+     * @param attributes The attributes of the appended text.
+     */
+    public DocumentStreamWriter(JTextPane textPane, AttributeSet attributes) {
+        this.textPane = textPane;
+        this.attributes = attributes;
+        this.timer = new Timer(FRAME_MILLIS, e -> flush());
+        timer.setCoalesce(true);
+        timer.start();
+    }
+
+    /**
+     * Queues text to be appended with the next frame. May be called from any thread.
+     *
+     * @param text The text to append.
+     */
+    public void append(String text) {
+        synchronized (pending) {
+            pending.append(text);
+        }
+    }
+
+    /**
+     * Appends whatever is still pending and stops flushing. May be called from any thread.
+     */
+    public void finish() {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(this::finish);
+            return;
+        }
+        timer.stop();
+        flush();
+    }
+
+    private void flush() {
+        String text;
+        synchronized (pending) {
+            if (pending.length() == 0) {
+                return;
+            }
+            text = pending.toString();
+            pending.setLength(0);
+        }
+
+        StyledDocument doc = textPane.getStyledDocument();
+        try {
+            doc.insertString(doc.getLength(), text, attributes);
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+        textPane.setCaretPosition(doc.getLength());
+        flushes++;
+    }
+
+    /**
+     * Gets the number of document updates made so far, one per frame in which text arrived.
+     *
+     * @return The flush count.
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+}
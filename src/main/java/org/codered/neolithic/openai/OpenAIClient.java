@@ -0,0 +1,232 @@
+package org.codered.neolithic.openai;
+
+import com.theokanning.openai.client.OpenAiApi;
+import com.theokanning.openai.completion.chat.ChatCompletionChunk;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatCompletionResult;
+import com.theokanning.openai.service.OpenAiService;
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import org.codered.neolithic.Neolithic;
+import org.codered.neolithic.metrics.Metrics;
+import org.codered.neolithic.utils.ConfigReader;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * The OpenAI client shared by every chat in the process.
+ * <p>
+ * One HTTP client means one connection pool, so connections to the API are kept alive between requests instead of
+ * paying for a new TLS handshake each time. Requests time out instead of hanging, 429 and 5xx responses are retried
+ * by a {@link RetryInterceptor}, and a semaphore bounds how many requests are in flight at once, so a burst of chats
+ * queues locally rather than tripping the API's rate limits. Settings come from the "openai" section of the config.
+ */
+public final class OpenAIClient {
+    public static final String DEFAULT_BASE_URL = "https://api.openai.com/";
+    public static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 10;
+    public static final int DEFAULT_READ_TIMEOUT_SECONDS = 60;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final int DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+    // Idle connections are kept this long, well past the gap between turns of a chat
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static OpenAIClient sharedClient;
+
+    private final OpenAiApi api;
+    private final OpenAiService service;
+    private final OkHttpClient httpClient;
+    private final RetryInterceptor retryInterceptor;
+    private final Semaphore permits;
+    private final int maxConcurrentRequests;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder streams = new LongAdder();
+    private final LongAdder firstTokens = new LongAdder();
+    private final LongAdder totalTimeToFirstTokenNanos = new LongAdder();
+
+    /**
+     * @param token                 The API token.
+     * @param baseUrl               The API base URL, ending in a slash; may include a path, e.g. for a proxy.
+     * @param connectTimeout        How long to wait for a connection.
+     * @param readTimeout           How long to wait for the response, or between reads of a streamed response.
+     * @param maxRetries            How often a 429 or 5xx response or a failed connection is retried.
+     * @param initialBackoffMillis  The upper bound of the first retry's backoff.
+     * @param maxConcurrentRequests The most requests in flight at once.
+     */
+    public OpenAIClient(String token, String baseUrl, Duration connectTimeout, Duration readTimeout, int maxRetries,
+                        long initialBackoffMillis, int maxConcurrentRequests) {
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+        this.permits = new Semaphore(this.maxConcurrentRequests, true);
+        this.retryInterceptor = new RetryInterceptor(maxRetries, initialBackoffMillis);
+
+        // The default client adds the authentication header and the read timeout
+        OkHttpClient.Builder builder = OpenAiService.defaultClient(token, readTimeout).newBuilder()
+                .connectTimeout(connectTimeout)
+                .connectionPool(new ConnectionPool(this.maxConcurrentRequests, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES));
+        // The API's paths are absolute, so Retrofit drops any path of the base URL; put it back
+        String basePath = HttpUrl.get(baseUrl).encodedPath().replaceAll("/+$", "");
+        if (!basePath.isEmpty()) {
+            builder.addInterceptor(chain -> {
+                HttpUrl url = chain.request().url();
+                return chain.proceed(chain.request().newBuilder()
+                        .url(url.newBuilder().encodedPath(basePath + url.encodedPath()).build())
+                        .build());
+            });
+        }
+        this.httpClient = builder.addInterceptor(retryInterceptor).build();
+        // Streamed responses are enqueued asynchronously, so they are bounded by the dispatcher
+        httpClient.dispatcher().setMaxRequests(this.maxConcurrentRequests);
+        httpClient.dispatcher().setMaxRequestsPerHost(this.maxConcurrentRequests);
+
+        // Keeps the library's JSON and Rx setup, but allows another base URL, e.g. a proxy or a local stub server
+        Retrofit retrofit = OpenAiService.defaultRetrofit(httpClient, OpenAiService.defaultObjectMapper()).newBuilder()
+                .baseUrl(baseUrl)
+                .build();
+        this.api = retrofit.create(OpenAiApi.class);
+        this.service = new OpenAiService(api, httpClient.dispatcher().executorService());
+
+        Metrics.gauge("ai.client.inFlight", this::getInFlight);
+        Metrics.gauge("ai.client.waiting", this::getQueuedRequests);
+        Metrics.gauge("ai.client.idleConnections", this::getIdleConnections);
+    }
+
+    /**
+     * Builds a client from the "openai" section of the config, with the token from "api.openai.token".
+     *
+     * @param configReader The config reader to use.
+     * @return The configured client.
+     */
+    public static OpenAIClient fromConfig(ConfigReader configReader) {
+        return new OpenAIClient(configReader.getOpenAiToken(),
+                configReader.getString("openai", "baseUrl", DEFAULT_BASE_URL),
+                Duration.ofSeconds(configReader.getInt("openai", "connectTimeoutSeconds", DEFAULT_CONNECT_TIMEOUT_SECONDS)),
+                Duration.ofSeconds(configReader.getInt("openai", "readTimeoutSeconds", DEFAULT_READ_TIMEOUT_SECONDS)),
+                configReader.getInt("openai", "maxRetries", DEFAULT_MAX_RETRIES),
+                configReader.getInt("openai", "initialBackoffMillis", DEFAULT_INITIAL_BACKOFF_MILLIS),
+                configReader.getInt("openai", "maxConcurrentRequests", DEFAULT_MAX_CONCURRENT_REQUESTS));
+    }
+
+    /**
+     * Gets the client shared by the whole process, building it from the config on first use.
+     *
+     * @return The shared client.
+     */
+    public static synchronized OpenAIClient getShared() {
+        if (sharedClient == null) {
+            sharedClient = fromConfig(Neolithic.getConfigReader());
+        }
+        return sharedClient;
+    }
+
+    /**
+     * Sends a chat completion request, waiting for a free slot first if the concurrency limit is reached.
+     *
+     * @param request The request.
+     * @return The completion.
+     * @throws InterruptedException If the thread was interrupted while waiting for a slot.
+     */
+    public ChatCompletionResult createChatCompletion(ChatCompletionRequest request) throws InterruptedException {
+        permits.acquire();
+        requests.increment();
+        try {
+            return service.createChatCompletion(request);
+        } catch (RuntimeException e) {
+            failures.increment();
+            throw e;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Starts streaming a chat completion. The stream is queued by the HTTP dispatcher if the concurrency limit is
+     * reached, so this never blocks.
+     *
+     * @param request    The request; it is switched to streaming.
+     * @param onText     Called with each piece of text as it arrives, on the HTTP client's thread.
+     * @param onError    Called if the stream fails, on the HTTP client's thread.
+     * @param onComplete Called once the whole answer has arrived, on the HTTP client's thread.
+     * @return The stream, which can be cancelled.
+     */
+    public ChatStream streamChatCompletion(ChatCompletionRequest request, Consumer<String> onText,
+                                           Consumer<Throwable> onError, Runnable onComplete) {
+        request.setStream(true);
+        streams.increment();
+        Call<ResponseBody> call = api.createChatCompletionStream(request);
+        ChatStream stream = new ChatStream(call);
+        stream.start(OpenAiService.stream(call, ChatCompletionChunk.class), onText, error -> {
+            failures.increment();
+            onError.accept(error);
+        }, onComplete, this::recordFirstToken);
+        return stream;
+    }
+
+    private void recordFirstToken(ChatStream stream) {
+        firstTokens.increment();
+        totalTimeToFirstTokenNanos.add((long) (stream.getTimeToFirstTokenMillis() * 1e6));
+    }
+
+    /**
+     * Gets the underlying service, for calls the client doesn't wrap. Those still share the connection pool, timeouts
+     * and retries, but not the concurrency limit.
+     *
+     * @return The shared service.
+     */
+    public OpenAiService getService() {
+        return service;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getStreams() {
+        return streams.sum();
+    }
+
+    /**
+     * Gets the average time streamed requests took until their first text arrived, which is the latency the user
+     * actually notices.
+     *
+     * @return The average time to first token in milliseconds, or 0 if no stream produced text yet.
+     */
+    public double getAverageTimeToFirstTokenMillis() {
+        long count = firstTokens.sum();
+        return count == 0 ? 0 : totalTimeToFirstTokenNanos.sum() / 1e6 / count;
+    }
+
+    public long getRetries() {
+        return retryInterceptor.getRetries();
+    }
+
+    /**
+     * Gets the number of requests currently in flight.
+     *
+     * @return The requests holding a slot.
+     */
+    public int getInFlight() {
+        return maxConcurrentRequests - permits.availablePermits();
+    }
+
+    public int getQueuedRequests() {
+        return permits.getQueueLength();
+    }
+
+    public int getIdleConnections() {
+        return httpClient.connectionPool().idleConnectionCount();
+    }
+}
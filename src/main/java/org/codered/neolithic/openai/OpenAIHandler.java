@@ -2,9 +2,11 @@ package org.codered.neolithic.openai;
 
 import com.theokanning.openai.completion.chat.ChatCompletionRequest;
 import com.theokanning.openai.completion.chat.ChatMessage;
-import com.theokanning.openai.completion.chat.ChatMessageRole;
 import com.theokanning.openai.service.OpenAiService;
 import org.codered.neolithic.Neolithic;
+import org.codered.neolithic.metrics.Counter;
+import org.codered.neolithic.metrics.Metrics;
+import org.codered.neolithic.metrics.StageTimer;
 
 import javax.swing.*;
 import javax.swing.text.BadLocationException;
@@ -12,29 +14,44 @@ import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.StyledDocument;
 import java.awt.*;
-import java.time.Duration;
-import java.util.ArrayList;
 import java.util.List;
 
 public class OpenAIHandler {
-
-    private final OpenAiService service;
+    private static final StageTimer QUEUE_TIMER = Metrics.timer("ai.queue");
+    private static final StageTimer FIRST_TOKEN_TIMER = Metrics.timer("ai.firstToken");
+    private static final StageTimer RESPONSE_TIMER = Metrics.timer("ai.response");
+    private static final Counter CACHE_HIT_COUNTER = Metrics.counter("ai.cacheHits");
+    private static final Counter ERROR_COUNTER = Metrics.counter("ai.errors");
+    private static final Counter PROMPT_TOKEN_COUNTER = Metrics.counter("ai.promptTokens");
+    private static final Counter SAVED_TOKEN_COUNTER = Metrics.counter("ai.savedTokens");
+    private static final Counter SUMMARIZED_TURN_COUNTER = Metrics.counter("ai.summarizedTurns");
+
+    private final OpenAIClient client;
+    private final AIRequestScheduler scheduler;
     private final AIRequest originalRequest;
+    private final ConversationContext context;
+    private final AIResponseCache responseCache;
     private JFrame chatFrame;
     private JTextPane chatTextPane;
     private JTextField userInputField;
     private JButton sendButton;
+    private JButton regenerateButton;
     private JLabel loadingLabel;
+    private ScheduledChat activeStream;
+    private DocumentStreamWriter activeWriter;
+    private List<ChatMessage> lastMessages;
 
     public OpenAIHandler(AIRequest originalRequest) {
-        String openAiToken = Neolithic.getConfigReader().getOpenAiToken();
-        this.service = new OpenAiService(openAiToken, Duration.ofHours(2));
+        this.client = OpenAIClient.getShared();
+        this.scheduler = AIRequestScheduler.getShared();
         this.originalRequest = originalRequest;
+        this.context = ConversationContext.fromConfig(originalRequest.getConvertedText(), Neolithic.getConfigReader());
+        this.responseCache = AIResponseCache.getShared();
         initializeChatFrame();
     }
 
     public OpenAiService getService() {
-        return service;
+        return client.getService();
     }
 
     public void startChat() {
@@ -60,10 +77,32 @@ public class OpenAIHandler {
         userInputField = new JTextField();
         sendButton = new JButton("Send");
 
-        sendButton.addActionListener(e -> processUserInput());
+        // While an answer is streaming, the button stops it instead
+        sendButton.addActionListener(e -> {
+            if (activeStream != null) {
+                activeStream.cancel();
+                finishStream();
+            } else {
+                processUserInput();
+            }
+        });
+
+        // Asks for a new answer to the last message, even if the old one is cached
+        regenerateButton = new JButton("Regenerate");
+        regenerateButton.setEnabled(false);
+        regenerateButton.addActionListener(e -> {
+            if (activeStream == null && lastMessages != null) {
+                context.discardLastReply();
+                performStreamedChat(lastMessages, true);
+            }
+        });
+
+        JPanel buttonPanel = new JPanel(new GridLayout(1, 0));
+        buttonPanel.add(sendButton);
+        buttonPanel.add(regenerateButton);
 
         inputPanel.add(userInputField, BorderLayout.CENTER);
-        inputPanel.add(sendButton, BorderLayout.EAST);
+        inputPanel.add(buttonPanel, BorderLayout.EAST);
 
         loadingLabel = new JLabel("Loading AI response...");
         loadingLabel.setHorizontalAlignment(JLabel.CENTER);
@@ -74,10 +113,9 @@ public class OpenAIHandler {
 
         chatFrame.add(inputPanel, BorderLayout.SOUTH);
 
-        appendMessage("You", originalRequest.getInstructions() + " " + originalRequest.getConvertedText(), Color.LIGHT_GRAY);
-        List<ChatMessage> initialMessages = new ArrayList<>();
-        initialMessages.add(new ChatMessage(ChatMessageRole.USER.value(), originalRequest.getInstructions() + " " + originalRequest.getConvertedText()));
-        performStreamedChat(initialMessages);
+        String initialMessage = originalRequest.getInstructions() + " " + originalRequest.getConvertedText();
+        appendMessage("You", initialMessage, Color.LIGHT_GRAY);
+        performStreamedChat(context.prepareRequest(initialMessage), false);
     }
 
     private void processUserInput() {
@@ -86,67 +124,110 @@ public class OpenAIHandler {
             appendMessage("You", userMessage, Color.LIGHT_GRAY);
             userInputField.setText("");
 
-            List<ChatMessage> messages = new ArrayList<>();
-            ChatMessage systemMessage = new ChatMessage(ChatMessageRole.SYSTEM.value(), "You are a chat assistant.");
-            messages.add(systemMessage);
-            messages.add(new ChatMessage(ChatMessageRole.USER.value(), userMessage));
-
-            performStreamedChat(messages);
+            performStreamedChat(context.prepareRequest(userMessage), false);
         }
     }
 
-    private void performStreamedChat(List<ChatMessage> messages) {
-        SwingWorker<String, Void> worker = new SwingWorker<>() {
-            @Override
-            protected String doInBackground() {
-                try {
-                    userInputField.setEnabled(false);
-                    loadingLabel.setVisible(true);
-
-                    messages.add(new ChatMessage(ChatMessageRole.SYSTEM.value(), originalRequest.getInstructions() + ": " + originalRequest.getConvertedText()));
-
-                    ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
-                            .model("gpt-4-turbo-preview")
-                            .messages(messages)
-                            .maxTokens(2000)
-                            .temperature(0.5)
-                            .build();
-
-                    return service.createChatCompletion(chatCompletionRequest).getChoices().get(0).getMessage().getContent();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    showErrorDialog("An error occurred while communicating with the OpenAI API.");
-                    return null;
-                }
-            }
+    /**
+     * Shows the AI's answer in the chat: at once if it is cached, otherwise streamed as it is generated. Must be called
+     * on the event dispatch thread.
+     *
+     * @param messages    The messages prepared by the conversation context.
+     * @param bypassCache Whether to ask for a new answer even if one is cached.
+     */
+    private void performStreamedChat(List<ChatMessage> messages, boolean bypassCache) {
+        lastMessages = messages;
+        PROMPT_TOKEN_COUNTER.add(context.getLastSentTokens());
+        SAVED_TOKEN_COUNTER.add(context.getLastNaiveTokens() - context.getLastSentTokens());
+        SUMMARIZED_TURN_COUNTER.add(context.getLastSummarizedTurns());
+
+        ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
+                .model("gpt-4-turbo-preview")
+                .messages(messages)
+                .maxTokens(2000)
+                .temperature(0.5)
+                .build();
+
+        String cacheKey = responseCache != null ? AIResponseCache.keyOf(chatCompletionRequest) : null;
+        String cachedResponse = cacheKey != null && !bypassCache ? responseCache.get(cacheKey) : null;
+        if (cachedResponse != null) {
+            appendMessage("AI", cachedResponse, Color.ORANGE);
+            context.addAssistantReply(cachedResponse);
+            regenerateButton.setEnabled(true);
+            CACHE_HIT_COUNTER.increment();
+            return;
+        }
 
-            @Override
-            protected void done() {
-                try {
-                    String aiResponse = get();
-
-                    if (aiResponse != null) {
-                        appendMessage("AI", aiResponse, Color.ORANGE);
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                } finally {
-                    userInputField.setEnabled(true);
-                    loadingLabel.setVisible(false);
-                }
+        userInputField.setEnabled(false);
+        regenerateButton.setEnabled(false);
+        loadingLabel.setVisible(true);
+        sendButton.setText("Stop");
+
+        appendText("\nAI: ", Color.ORANGE);
+        DocumentStreamWriter writer = new DocumentStreamWriter(chatTextPane, colored(Color.ORANGE));
+        boolean[] receivedText = new boolean[1];
+        // The first question of a chat stands on its own, so the scheduler may batch it with others
+        ScheduledChat stream = scheduler.submit(chatCompletionRequest, messages.size() == 2, text -> {
+            if (!receivedText[0]) {
+                receivedText[0] = true;
+                SwingUtilities.invokeLater(() -> loadingLabel.setVisible(false));
+            }
+            writer.append(text);
+        }, error -> {
+            ERROR_COUNTER.increment();
+            error.printStackTrace();
+            SwingUtilities.invokeLater(() -> {
+                finishStream();
+                showErrorDialog("An error occurred while communicating with the OpenAI API.");
+            });
+        }, chat -> {
+            // An empty answer is more likely a glitch than the answer, so it's asked again next time
+            String answer = chat.getText();
+            if (cacheKey != null && !answer.isBlank()) {
+                responseCache.put(cacheKey, answer);
+            }
+            writer.append("\n");
+            SwingUtilities.invokeLater(this::finishStream);
+            QUEUE_TIMER.record((long) (chat.getQueueMillis() * 1e6));
+            if (chat.getTimeToFirstTokenMillis() >= 0) {
+                FIRST_TOKEN_TIMER.record((long) (chat.getTimeToFirstTokenMillis() * 1e6));
             }
-        };
+            RESPONSE_TIMER.record((long) (chat.getElapsedMillis() * 1e6));
+        });
+        activeStream = stream;
+        activeWriter = writer;
+    }
 
-        worker.execute();
+    /**
+     * Resets the input controls once the active stream has ended or been stopped.
+     */
+    private void finishStream() {
+        if (activeWriter != null) {
+            activeWriter.finish();
+            activeWriter = null;
+        }
+        if (activeStream != null) {
+            // A stopped answer is kept as far as it got, so follow-ups can refer to it
+            context.addAssistantReply(activeStream.getText());
+            if (activeStream.isCancelled()) {
+                appendText(" [stopped]\n", Color.GRAY);
+            }
+        }
+        activeStream = null;
+        userInputField.setEnabled(true);
+        regenerateButton.setEnabled(lastMessages != null);
+        loadingLabel.setVisible(false);
+        sendButton.setText("Send");
     }
 
     private void appendMessage(String sender, String message, Color color) {
-        StyledDocument doc = chatTextPane.getStyledDocument();
-        SimpleAttributeSet set = new SimpleAttributeSet();
-        StyleConstants.setForeground(set, color);
+        appendText("\n" + sender + ": " + message + "\n", color);
+    }
 
+    private void appendText(String text, Color color) {
+        StyledDocument doc = chatTextPane.getStyledDocument();
         try {
-            doc.insertString(doc.getLength(), "\n" + sender + ": " + message + "\n", set);
+            doc.insertString(doc.getLength(), text, colored(color));
         } catch (BadLocationException e) {
             e.printStackTrace();
         }
@@ -154,6 +235,12 @@ public class OpenAIHandler {
         chatTextPane.setCaretPosition(doc.getLength());
     }
 
+    private static SimpleAttributeSet colored(Color color) {
+        SimpleAttributeSet set = new SimpleAttributeSet();
+        StyleConstants.setForeground(set, color);
+        return set;
+    }
+
     private void showErrorDialog(String errorMessage) {
         JOptionPane.showMessageDialog(null, errorMessage, "Error", JOptionPane.ERROR_MESSAGE);
     }
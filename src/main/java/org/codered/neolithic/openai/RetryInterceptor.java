@@ -0,0 +1,86 @@
+package org.codered.neolithic.openai;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Retries requests the API rejected because it was overloaded or rate limited (429 and 5xx), and requests that never
+ * reached it because the connection couldn't be made.
+ * <p>
+ * Backoff is exponential with full jitter, so clients that were throttled together don't all come back at the same
+ * moment, and a Retry-After header in seconds is honored if it asks for longer. Timeouts are not retried: the request
+ * may have been processed and billed already, and waiting another full read timeout rarely helps.
+ */
+class RetryInterceptor implements Interceptor {
+    private static final long MAX_BACKOFF_MILLIS = 20_000;
+
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final LongAdder retries = new LongAdder();
+
+    /**
+     * @param maxRetries           How many times a request is retried before its last response or error is returned.
+     * @param initialBackoffMillis The upper bound of the first backoff; it doubles with every retry.
+     */
+    RetryInterceptor(int maxRetries, long initialBackoffMillis) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            Response response;
+            try {
+                response = chain.proceed(chain.request());
+            } catch (ConnectException e) {
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                backOff(attempt, null);
+                continue;
+            }
+
+            if (attempt >= maxRetries || !isRetryable(response.code())) {
+                return response;
+            }
+            String retryAfter = response.header("Retry-After");
+            response.close();
+            backOff(attempt, retryAfter);
+        }
+    }
+
+    private static boolean isRetryable(int code) {
+        return code == 429 || code >= 500;
+    }
+
+    private void backOff(int attempt, String retryAfter) throws InterruptedIOException {
+        retries.increment();
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, initialBackoffMillis << Math.min(attempt, 20));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        if (retryAfter != null) {
+            try {
+                delay = Math.max(delay, Math.min(MAX_BACKOFF_MILLIS, Long.parseLong(retryAfter.trim()) * 1000));
+            } catch (NumberFormatException e) {
+                // An HTTP date; the jittered backoff will do
+            }
+        }
+
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+}
@@ -0,0 +1,144 @@
+package org.codered.neolithic.openai;
+
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+
+import java.util.function.Consumer;
+
+/**
+ * A chat request handed to the {@link AIRequestScheduler}. It waits in the scheduler's queue until the rate limits
+ * allow it, then either streams on its own or is answered as part of a batch.
+ * <p>
+ * Times are measured from submission, so the time to first token includes time spent queued, which is what the user
+ * waits for. The answer is collected here as it arrives, so it is whole by the time {@code onComplete} is called,
+ * even if the stream finished before it was handed to this request.
+ */
+public class ScheduledChat {
+    final ChatCompletionRequest request;
+    // Cleared under the scheduler's queue lock when a batch with this request failed, so it is retried on its own
+    boolean batchable;
+    final long estimatedTokens;
+    final Consumer<String> onText;
+    final Consumer<Throwable> onError;
+    final Consumer<ScheduledChat> onComplete;
+    final long submittedAt = System.nanoTime();
+
+    private volatile long startedAt;
+    private volatile long firstTextAt;
+    private volatile ChatStream stream;
+    private final StringBuilder text = new StringBuilder();
+    private volatile boolean cancelled;
+
+    ScheduledChat(ChatCompletionRequest request, boolean batchable, long estimatedTokens, Consumer<String> onText,
+                  Consumer<Throwable> onError, Consumer<ScheduledChat> onComplete) {
+        this.request = request;
+        this.batchable = batchable;
+        this.estimatedTokens = estimatedTokens;
+        this.onText = onText;
+        this.onError = onError;
+        this.onComplete = onComplete;
+    }
+
+    void started() {
+        startedAt = System.nanoTime();
+    }
+
+    void streaming(ChatStream stream) {
+        this.stream = stream;
+        if (cancelled) {
+            stream.cancel();
+        }
+    }
+
+    /**
+     * Delivers a piece of the streamed answer.
+     */
+    void received(String delta) {
+        if (firstTextAt == 0) {
+            firstTextAt = System.nanoTime();
+        }
+        synchronized (text) {
+            text.append(delta);
+        }
+        onText.accept(delta);
+    }
+
+    /**
+     * Called once the stream has delivered the whole answer.
+     */
+    void completed() {
+        if (!cancelled) {
+            onComplete.accept(this);
+        }
+    }
+
+    /**
+     * Delivers the answer this request got as part of a batch.
+     */
+    void answered(String answer) {
+        if (cancelled) {
+            return;
+        }
+        received(answer);
+        onComplete.accept(this);
+    }
+
+    void failed(Throwable error) {
+        if (!cancelled) {
+            onError.accept(error);
+        }
+    }
+
+    /**
+     * Cancels the request: if it is still queued it is never sent, if it is streaming the stream is aborted.
+     */
+    public void cancel() {
+        cancelled = true;
+        ChatStream current = stream;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isStarted() {
+        return startedAt != 0;
+    }
+
+    /**
+     * Gets the text received so far.
+     *
+     * @return The answer, or as much of it as has streamed in.
+     */
+    public String getText() {
+        synchronized (text) {
+            return text.toString();
+        }
+    }
+
+    /**
+     * Gets the time spent waiting in the scheduler's queue.
+     *
+     * @return The queue time in milliseconds, so far if the request hasn't started yet.
+     */
+    public double getQueueMillis() {
+        long started = startedAt;
+        return ((started != 0 ? started : System.nanoTime()) - submittedAt) / 1e6;
+    }
+
+    /**
+     * Gets the time from submission until the first text arrived.
+     *
+     * @return The time to first token in milliseconds, or -1 if no text arrived yet.
+     */
+    public double getTimeToFirstTokenMillis() {
+        long firstText = firstTextAt;
+        return firstText == 0 ? -1 : (firstText - submittedAt) / 1e6;
+    }
+
+    public double getElapsedMillis() {
+        return (System.nanoTime() - submittedAt) / 1e6;
+    }
+}
@@ -0,0 +1,45 @@
+package org.codered.neolithic.openai;
+
+/**
+ * A rate limit of so many units per minute, e.g. requests or tokens, that allows bursts up to a full minute's worth.
+ * <p>
+ * The bucket refills continuously. An amount larger than the whole bucket is allowed once the bucket is full and
+ * leaves it in debt, so a single huge request is delayed rather than rejected forever.
+ */
+final class TokenBucket {
+    private static final double NANOS_PER_MINUTE = 60e9;
+
+    private final double capacity;
+    private final double refillPerNano;
+    private double available;
+    private long lastRefill = System.nanoTime();
+
+    TokenBucket(long perMinute) {
+        this.capacity = Math.max(1, perMinute);
+        this.refillPerNano = capacity / NANOS_PER_MINUTE;
+        this.available = capacity;
+    }
+
+    /**
+     * Gets how long until an amount can be taken.
+     *
+     * @param amount The amount.
+     * @return The wait in nanoseconds, 0 if it's available now.
+     */
+    synchronized long nanosUntilAvailable(long amount) {
+        refill();
+        double missing = Math.min(amount, capacity) - available;
+        return missing <= 0 ? 0 : (long) Math.ceil(missing / refillPerNano);
+    }
+
+    synchronized void take(long amount) {
+        refill();
+        available -= amount;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        available = Math.min(capacity, available + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+    }
+}
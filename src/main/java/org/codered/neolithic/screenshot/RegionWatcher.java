@@ -0,0 +1,317 @@
+package org.codered.neolithic.screenshot;
+
+import org.codered.neolithic.images.conversion.ImageConverter;
+
+import javax.swing.SwingUtilities;
+import java.awt.AWTException;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the text of a screen region current, e.g. a log window or a dashboard, by capturing it at a fixed interval.
+ * <p>
+ * Every frame is reduced to one hash per pixel row. If no row changed since the last frame, nothing else happens, so
+ * watching a static screen costs a capture and a pass over its pixels per interval. Otherwise the frame is split into
+ * blocks of rows separated by flat background rows, i.e. lines or paragraphs of text, and each block is identified
+ * by the hashes of its rows. Blocks seen in the previous frame reuse their text, even if they moved, so a scrolling
+ * log only runs OCR on the lines that scrolled in. The listener is told on the event dispatch thread whenever the
+ * text changes.
+ * <p>
+ * Windows rarely have rows that are flat edge to edge: borders, scrollbars and pane dividers cross every row. So a
+ * few columns at each edge are left out entirely, which also keeps a moving scrollbar thumb from changing every row,
+ * and columns of a single color from top to bottom, such as dividers, don't count when deciding whether a row is flat.
+ */
+public class RegionWatcher implements AutoCloseable {
+    public static final long DEFAULT_INTERVAL_MILLIS = 1000;
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+    // Flat gaps shorter than this are inside a line of text, e.g. between the dot and stem of an i
+    private static final int MIN_BLOCK_GAP = 2;
+    // Rows of background kept around each block, since Tesseract reads glyphs touching the edge poorly
+    private static final int BLOCK_MARGIN = 4;
+    // Columns left out at each edge, wide enough for a border and a scrollbar
+    private static final int EDGE_COLUMNS = 24;
+
+    private final Rectangle region;
+    private final long intervalMillis;
+    private final ImageConverter converter;
+    private final Consumer<String> listener;
+    private final ScheduledExecutorService executor;
+
+    private long[] rowHashes = new long[0];
+    private long[] previousRowHashes = new long[0];
+    private boolean[] flatRows = new boolean[0];
+    private int[] row = new int[0];
+    private int[] columnColors = new int[0];
+    private boolean[] uniformColumns = new boolean[0];
+    // The frame's pixels when they can be read in place, see readRow
+    private int[] packedPixels;
+    private int packedOffset;
+    private int packedStride;
+    private Map<Long, String> previousBlocks = Map.of();
+    private String text = "";
+
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder unchangedFrames = new LongAdder();
+    private final LongAdder reusedBlocks = new LongAdder();
+    private final LongAdder convertedBlocks = new LongAdder();
+
+    /**
+     * @param region         The screen region to watch.
+     * @param intervalMillis The time between the end of one capture and the start of the next.
+     * @param converter      The converter used for changed blocks. It isn't closed with the watcher, so it can be
+     *                       shared between watchers.
+     * @param listener       Called on the event dispatch thread with the full text whenever it changes.
+     */
+    public RegionWatcher(Rectangle region, long intervalMillis, ImageConverter converter, Consumer<String> listener) {
+        this.region = new Rectangle(region);
+        this.intervalMillis = Math.max(50, intervalMillis);
+        this.converter = converter;
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "region-watch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts capturing the region on a background thread.
+     *
+     * @throws AWTException If the screen can't be captured.
+     */
+    public void start() throws AWTException {
+        if (GraphicsEnvironment.isHeadless()) {
+            throw new AWTException("Can't capture the screen in a headless environment");
+        }
+        executor.scheduleWithFixedDelay(this::poll, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll() {
+        try {
+            update(ScreenCapturer.getInstance().capture(region));
+        } catch (Exception e) {
+            // Keep watching; the next frame may well succeed
+            System.err.println("Error updating watched region: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Processes one frame of the watched region. Frames must all have the same size.
+     *
+     * @param frame The captured frame.
+     * @return The text of the frame.
+     * @throws Exception If a changed block could not be converted.
+     */
+    public synchronized String update(BufferedImage frame) throws Exception {
+        frames.increment();
+        hashRows(frame);
+        if (Arrays.equals(rowHashes, previousRowHashes)) {
+            unchangedFrames.increment();
+            packedPixels = null;
+            return text;
+        }
+        findFlatRows(frame);
+        packedPixels = null;
+
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        Map<Long, String> blocks = new HashMap<>();
+        StringBuilder frameText = new StringBuilder();
+        int top = -1;
+        int bottom = -1;
+        for (int y = 0; y <= height; y++) {
+            if (y < height && !flatRows[y]) {
+                if (top < 0) {
+                    top = y;
+                }
+                bottom = y + 1;
+            } else if (top >= 0 && (y == height || y - bottom >= MIN_BLOCK_GAP)) {
+                String blockText = convertBlock(frame, width, height, top, bottom, blocks);
+                if (!blockText.isEmpty()) {
+                    if (frameText.length() > 0) {
+                        frameText.append('\n');
+                    }
+                    frameText.append(blockText);
+                }
+                top = -1;
+            }
+        }
+
+        long[] swap = previousRowHashes;
+        previousRowHashes = rowHashes;
+        rowHashes = swap;
+        previousBlocks = blocks;
+
+        String newText = frameText.toString();
+        if (!newText.equals(text)) {
+            text = newText;
+            SwingUtilities.invokeLater(() -> listener.accept(newText));
+        }
+        return text;
+    }
+
+    private String convertBlock(BufferedImage frame, int width, int height, int top, int bottom,
+                                Map<Long, String> blocks) throws Exception {
+        long key = bottom - top;
+        for (int y = top; y < bottom; y++) {
+            key = (key ^ rowHashes[y]) * MULTIPLIER;
+        }
+
+        String blockText = blocks.get(key);
+        if (blockText == null) {
+            blockText = previousBlocks.get(key);
+            if (blockText != null) {
+                reusedBlocks.increment();
+            } else {
+                convertedBlocks.increment();
+                int marginTop = Math.max(0, top - BLOCK_MARGIN);
+                int marginBottom = Math.min(height, bottom + BLOCK_MARGIN);
+                blockText = converter.convertToText(frame.getSubimage(0, marginTop, width, marginBottom - marginTop))
+                        .trim();
+            }
+            blocks.put(key, blockText);
+        }
+        return blockText;
+    }
+
+    /**
+     * Hashes every row of the frame, leaving out the edge columns, and notes which columns are a single color.
+     */
+    private void hashRows(BufferedImage frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        // A frame of a different height simply won't match the previous hashes
+        if (rowHashes.length != height) {
+            rowHashes = new long[height];
+            flatRows = new boolean[height];
+        }
+        if (columnColors.length != width) {
+            columnColors = new int[width];
+            uniformColumns = new boolean[width];
+        }
+
+        Raster raster = frame.getRaster();
+        // Robot captures are packed ints, which can be read without copying
+        if (raster.getDataBuffer() instanceof DataBufferInt intBuffer
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel packedModel
+                && raster.getMinX() == 0 && raster.getMinY() == 0 && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0) {
+            packedPixels = intBuffer.getData();
+            packedOffset = intBuffer.getOffset();
+            packedStride = packedModel.getScanlineStride();
+        } else if (row.length < width) {
+            row = new int[width];
+        }
+
+        int left = edgeColumns(width);
+        int right = width - left;
+        for (int y = 0; y < height; y++) {
+            int start = readRow(frame, y);
+            int[] pixels = packedPixels != null ? packedPixels : row;
+            long hash = right - left;
+            for (int x = left; x < right; x++) {
+                int pixel = pixels[start + x];
+                hash = (hash ^ pixel) * MULTIPLIER;
+                if (y == 0) {
+                    columnColors[x] = pixel;
+                    uniformColumns[x] = true;
+                } else {
+                    uniformColumns[x] &= pixel == columnColors[x];
+                }
+            }
+            rowHashes[y] = hash ^ (hash >>> 29);
+        }
+    }
+
+    /**
+     * Notes which rows are a single color, apart from the edge columns and the columns that are one color throughout.
+     */
+    private void findFlatRows(BufferedImage frame) {
+        int width = frame.getWidth();
+        int left = edgeColumns(width);
+        int right = width - left;
+        for (int y = 0; y < frame.getHeight(); y++) {
+            int start = readRow(frame, y);
+            int[] pixels = packedPixels != null ? packedPixels : row;
+            boolean flat = true;
+            boolean seen = false;
+            int background = 0;
+            for (int x = left; x < right && flat; x++) {
+                if (uniformColumns[x]) {
+                    continue;
+                }
+                int pixel = pixels[start + x];
+                if (!seen) {
+                    background = pixel;
+                    seen = true;
+                }
+                flat = pixel == background;
+            }
+            flatRows[y] = flat;
+        }
+    }
+
+    /**
+     * Makes a row of the frame readable.
+     *
+     * @return The index of the row's first pixel in {@code packedPixels}, or in {@code row} if the frame isn't packed.
+     */
+    private int readRow(BufferedImage frame, int y) {
+        if (packedPixels != null) {
+            return packedOffset + y * packedStride;
+        }
+        frame.getRGB(0, y, frame.getWidth(), 1, row, 0, frame.getWidth());
+        return 0;
+    }
+
+    private static int edgeColumns(int width) {
+        // Narrow regions are probably all content
+        return width > EDGE_COLUMNS * 8 ? EDGE_COLUMNS : 0;
+    }
+
+    public synchronized String getText() {
+        return text;
+    }
+
+    public Rectangle getRegion() {
+        return new Rectangle(region);
+    }
+
+    public long getFrames() {
+        return frames.sum();
+    }
+
+    /**
+     * Gets the number of frames in which no row changed, which were skipped without any OCR.
+     *
+     * @return The unchanged frame count.
+     */
+    public long getUnchangedFrames() {
+        return unchangedFrames.sum();
+    }
+
+    public long getReusedBlocks() {
+        return reusedBlocks.sum();
+    }
+
+    public long getConvertedBlocks() {
+        return convertedBlocks.sum();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,134 @@
+package org.codered.neolithic.screenshot;
+
+import org.codered.neolithic.images.processing.GrayRaster;
+
+import java.awt.AWTException;
+import java.awt.Graphics2D;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Captures regions of the screen for OCR.
+ * <p>
+ * One {@link Robot} is created per screen device on first use and kept for the life of the application, and only the
+ * requested region is grabbed, so a capture costs memory in proportion to the selection instead of the whole screen.
+ * Regions are in virtual-screen coordinates; a region spanning several monitors is grabbed from each monitor it
+ * touches and composed into one image, with any part outside every screen left black.
+ * <p>
+ * {@link #captureCompact} converts the capture to 8-bit gray, a quarter of the size of the packed-int image the robot
+ * returns, which is all OCR needs. The conversion goes through a pool of {@link GrayRaster}s whose buffers grow to the
+ * largest capture and are then reused, so the only allocation left per capture is the compact copy itself.
+ */
+public final class ScreenCapturer {
+    private static final ScreenCapturer INSTANCE = new ScreenCapturer();
+
+    private final Map<String, Robot> robots = new ConcurrentHashMap<>();
+    private final Queue<GrayRaster> rasters = new ConcurrentLinkedQueue<>();
+
+    private ScreenCapturer() {
+    }
+
+    public static ScreenCapturer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the bounds of all screens together.
+     *
+     * @return The virtual-screen bounds.
+     */
+    public static Rectangle getVirtualScreenBounds() {
+        Rectangle bounds = new Rectangle();
+        for (GraphicsDevice device : GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices()) {
+            bounds = bounds.union(device.getDefaultConfiguration().getBounds());
+        }
+        return bounds;
+    }
+
+    /**
+     * Captures a region of the screen in color.
+     *
+     * @param region The region, in virtual-screen coordinates.
+     * @return A TYPE_INT_RGB image of the region.
+     * @throws AWTException If the screen can't be captured, e.g. in a headless environment.
+     */
+    public BufferedImage capture(Rectangle region) throws AWTException {
+        if (region.isEmpty()) {
+            throw new IllegalArgumentException("Empty capture region: " + region);
+        }
+
+        BufferedImage composite = null;
+        for (GraphicsDevice device : GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices()) {
+            Rectangle part = region.intersection(device.getDefaultConfiguration().getBounds());
+            if (part.isEmpty()) {
+                continue;
+            }
+            BufferedImage image = getRobot(device).createScreenCapture(part);
+            if (part.equals(region)) {
+                // The common case: the whole region is on one screen
+                return image;
+            }
+            if (composite == null) {
+                composite = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_RGB);
+            }
+            Graphics2D graphics = composite.createGraphics();
+            graphics.drawImage(image, part.x - region.x, part.y - region.y, null);
+            graphics.dispose();
+        }
+
+        if (composite == null) {
+            throw new AWTException("Capture region is outside every screen: " + region);
+        }
+        return composite;
+    }
+
+    /**
+     * Captures a region of the screen as a compact gray image for OCR.
+     *
+     * @param region The region, in virtual-screen coordinates.
+     * @return A TYPE_BYTE_GRAY image of the region.
+     * @throws AWTException If the screen can't be captured, e.g. in a headless environment.
+     */
+    public BufferedImage captureCompact(Rectangle region) throws AWTException {
+        return toCompact(capture(region));
+    }
+
+    /**
+     * Copies an image into a compact gray image, using a pooled raster for the conversion.
+     *
+     * @param image The image to copy.
+     * @return A TYPE_BYTE_GRAY copy of the image.
+     */
+    public BufferedImage toCompact(BufferedImage image) {
+        GrayRaster raster = rasters.poll();
+        if (raster == null) {
+            raster = new GrayRaster();
+        }
+        try {
+            raster.load(image);
+            return raster.toImage();
+        } finally {
+            rasters.offer(raster);
+        }
+    }
+
+    private Robot getRobot(GraphicsDevice device) throws AWTException {
+        Robot robot = robots.get(device.getIDstring());
+        if (robot == null) {
+            // Creating a robot twice in a race is harmless; one of them is kept
+            Robot created = new Robot(device);
+            robot = robots.putIfAbsent(device.getIDstring(), created);
+            if (robot == null) {
+                robot = created;
+            }
+        }
+        return robot;
+    }
+}
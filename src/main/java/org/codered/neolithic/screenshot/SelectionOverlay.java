@@ -0,0 +1,185 @@
+package org.codered.neolithic.screenshot;
+
+import org.codered.neolithic.metrics.Metrics;
+import org.codered.neolithic.metrics.StageTimer;
+
+import javax.swing.JComponent;
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Stroke;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Draws the rubber-band rectangle while an area of the screen is being selected.
+ * <p>
+ * The overlay covers the screen with a faint tint, which keeps the desktop visible through the translucent capture
+ * frame while still receiving the mouse, and leaves the selection clear with an outline around it. Each change of the
+ * selection repaints only the union of the old and new rectangles, and painting reuses the same rectangles, colors
+ * and stroke, so dragging allocates nothing per event. Swing's back buffer serves as the cached image the dirty areas
+ * are composed in.
+ * <p>
+ * Paint times are recorded for every frame, along with the latency from a change of the selection to the frame that
+ * shows it, so the feedback can be checked against the display refresh rate. The getters cover the current
+ * selection; the "capture.overlayPaint" and "capture.overlayLatency" timers cover every selection since startup.
+ */
+public class SelectionOverlay extends JComponent {
+    // About the 5% veil the capture frame used to get from its window opacity
+    private static final Color TINT = new Color(0, 0, 0, 13);
+    // Alpha 0 would let clicks through to the windows below on some platforms
+    private static final Color SELECTED = new Color(0, 0, 0, 1);
+    private static final Color OUTLINE = new Color(0x3A, 0x8E, 0xE6);
+    private static final int OUTLINE_WIDTH = 2;
+    private static final Stroke OUTLINE_STROKE = new BasicStroke(OUTLINE_WIDTH);
+    private static final StageTimer PAINT_TIMER = Metrics.timer("capture.overlayPaint");
+    private static final StageTimer LATENCY_TIMER = Metrics.timer("capture.overlayLatency");
+
+    private final Rectangle selection = new Rectangle();
+    private final Rectangle dirty = new Rectangle();
+    private final Rectangle clip = new Rectangle();
+    private final Rectangle visible = new Rectangle();
+
+    private long frames;
+    private long totalPaintNanos;
+    private long maxPaintNanos;
+    private long latencyFrames;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+    // When the oldest change not yet painted was made, or 0 if everything has been painted
+    private long changedNanos;
+
+    public SelectionOverlay() {
+        setOpaque(false);
+    }
+
+    /**
+     * Sets the selection to the rectangle spanned by two corners, repainting only what changed.
+     *
+     * @param x1 The x coordinate of one corner.
+     * @param y1 The y coordinate of one corner.
+     * @param x2 The x coordinate of the opposite corner.
+     * @param y2 The y coordinate of the opposite corner.
+     */
+    public void setSelection(int x1, int y1, int x2, int y2) {
+        dirty.setBounds(selection);
+        selection.setBounds(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1), Math.abs(y2 - y1));
+        dirty.add(selection);
+        repaintDirty();
+    }
+
+    public void clearSelection() {
+        dirty.setBounds(selection);
+        selection.setBounds(0, 0, 0, 0);
+        repaintDirty();
+    }
+
+    private void repaintDirty() {
+        if (changedNanos == 0) {
+            changedNanos = System.nanoTime();
+        }
+        // The outline is centered on the edge of the selection, so half of it lies outside
+        repaint(dirty.x - OUTLINE_WIDTH, dirty.y - OUTLINE_WIDTH, dirty.width + 2 * OUTLINE_WIDTH + 1,
+                dirty.height + 2 * OUTLINE_WIDTH + 1);
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        long start = System.nanoTime();
+        Graphics2D g = (Graphics2D) graphics;
+        if (g.getClipBounds(clip) == null) {
+            clip.setBounds(0, 0, getWidth(), getHeight());
+        }
+
+        // Src replaces whatever the back buffer held, so the tint doesn't build up across repaints
+        Composite composite = g.getComposite();
+        g.setComposite(AlphaComposite.Src);
+        g.setColor(TINT);
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        if (!selection.isEmpty()) {
+            Rectangle2D.intersect(selection, clip, visible);
+            if (!visible.isEmpty()) {
+                g.setColor(SELECTED);
+                g.fillRect(visible.x, visible.y, visible.width, visible.height);
+            }
+        }
+        g.setComposite(composite);
+        if (!selection.isEmpty()) {
+            g.setColor(OUTLINE);
+            Stroke stroke = g.getStroke();
+            g.setStroke(OUTLINE_STROKE);
+            g.drawRect(selection.x, selection.y, selection.width, selection.height);
+            g.setStroke(stroke);
+        }
+
+        long end = System.nanoTime();
+        recordFrame(end - start, end);
+    }
+
+    private void recordFrame(long paintNanos, long end) {
+        frames++;
+        totalPaintNanos += paintNanos;
+        maxPaintNanos = Math.max(maxPaintNanos, paintNanos);
+        PAINT_TIMER.record(paintNanos);
+        if (changedNanos != 0) {
+            long latencyNanos = end - changedNanos;
+            latencyFrames++;
+            totalLatencyNanos += latencyNanos;
+            maxLatencyNanos = Math.max(maxLatencyNanos, latencyNanos);
+            LATENCY_TIMER.record(latencyNanos);
+            changedNanos = 0;
+        }
+    }
+
+    /**
+     * Gets the selection in the overlay's coordinates.
+     *
+     * @return A copy of the selection, empty if nothing is selected.
+     */
+    public Rectangle getSelection() {
+        return new Rectangle(selection);
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Gets the average time spent painting a frame.
+     *
+     * @return The average paint time in milliseconds, or 0 if nothing was painted yet.
+     */
+    public double getAveragePaintMillis() {
+        return frames == 0 ? 0 : totalPaintNanos / 1e6 / frames;
+    }
+
+    public double getMaxPaintMillis() {
+        return maxPaintNanos / 1e6;
+    }
+
+    /**
+     * Gets the average time from a change of the selection until it was painted. At 60 Hz it should stay under 17 ms;
+     * much more means the overlay lags behind the mouse.
+     *
+     * @return The average latency in milliseconds, or 0 if the selection hasn't changed yet.
+     */
+    public double getAverageLatencyMillis() {
+        return latencyFrames == 0 ? 0 : totalLatencyNanos / 1e6 / latencyFrames;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos / 1e6;
+    }
+
+    public void resetFrameTimes() {
+        frames = 0;
+        totalPaintNanos = 0;
+        maxPaintNanos = 0;
+        latencyFrames = 0;
+        totalLatencyNanos = 0;
+        maxLatencyNanos = 0;
+    }
+}
@@ -6,24 +6,46 @@ import com.github.kwhat.jnativehook.keyboard.NativeKeyEvent;
 import com.github.kwhat.jnativehook.keyboard.NativeKeyListener;
 import org.codered.neolithic.images.ImageConversionUtility;
 import org.codered.neolithic.Neolithic;
+import org.codered.neolithic.images.ui.WatchDialog;
+import org.codered.neolithic.metrics.Counter;
+import org.codered.neolithic.metrics.Metrics;
+import org.codered.neolithic.metrics.StageTimer;
+import org.codered.neolithic.utils.ConfigReader;
 
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
-import java.awt.image.RasterFormatException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Tool for capturing and processing a selected window area.
  */
 public class WindowCaptureTool implements NativeKeyListener {
+    // Time for the hidden overlay to disappear from the screen before the selection is grabbed
+    private static final long OVERLAY_SETTLE_MILLIS = 50;
+    // The overlay component paints its own faint tint, so the frame itself is either fully shown or hidden
+    private static final float ACTIVE_OPACITY = 1.0F;
+    private static final StageTimer GRAB_TIMER = Metrics.timer("capture.grab");
+    private static final StageTimer COMPACT_TIMER = Metrics.timer("capture.compact");
+    private static final Counter ACCEPTED_COUNTER = Metrics.counter("capture.accepted");
 
-    private BufferedImage screenCapture;
+    private final ExecutorService captureExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "screen-capture");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final SelectionOverlay selectionOverlay = new SelectionOverlay();
+    private BufferedImage selectionImage;
+    private Rectangle selection;
     private boolean captureRequested = false;
     private Point startPoint;
     private Point endPoint;
     private JDialog previewDialog;
+    private JLabel previewLabel;
     private JFrame frame;
 
     /**
@@ -74,8 +96,12 @@ public class WindowCaptureTool implements NativeKeyListener {
     private void setupCaptureFrame() {
 
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setExtendedState(JFrame.MAXIMIZED_BOTH);
+        // Cover every monitor, so a selection can be made on any of them
+        frame.setBounds(ScreenCapturer.getVirtualScreenBounds());
         frame.setUndecorated(true);
+        // Transparent, so the desktop shows through everywhere the overlay doesn't paint
+        frame.setBackground(new Color(0, 0, 0, 0));
+        frame.setContentPane(selectionOverlay);
         frame.setOpacity(0.0f);
         frame.setAlwaysOnTop(true);
 
@@ -88,21 +114,32 @@ public class WindowCaptureTool implements NativeKeyListener {
             }
         });
 
-        frame.addMouseListener(new MouseAdapter() {
+        MouseAdapter selectionListener = new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
                 if (captureRequested) {
                     startPoint = e.getPoint();
+                    selectionOverlay.resetFrameTimes();
+                }
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (captureRequested && startPoint != null) {
+                    selectionOverlay.setSelection(startPoint.x, startPoint.y, e.getX(), e.getY());
                 }
             }
 
             @Override
             public void mouseReleased(MouseEvent e) {
-                if (captureRequested) {
+                if (captureRequested && startPoint != null) {
+                    selectionOverlay.setSelection(startPoint.x, startPoint.y, e.getX(), e.getY());
                     captureArea(e.getPoint());
                 }
             }
-        });
+        };
+        selectionOverlay.addMouseListener(selectionListener);
+        selectionOverlay.addMouseMotionListener(selectionListener);
 
         frame.setVisible(true);
     }
@@ -119,18 +156,16 @@ public class WindowCaptureTool implements NativeKeyListener {
     }
 
     /**
-     * Starts the screen capture process.
+     * Starts the screen capture process. Nothing is grabbed until an area has been selected.
      */
     private void startCapture() {
-        try {
-            Robot robot = new Robot();
-            screenCapture = robot.createScreenCapture(new Rectangle(Toolkit.getDefaultToolkit().getScreenSize()));
-            frame.setOpacity(.05f);
-            captureRequested = true;
-            showPreviewDialog();
-        } catch (AWTException e) {
-            e.printStackTrace();
-        }
+        selectionImage = null;
+        selection = null;
+        startPoint = null;
+        selectionOverlay.clearSelection();
+        frame.setOpacity(ACTIVE_OPACITY);
+        captureRequested = true;
+        showPreviewDialog();
     }
 
     /**
@@ -148,11 +183,19 @@ public class WindowCaptureTool implements NativeKeyListener {
         });
 
         JPanel previewPanel = new JPanel(new BorderLayout());
+        previewLabel = new JLabel();
+        previewPanel.add(previewLabel);
         previewDialog.add(previewPanel, BorderLayout.CENTER);
 
         JButton acceptButton = new JButton("Accept");
         acceptButton.addActionListener(e -> completeCapture());
-        previewDialog.add(acceptButton, BorderLayout.SOUTH);
+        JButton watchButton = new JButton("Watch");
+        watchButton.addActionListener(e -> watchSelection());
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        buttonPanel.add(acceptButton);
+        buttonPanel.add(watchButton);
+        previewDialog.add(buttonPanel, BorderLayout.SOUTH);
 
         previewDialog.setLocationRelativeTo(frame);
         previewDialog.setVisible(true);
@@ -164,36 +207,56 @@ public class WindowCaptureTool implements NativeKeyListener {
      * @param endPoint The end point of the capture area.
      */
     private void captureArea(Point endPoint) {
+        if (startPoint == null) {
+            return;
+        }
         this.endPoint = endPoint;
-        int x = Math.min(startPoint.x, endPoint.x);
-        int y = Math.min(startPoint.y, endPoint.y);
-        int width = Math.abs(endPoint.x - startPoint.x);
-        int height = Math.abs(endPoint.y - startPoint.y);
+        Point origin = frame.getLocationOnScreen();
+        Rectangle area = new Rectangle(origin.x + Math.min(startPoint.x, endPoint.x),
+                origin.y + Math.min(startPoint.y, endPoint.y),
+                Math.abs(endPoint.x - startPoint.x), Math.abs(endPoint.y - startPoint.y));
+        if (area.isEmpty()) {
+            return;
+        }
 
-        updatePreview(x, y, width, height); // Update the preview
+        // Hide the overlay so its tint isn't part of the capture, and grab the area off the event dispatch thread
+        frame.setOpacity(0.0F);
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                Thread.sleep(OVERLAY_SETTLE_MILLIS);
+                long start = GRAB_TIMER.start();
+                BufferedImage image = ScreenCapturer.getInstance().capture(area);
+                GRAB_TIMER.stop(start);
+                return image;
+            } catch (Exception e) {
+                throw new IllegalStateException("Error capturing the selected area", e);
+            }
+        }, captureExecutor).whenCompleteAsync((image, error) -> {
+            if (!captureRequested) {
+                return;
+            }
+            if (error != null) {
+                error.printStackTrace();
+                cancelCapture();
+                return;
+            }
+            frame.setOpacity(ACTIVE_OPACITY);
+            selection = area;
+            selectionImage = image;
+            updatePreview(image); // Update the preview
+        }, SwingUtilities::invokeLater);
     }
 
     /**
      * Updates the preview dialog with the captured image.
      *
-     * @param x      The x coordinate of the capture area.
-     * @param y      The y coordinate of the capture area.
-     * @param width  The width of the capture area.
-     * @param height The height of the capture area.
+     * @param previewImage The captured area.
      */
-    private void updatePreview(int x, int y, int width, int height) {
+    private void updatePreview(BufferedImage previewImage) {
         if (previewDialog != null) {
-            try {
-                BufferedImage previewImage = screenCapture.getSubimage(x, y, width, height);
-                JLabel previewLabel = new JLabel(new ImageIcon(previewImage));
-                JPanel previewPanel = (JPanel) previewDialog.getContentPane().getComponent(0);
-                previewDialog.setSize(width + 20, height + 20);
-                previewPanel.removeAll();
-                previewPanel.add(previewLabel);
-                previewDialog.revalidate();
-            } catch (RasterFormatException e) {
-                cancelCapture();
-            }
+            previewLabel.setIcon(new ImageIcon(previewImage));
+            previewDialog.setSize(previewImage.getWidth() + 20, previewImage.getHeight() + 20);
+            previewDialog.revalidate();
         }
     }
 
@@ -202,6 +265,8 @@ public class WindowCaptureTool implements NativeKeyListener {
      */
     private void cancelCapture() {
         captureRequested = false;
+        selectionImage = null;
+        selectionOverlay.clearSelection();
         closePreviewDialog();
         frame.setOpacity(0.0F);
     }
@@ -210,29 +275,59 @@ public class WindowCaptureTool implements NativeKeyListener {
      * Completes the capture and processes the selected area.
      */
     private void completeCapture() {
-        captureWindow(startPoint.x, startPoint.y, Math.abs(endPoint.x - startPoint.x), Math.abs(endPoint.y - startPoint.y));
-        System.out.println("Capture accepted!");
+        if (selectionImage == null) {
+            cancelCapture();
+            return;
+        }
+        ACCEPTED_COUNTER.increment();
+        captureWindow(selectionImage, selection);
     }
 
     /**
-     * Captures the selected window area and starts text conversion.
+     * Hands the captured window area to the capture pipeline as a compact gray copy. Conversion runs in the
+     * background, so the capture tool is ready for the next capture straight away.
      *
-     * @param x      The x coordinate of the window.
-     * @param y      The y coordinate of the window.
-     * @param width  The width of the window.
-     * @param height The height of the window.
+     * @param capture    The captured area.
+     * @param screenArea Where on the screen the area is, so a newer capture of it replaces one still queued.
      */
-    private void captureWindow(int x, int y, int width, int height) {
+    private void captureWindow(BufferedImage capture, Rectangle screenArea) {
         try {
-            BufferedImage windowCapture = screenCapture.getSubimage(x, y, width, height);
-
-            new ImageConversionUtility().convertImageToText(windowCapture);
+            long start = COMPACT_TIMER.start();
+            BufferedImage compact = ScreenCapturer.getInstance().toCompact(capture);
+            COMPACT_TIMER.stop(start);
+            new ImageConversionUtility().convertScreenArea(compact, screenArea);
             cancelCapture(); // Reset capture states
             frame.setOpacity(0.0F); // Reset frame opacity
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
+    /**
+     * Keeps converting the selected area at the configured interval and shows its live text, until the watch dialog
+     * is closed.
+     */
+    private void watchSelection() {
+        if (selection == null) {
+            return;
+        }
+        Rectangle selection = this.selection;
+        cancelCapture(); // Hide the capture overlay so it isn't part of the watched frames
+
+        ConfigReader configReader = Neolithic.getConfigReader();
+        WatchDialog watchDialog = new WatchDialog(frame);
+        RegionWatcher regionWatcher = new RegionWatcher(selection,
+                configReader.getInt("watch", "intervalMillis", (int) RegionWatcher.DEFAULT_INTERVAL_MILLIS),
+                ImageConversionUtility.getSharedImageConverter(), watchDialog::updateText);
+        watchDialog.setRegionWatcher(regionWatcher);
+        watchDialog.setVisible(true);
+        try {
+            regionWatcher.start();
+        } catch (AWTException e) {
+            e.printStackTrace();
+            watchDialog.dispose();
+        }
+    }
+
     /**
      * Closes the preview dialog.
      */
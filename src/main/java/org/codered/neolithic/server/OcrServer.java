@@ -0,0 +1,478 @@
+package org.codered.neolithic.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.sourceforge.tess4j.Word;
+import org.codered.neolithic.images.conversion.ImageConverter;
+import org.codered.neolithic.images.conversion.OcrResult;
+import org.codered.neolithic.images.conversion.TesseractConverter;
+import org.codered.neolithic.images.conversion.TesseractEnginePool;
+import org.codered.neolithic.images.processing.ConversionRefiner;
+import org.codered.neolithic.metrics.Metrics;
+import org.codered.neolithic.metrics.StageTimer;
+import org.codered.neolithic.utils.ConfigReader;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves Neolithic's OCR over HTTP on the local machine, so other tools can use it without the capture UI.
+ * <ul>
+ *     <li>{@code POST /ocr} with an image file as the body (PNG, JPEG, BMP or GIF) returns its refined text as
+ *     {@code text/plain}. With {@code ?format=json} or {@code Accept: application/json} it returns the refined text
+ *     along with the raw text, the mean confidence and each word's bounding box and confidence. {@code ?refine=false}
+ *     skips spell and grammar checking.</li>
+ *     <li>{@code GET /stats} returns the server's counters as JSON.</li>
+ * </ul>
+ * Each request runs on its own virtual thread, and recognition is bounded by the Tesseract engine pool. Refinement
+ * runs on a fixed pool of platform threads, since the spell checkers it uses are cached per thread. Admission
+ * control keeps a burst from queuing up unbounded work: at most {@code maxConcurrent} requests are converted at once,
+ * at most {@code maxQueued} more wait for a slot, for up to {@code queueTimeoutMillis}, and anything beyond that is
+ * turned away straight away with 503 and a Retry-After header. That check comes before the upload is read, so a
+ * burst never holds more than {@code maxConcurrent + maxQueued} images in memory, but the upload is read and decoded
+ * before the request takes a slot, so a slow client doesn't hold an engine while it trickles in. Uploads larger than
+ * {@code maxUploadBytes} are rejected with 413, before they are read if their size is declared, and so are images
+ * larger than {@code maxImagePixels}, before they are decoded.
+ */
+public class OcrServer implements AutoCloseable {
+    public static final String DEFAULT_HOST = "127.0.0.1";
+    public static final int DEFAULT_PORT = 8765;
+    public static final int DEFAULT_MAX_QUEUED = 16;
+    public static final int DEFAULT_QUEUE_TIMEOUT_MILLIS = 5000;
+    public static final int DEFAULT_MAX_UPLOAD_MEGABYTES = 16;
+    public static final int DEFAULT_MAX_IMAGE_MEGAPIXELS = 64;
+    private static final StageTimer QUEUE_TIMER = Metrics.timer("server.queue");
+    private static final StageTimer REQUEST_TIMER = Metrics.timer("server.request");
+
+    private final ImageConverter recognizer;
+    private final ConversionRefiner refiner;
+    private final float confidenceThreshold;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long queueTimeoutMillis;
+    private final long maxUploadBytes;
+    private final long maxImagePixels;
+
+    private final Semaphore slots;
+    // Requests past the door: reading their upload, waiting for a slot or being converted
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private HttpServer server;
+    private ExecutorService handlerExecutor;
+    private ExecutorService refineExecutor;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder totalQueueNanos = new LongAdder();
+
+    /**
+     * @param recognizer          The converter whose {@link ImageConverter#recognizeWords} does the OCR.
+     * @param refiner             The refiner for the recognized words.
+     * @param confidenceThreshold Only words recognized with a lower confidence (0 to 100) are refined.
+     * @param maxConcurrent       The most requests converted at once; should match the OCR engine pool.
+     * @param maxQueued           The most requests waiting for a slot before new ones are turned away.
+     * @param queueTimeoutMillis  How long a request waits for a slot before it is turned away.
+     * @param maxUploadBytes      The largest upload accepted.
+     * @param maxImagePixels      The largest image accepted, in decoded pixels.
+     */
+    public OcrServer(ImageConverter recognizer, ConversionRefiner refiner, float confidenceThreshold,
+                     int maxConcurrent, int maxQueued, long queueTimeoutMillis, long maxUploadBytes,
+                     long maxImagePixels) {
+        this.recognizer = recognizer;
+        this.refiner = refiner;
+        this.confidenceThreshold = confidenceThreshold;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueued = Math.max(0, maxQueued);
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.maxUploadBytes = maxUploadBytes;
+        this.maxImagePixels = maxImagePixels;
+        this.slots = new Semaphore(this.maxConcurrent, true);
+        Metrics.gauge("server.inFlight", this::getInFlight);
+        Metrics.gauge("server.waiting", this::getWaiting);
+    }
+
+    /**
+     * Builds a server on the shared Tesseract engine pool from the "server", "ocr" and "refiner" sections of the
+     * config.
+     *
+     * @param configReader The config reader to use.
+     * @return The configured server, not started yet.
+     */
+    public static OcrServer fromConfig(ConfigReader configReader) {
+        TesseractEnginePool enginePool = TesseractEnginePool.fromConfig(configReader);
+        int confidenceThreshold = configReader.getInt("refiner", "confidenceThreshold",
+                (int) ConversionRefiner.DEFAULT_CONFIDENCE_THRESHOLD);
+        int maxConcurrent = configReader.getInt("server", "maxConcurrent", 0);
+        return new OcrServer(
+                new TesseractConverter(enginePool, configReader.getBoolean("ocr", "inMemory", true), confidenceThreshold),
+                new ConversionRefiner(),
+                confidenceThreshold,
+                maxConcurrent > 0 ? maxConcurrent : enginePool.getSize(),
+                configReader.getInt("server", "maxQueued", DEFAULT_MAX_QUEUED),
+                configReader.getInt("server", "queueTimeoutMillis", DEFAULT_QUEUE_TIMEOUT_MILLIS),
+                configReader.getInt("server", "maxUploadMegabytes", DEFAULT_MAX_UPLOAD_MEGABYTES) * 1024L * 1024L,
+                configReader.getInt("server", "maxImageMegapixels", DEFAULT_MAX_IMAGE_MEGAPIXELS) * 1_000_000L);
+    }
+
+    /**
+     * Runs the server from the command line until the process is stopped.
+     *
+     * @param args         The arguments after {@code --server}: optionally the port.
+     * @param configReader The config reader to build the server from.
+     */
+    public static void run(String[] args, ConfigReader configReader) {
+        String host = configReader.getString("server", "host", DEFAULT_HOST);
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : configReader.getInt("server", "port", DEFAULT_PORT);
+        OcrServer server = fromConfig(configReader);
+        try {
+            server.start(new InetSocketAddress(host, port));
+            TesseractEnginePool.fromConfig(configReader).warmUp();
+            System.out.println("OCR server listening on http://" + host + ":" + server.getPort() + "/ocr");
+        } catch (Exception e) {
+            System.err.println("Error: could not start the OCR server: " + e.getMessage());
+            server.close();
+        }
+    }
+
+    /**
+     * Starts listening.
+     *
+     * @param address The address to bind, normally on the loopback interface.
+     * @throws IOException If the address can't be bound.
+     */
+    public void start(InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+        handlerExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(handlerExecutor);
+        // The spell checkers are cached per thread, which only pays off on long-lived platform threads
+        AtomicInteger refineThreads = new AtomicInteger();
+        refineExecutor = Executors.newFixedThreadPool(maxConcurrent, runnable -> {
+            Thread thread = new Thread(runnable, "ocr-refine-" + refineThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/ocr", this::handleOcr);
+        server.createContext("/stats", this::handleStats);
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleOcr(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendText(exchange, 405, "Use POST with an image as the body");
+                return;
+            }
+            if (contentLength(exchange) > maxUploadBytes) {
+                sendText(exchange, 413, "The image is larger than " + maxUploadBytes + " bytes");
+                return;
+            }
+
+            requests.increment();
+            long start = System.nanoTime();
+            // Turned away before the upload is read, so a burst can't fill memory with images it will never convert
+            if (admitted.incrementAndGet() > maxConcurrent + maxQueued) {
+                admitted.decrementAndGet();
+                reject(exchange);
+                return;
+            }
+            try {
+                handleAdmitted(exchange, start);
+            } finally {
+                admitted.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads and decodes the upload of a request that got past the door, then converts it once a slot is free. The
+     * upload is read before taking a slot, so a slow client doesn't hold an engine while it trickles in.
+     */
+    private void handleAdmitted(HttpExchange exchange, long start) throws IOException, InterruptedException {
+        byte[] upload = readUpload(exchange.getRequestBody());
+        if (upload == null) {
+            sendText(exchange, 413, "The image is larger than " + maxUploadBytes + " bytes");
+            return;
+        }
+        long pixels = imagePixels(upload);
+        if (pixels < 0) {
+            sendText(exchange, 400, "The body is not a readable image");
+            return;
+        }
+        if (pixels > maxImagePixels) {
+            sendText(exchange, 413, "The image is larger than " + maxImagePixels + " pixels");
+            return;
+        }
+        BufferedImage image = decode(upload);
+        if (image == null) {
+            sendText(exchange, 400, "The body is not a readable image");
+            return;
+        }
+
+        if (!admit()) {
+            reject(exchange);
+            return;
+        }
+        long queueNanos = System.nanoTime() - start;
+        totalQueueNanos.add(queueNanos);
+        QUEUE_TIMER.record(queueNanos);
+        try {
+            convert(exchange, image);
+        } finally {
+            slots.release();
+            long nanos = System.nanoTime() - start;
+            totalNanos.add(nanos);
+            REQUEST_TIMER.record(nanos);
+        }
+    }
+
+    private void reject(HttpExchange exchange) throws IOException {
+        rejected.increment();
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        sendText(exchange, 503, "The OCR server is busy, try again later");
+    }
+
+    /**
+     * Gets the declared size of the upload, or -1 if it isn't declared, e.g. for a chunked upload.
+     */
+    private static long contentLength(HttpExchange exchange) {
+        try {
+            String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+            return contentLength != null ? Long.parseLong(contentLength) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Waits for a conversion slot. The door already bounds how many requests can wait.
+     *
+     * @return Whether the request got a slot before the queue timeout.
+     */
+    private boolean admit() throws InterruptedException {
+        if (slots.tryAcquire()) {
+            return true;
+        }
+        waiting.incrementAndGet();
+        try {
+            return slots.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private void convert(HttpExchange exchange, BufferedImage image) throws IOException, InterruptedException {
+        String query = exchange.getRequestURI().getQuery() == null ? "" : exchange.getRequestURI().getQuery();
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        boolean json = query.contains("format=json") || (accept != null && accept.contains("application/json"));
+        boolean refine = !query.contains("refine=false");
+
+        OcrResult result;
+        String text;
+        try {
+            result = recognizer.recognizeWords(image);
+            if (refine) {
+                OcrResult recognized = result;
+                text = refineExecutor.submit(() -> refiner.refineConversion(recognized, confidenceThreshold)).get();
+            } else {
+                text = result.getText().trim();
+            }
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            Throwable error = e instanceof ExecutionException ? e.getCause() : e;
+            failures.increment();
+            System.err.println("Error: OCR request failed: " + error.getMessage());
+            sendText(exchange, 500, "OCR failed: " + error.getMessage());
+            return;
+        }
+        completed.increment();
+
+        if (json) {
+            send(exchange, 200, "application/json", toJson(result, text).toString());
+        } else {
+            sendText(exchange, 200, text);
+        }
+    }
+
+    /**
+     * Reads the size of an uploaded image from its header, without decoding its pixels.
+     *
+     * @return The image's width times its height, or -1 if the upload isn't a readable image.
+     */
+    private static long imagePixels(byte[] upload) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(upload))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return -1;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return (long) reader.getWidth(0) * reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Decodes an uploaded image. Some image readers throw on corrupt input rather than returning null, so those
+     * errors count as an unreadable image too.
+     *
+     * @return The image, or null if the upload isn't a readable image.
+     */
+    private static BufferedImage decode(byte[] upload) {
+        try {
+            return ImageIO.read(new ByteArrayInputStream(upload));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the request body, stopping as soon as it's too large.
+     *
+     * @return The body, or null if it is larger than the upload limit.
+     */
+    private byte[] readUpload(InputStream body) throws IOException {
+        byte[] upload = body.readNBytes((int) Math.min(Integer.MAX_VALUE - 8, maxUploadBytes + 1));
+        return upload.length > maxUploadBytes ? null : upload;
+    }
+
+    private static JsonObject toJson(OcrResult result, String text) {
+        JsonObject json = new JsonObject();
+        json.addProperty("text", text);
+        json.addProperty("rawText", result.getText());
+        json.addProperty("meanConfidence", result.getMeanConfidence());
+        JsonArray words = new JsonArray();
+        for (Word word : result.getWords()) {
+            Rectangle box = word.getBoundingBox();
+            JsonObject wordJson = new JsonObject();
+            wordJson.addProperty("text", word.getText());
+            wordJson.addProperty("confidence", word.getConfidence());
+            wordJson.addProperty("x", box.x);
+            wordJson.addProperty("y", box.y);
+            wordJson.addProperty("width", box.width);
+            wordJson.addProperty("height", box.height);
+            words.add(wordJson);
+        }
+        json.add("words", words);
+        return json;
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            JsonObject json = new JsonObject();
+            json.addProperty("requests", getRequests());
+            json.addProperty("completed", getCompleted());
+            json.addProperty("rejected", getRejected());
+            json.addProperty("failures", getFailures());
+            json.addProperty("inFlight", getInFlight());
+            json.addProperty("waiting", getWaiting());
+            json.addProperty("averageMillis", getAverageMillis());
+            json.addProperty("averageQueueMillis", getAverageQueueMillis());
+            send(exchange, 200, "application/json", json.toString());
+        }
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        send(exchange, status, "text/plain; charset=utf-8", text);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    /**
+     * Gets the number of requests turned away because the server was busy.
+     *
+     * @return The rejected request count.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public int getInFlight() {
+        return maxConcurrent - slots.availablePermits();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    /**
+     * Gets the average time converted requests took, including reading the upload and waiting for a slot.
+     *
+     * @return The average latency in milliseconds, or 0 if no request was converted yet.
+     */
+    public double getAverageMillis() {
+        long converted = completed.sum() + failures.sum();
+        return converted <= 0 ? 0 : totalNanos.sum() / 1e6 / converted;
+    }
+
+    public double getAverageQueueMillis() {
+        long converted = completed.sum() + failures.sum();
+        return converted <= 0 ? 0 : totalQueueNanos.sum() / 1e6 / converted;
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (handlerExecutor != null) {
+            handlerExecutor.shutdownNow();
+        }
+        if (refineExecutor != null) {
+            refineExecutor.shutdownNow();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.codered.neolithic.utils;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
@@ -42,4 +43,81 @@ public class ConfigReader {
         return null; // Return null in case of failure
     }
 
+    /**
+     * Reads a string setting from a top-level section of the config file, e.g. {"ocr": {"language": "eng"}}.
+     *
+     * @param section      The name of the top-level section.
+     * @param key          The key inside the section.
+     * @param defaultValue The value returned when the section or key is missing.
+     * @return The configured value, or the default.
+     */
+    public String getString(String section, String key, String defaultValue) {
+        JsonElement value = getValue(section, key);
+        return value != null ? value.getAsString() : defaultValue;
+    }
+
+    /**
+     * Reads an integer setting from a top-level section of the config file.
+     *
+     * @param section      The name of the top-level section.
+     * @param key          The key inside the section.
+     * @param defaultValue The value returned when the section or key is missing or not a number.
+     * @return The configured value, or the default.
+     */
+    public int getInt(String section, String key, int defaultValue) {
+        JsonElement value = getValue(section, key);
+        try {
+            return value != null ? value.getAsInt() : defaultValue;
+        } catch (NumberFormatException | UnsupportedOperationException e) {
+            System.err.println("Error: '" + section + "." + key + "' is not a number.");
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a boolean setting from a top-level section of the config file.
+     *
+     * @param section      The name of the top-level section.
+     * @param key          The key inside the section.
+     * @param defaultValue The value returned when the section or key is missing.
+     * @return The configured value, or the default.
+     */
+    public boolean getBoolean(String section, String key, boolean defaultValue) {
+        JsonElement value = getValue(section, key);
+        return value != null ? value.getAsBoolean() : defaultValue;
+    }
+
+    /**
+     * Reads a whole top-level section of the config file, e.g. to tell whether any of its settings changed.
+     *
+     * @param section The name of the top-level section.
+     * @return The section as compact JSON, or an empty string when it is missing.
+     */
+    public String getSectionJson(String section) {
+        try (FileReader reader = new FileReader(CONFIG_FILE_PATH)) {
+            JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
+            if (jsonObject.has(section) && jsonObject.get(section).isJsonObject()) {
+                return jsonObject.getAsJsonObject(section).toString();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return "";
+    }
+
+    private JsonElement getValue(String section, String key) {
+        try (FileReader reader = new FileReader(CONFIG_FILE_PATH)) {
+            JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
+            if (jsonObject.has(section) && jsonObject.get(section).isJsonObject()) {
+                JsonObject sectionObject = jsonObject.getAsJsonObject(section);
+                if (sectionObject.has(key) && !sectionObject.get(key).isJsonNull()) {
+                    return sectionObject.get(key);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
 }
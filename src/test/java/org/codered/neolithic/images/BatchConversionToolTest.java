@@ -0,0 +1,70 @@
+package org.codered.neolithic.images;
+
+import com.google.gson.JsonParser;
+import org.codered.neolithic.images.conversion.OcrResult;
+import org.codered.neolithic.images.processing.ConversionRefiner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BatchConversionToolTest {
+    private final ConversionRefiner refiner = new ConversionRefiner(word -> word, null) {
+        @Override
+        public String refineConversion(OcrResult result, float confidenceThreshold) {
+            return result.getText();
+        }
+    };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void resumeLeavesOneLinePerFile() throws Exception {
+        Path input = Files.createDirectory(directory.resolve("input"));
+        ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "png", input.resolve("a.png").toFile());
+        ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB), "png", input.resolve("b.png").toFile());
+        Files.writeString(input.resolve("broken.png"), "not an image");
+        Path output = directory.resolve("results.jsonl");
+        // A crashed run: a failure, a result written twice and a line cut short
+        Files.writeString(output, """
+                {"file":"a.png","error":"Tesseract failed"}
+                {"file":"b.png","text":"b"}
+                {"file":"b.png","text":"b"}
+                {"file":"broken.p""");
+
+        try (BatchConversionTool tool = tool()) {
+            tool.convertDirectory(input, output, true);
+            assertEquals(1, tool.getConverted());
+            assertEquals(1, tool.getFailed());
+            assertEquals(1, tool.getSkipped());
+        }
+        assertEquals(List.of("a.png", "b.png", "broken.png"), files(output));
+
+        // The broken file is tried again, and its new error replaces the old one
+        try (BatchConversionTool tool = tool()) {
+            tool.convertDirectory(input, output, true);
+            assertEquals(1, tool.getFailed());
+            assertEquals(2, tool.getSkipped());
+        }
+        assertEquals(List.of("a.png", "b.png", "broken.png"), files(output));
+    }
+
+    private BatchConversionTool tool() {
+        return new BatchConversionTool(new CapturePipeline(null, image -> "text", refiner, 0, null, 1, 2), 1, 2);
+    }
+
+    private static List<String> files(Path output) throws Exception {
+        return Files.readAllLines(output, StandardCharsets.UTF_8).stream()
+                .map(line -> JsonParser.parseString(line).getAsJsonObject().get("file").getAsString())
+                .sorted()
+                .toList();
+    }
+}
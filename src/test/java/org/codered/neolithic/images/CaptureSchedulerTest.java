@@ -0,0 +1,164 @@
+package org.codered.neolithic.images;
+
+import org.codered.neolithic.images.conversion.ImageConverter;
+import org.codered.neolithic.images.conversion.OcrResult;
+import org.codered.neolithic.images.processing.ConversionRefiner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Schedules captures into a pipeline whose OCR stage is a stub that reports the color of the capture and can be held
+ * until the test lets it finish.
+ */
+class CaptureSchedulerTest {
+    private final CountDownLatch ocrGate = new CountDownLatch(1);
+    private final AtomicInteger ocrStarted = new AtomicInteger();
+    private final ImageConverter recognizer = image -> {
+        ocrStarted.incrementAndGet();
+        ocrGate.await(10, TimeUnit.SECONDS);
+        return Integer.toHexString(image.getRGB(0, 0));
+    };
+    private final ConversionRefiner refiner = new ConversionRefiner(word -> word, null) {
+        @Override
+        public String refineConversion(OcrResult result, float confidenceThreshold) {
+            return result.getText();
+        }
+    };
+    private final CapturePipeline pipeline = new CapturePipeline(null, recognizer, refiner, 0, null, 2);
+
+    @AfterEach
+    void closePipeline() {
+        ocrGate.countDown();
+        pipeline.close();
+    }
+
+    @Test
+    void doesNotMergeCroppedCapturesOfTheSameSize() {
+        CaptureScheduler scheduler = new CaptureScheduler(pipeline, 8, 1, false);
+        scheduler.submit(image(Color.BLACK, 10, 10), null, CaptureScheduler.Priority.NORMAL);
+        CaptureJob red = scheduler.submit(image(Color.RED, 10, 10), null, CaptureScheduler.Priority.NORMAL);
+        CaptureJob blue = scheduler.submit(image(Color.BLUE, 10, 10), null, CaptureScheduler.Priority.NORMAL);
+        ocrGate.countDown();
+
+        assertNotSame(red, blue);
+        assertEquals(text(Color.RED), red.getResult().join().text());
+        assertEquals(text(Color.BLUE), blue.getResult().join().text());
+        assertEquals(0, scheduler.getDeduplicated());
+    }
+
+    @Test
+    void newerCaptureOfAQueuedRegionGetsItsOwnJob() {
+        CaptureScheduler scheduler = new CaptureScheduler(pipeline, 8, 1, false);
+        Rectangle region = new Rectangle(5, 5, 10, 10);
+        scheduler.submit(image(Color.BLACK, 40, 40), region, CaptureScheduler.Priority.NORMAL);
+        CaptureJob older = scheduler.submit(image(Color.RED, 40, 40), region, CaptureScheduler.Priority.NORMAL);
+        CaptureJob newer = scheduler.submit(image(Color.BLUE, 40, 40), region, CaptureScheduler.Priority.NORMAL);
+        ocrGate.countDown();
+
+        assertNotSame(older, newer);
+        assertEquals(text(Color.BLUE), newer.getResult().join().text());
+        assertTrue(older.isCancelled());
+        assertFalse(newer.isCancelled());
+        assertEquals(1, scheduler.getDeduplicated());
+        // The black job and the merged one
+        assertEquals(2, ocrStarted.get());
+    }
+
+    @Test
+    void cancelledJobHoldsItsSlotUntilItsOcrEnds() throws Exception {
+        CaptureScheduler scheduler = new CaptureScheduler(pipeline, 8, 1, false);
+        CaptureJob first = scheduler.submit(image(Color.BLACK, 10, 10), null, CaptureScheduler.Priority.NORMAL);
+        waitFor(() -> ocrStarted.get() == 1);
+        first.cancel();
+        CaptureJob second = scheduler.submit(image(Color.RED, 10, 10), null, CaptureScheduler.Priority.NORMAL);
+
+        Thread.sleep(200);
+        assertEquals(1, ocrStarted.get(), "The next capture was recognized while the cancelled one still was");
+        assertEquals(1, scheduler.getInFlight());
+        assertEquals(1, scheduler.getQueueDepth());
+
+        ocrGate.countDown();
+        assertEquals(text(Color.RED), second.getResult().join().text());
+        waitFor(() -> scheduler.getInFlight() == 0);
+    }
+
+    @Test
+    void fullQueueDropsTheOldestJobOfTheSamePriority() throws Exception {
+        CaptureScheduler scheduler = new CaptureScheduler(pipeline, 2, 1, false);
+        scheduler.submit(image(Color.BLACK, 10, 10), null, CaptureScheduler.Priority.NORMAL);
+        waitFor(() -> ocrStarted.get() == 1);
+        CaptureJob oldest = scheduler.submit(image(Color.RED, 10, 10), null, CaptureScheduler.Priority.NORMAL);
+        CaptureJob older = scheduler.submit(image(Color.GREEN, 10, 10), null, CaptureScheduler.Priority.NORMAL);
+        CaptureJob newest = scheduler.submit(image(Color.BLUE, 10, 10), null, CaptureScheduler.Priority.NORMAL);
+
+        assertTrue(oldest.isCancelled());
+        assertFalse(older.isCancelled());
+        assertFalse(newest.isCancelled());
+        assertEquals(1, scheduler.getDropped());
+
+        // Everything queued outranks a low priority capture, so that one is dropped instead
+        CaptureJob low = scheduler.submit(image(Color.WHITE, 10, 10), null, CaptureScheduler.Priority.LOW);
+        assertTrue(low.isCancelled());
+        assertFalse(older.isCancelled());
+        assertEquals(2, scheduler.getDropped());
+
+        ocrGate.countDown();
+        assertEquals(text(Color.BLUE), newest.getResult().join().text());
+    }
+
+    @Test
+    void screenCaptureOfAQueuedAreaReplacesIt() throws Exception {
+        CaptureScheduler scheduler = new CaptureScheduler(pipeline, 8, 1, false);
+        // No conversion dialog; every job is cancelled before the OCR stub lets any finish, so nothing is presented
+        ImageConversionUtility utility = new ImageConversionUtility(scheduler, null);
+        CaptureJob busy = utility.convertScreenArea(image(Color.BLACK, 10, 10), new Rectangle(0, 0, 10, 10));
+        waitFor(() -> ocrStarted.get() == 1);
+        Rectangle area = new Rectangle(100, 200, 10, 10);
+        CaptureJob older = utility.convertScreenArea(image(Color.RED, 10, 10), area);
+        CaptureJob newer = utility.convertScreenArea(image(Color.BLUE, 10, 10), new Rectangle(area));
+
+        assertNotSame(older, newer);
+        assertTrue(older.isCancelled());
+        assertFalse(newer.isCancelled());
+        assertEquals(1, scheduler.getDeduplicated());
+        assertEquals(1, scheduler.getQueueDepth());
+
+        busy.cancel();
+        newer.cancel();
+    }
+
+    private static BufferedImage image(Color color, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        return image;
+    }
+
+    private static String text(Color color) {
+        return Integer.toHexString(color.getRGB());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+}
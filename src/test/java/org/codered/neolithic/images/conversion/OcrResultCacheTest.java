@@ -0,0 +1,40 @@
+package org.codered.neolithic.images.conversion;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class OcrResultCacheTest {
+    private static final long SETTINGS = 1;
+    private static final long CHANGED_SETTINGS = 2;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void diskTierSurvivesARestartWithTheSameSettings() throws Exception {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        OcrResultCache before = new OcrResultCache(4, -1, new DiskResultCache(directory, 10), SETTINGS);
+        before.put(before.keyOf(image), "text");
+
+        OcrResultCache after = new OcrResultCache(4, -1, new DiskResultCache(directory, 10), SETTINGS);
+        assertEquals("text", after.get(after.keyOf(image)));
+        assertEquals(1, after.getDiskHits());
+    }
+
+    @Test
+    void diskTierMissesAfterASettingsChange() throws Exception {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        OcrResultCache before = new OcrResultCache(4, -1, new DiskResultCache(directory, 10), SETTINGS);
+        before.put(before.keyOf(image), "text");
+
+        OcrResultCache after = new OcrResultCache(4, -1, new DiskResultCache(directory, 10), CHANGED_SETTINGS);
+        assertNull(after.get(after.keyOf(image)));
+        assertEquals(1, after.getMisses());
+    }
+}
@@ -0,0 +1,38 @@
+package org.codered.neolithic.images.processing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DictionarySpellCorrectorTest {
+    private final DictionarySpellCorrector corrector = DictionarySpellCorrector.getInstance();
+
+    @ParameterizedTest
+    @ValueSource(strings = {"1080p", "128GB", "100ms", "1st", "Windows10", "v1", "2024", "3.5", "x64", "5th", "H264",
+            "mp3", "10am"})
+    void keepsTokensWithDigits(String token) {
+        assertEquals(token, corrector.correctWord(token));
+        assertEquals(token + ".", corrector.correctWord(token + "."));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"he1lo, hello", "c0rrect, correct", "5pelling, spelling", "wor1d!, world!"})
+    void undoesDigitLookalikesInWords(String token, String expected) {
+        assertEquals(expected, corrector.correctWord(token));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"teh, the", "recieve, receive", "quick, quick"})
+    void correctsMisspelledWords(String token, String expected) {
+        assertEquals(expected, corrector.correctWord(token));
+    }
+
+    @Test
+    void leavesNumbersInTextAlone() {
+        assertEquals("Download the 1080p video 128GB in 100ms",
+                corrector.correctSpelling("Download the 1080p video 128GB in 100ms"));
+    }
+}
@@ -0,0 +1,63 @@
+package org.codered.neolithic.metrics;
+
+import org.codered.neolithic.images.conversion.RegionImageConverter;
+import org.codered.neolithic.images.processing.BinarizationStage;
+import org.codered.neolithic.images.processing.ImagePreprocessor;
+import org.codered.neolithic.images.processing.ScalingStage;
+import org.codered.neolithic.images.processing.TextRegionDetector;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the preprocessing and region detection stages report into the registry.
+ */
+class StageMetricsTest {
+
+    @Test
+    void preprocessingStagesRecordTimersAndPixelCounts() {
+        ImagePreprocessor preprocessor = new ImagePreprocessor(List.of(
+                new ScalingStage(ScalingStage.DEFAULT_TARGET_TEXT_HEIGHT),
+                new BinarizationStage(BinarizationStage.DEFAULT_WINDOW, BinarizationStage.DEFAULT_OFFSET)));
+        long grayscale = Metrics.timer("preprocess.grayscale").getCount();
+        long scale = Metrics.timer("preprocess.scale").getCount();
+        long binarize = Metrics.timer("preprocess.binarize").getCount();
+        long pixelsIn = Metrics.counter("preprocess.scale.pixelsIn").getCount();
+
+        preprocessor.process(blank(200, 100));
+
+        assertEquals(grayscale + 1, Metrics.timer("preprocess.grayscale").getCount());
+        assertEquals(scale + 1, Metrics.timer("preprocess.scale").getCount());
+        assertEquals(binarize + 1, Metrics.timer("preprocess.binarize").getCount());
+        assertEquals(pixelsIn + 200 * 100, Metrics.counter("preprocess.scale.pixelsIn").getCount());
+    }
+
+    @Test
+    void regionDetectionCountsSkippedPixels() throws Exception {
+        RegionImageConverter converter = new RegionImageConverter(
+                new TextRegionDetector(TextRegionDetector.DEFAULT_MAX_LINE_HEIGHT), image -> "text");
+        long detected = Metrics.timer("ocr.regions.detect").getCount();
+        long blankImages = Metrics.counter("ocr.regions.blankImages").getCount();
+        long pixelsSkipped = Metrics.counter("ocr.regions.pixelsSkipped").getCount();
+
+        assertEquals("", converter.convertToText(blank(300, 50)));
+
+        assertEquals(detected + 1, Metrics.timer("ocr.regions.detect").getCount());
+        assertEquals(blankImages + 1, Metrics.counter("ocr.regions.blankImages").getCount());
+        assertEquals(pixelsSkipped + 300 * 50, Metrics.counter("ocr.regions.pixelsSkipped").getCount());
+    }
+
+    private static BufferedImage blank(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        return image;
+    }
+}
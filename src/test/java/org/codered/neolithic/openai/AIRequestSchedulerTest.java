@@ -0,0 +1,103 @@
+package org.codered.neolithic.openai;
+
+import com.sun.net.httpserver.HttpServer;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Schedules requests against a stub server that answers batches with a reply that can't be split.
+ */
+class AIRequestSchedulerTest {
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final AtomicInteger batchCalls = new AtomicInteger();
+    private final AtomicInteger streamCalls = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/v1/chat/completions", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if (!body.contains("\"stream\":true")) {
+                batchCalls.incrementAndGet();
+                OpenAIClientTest.respond(exchange, 200, """
+                        {"id":"chatcmpl-1","object":"chat.completion","created":0,"model":"stub",
+                         "choices":[{"index":0,"message":{"role":"assistant","content":"Sorry, no JSON today"},
+                         "finish_reason":"stop"}]}""");
+                return;
+            }
+            streamCalls.incrementAndGet();
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(("data: {\"id\":\"c\",\"object\":\"chat.completion.chunk\",\"created\":0,\"model\":\"stub\","
+                        + "\"choices\":[{\"index\":0,\"delta\":{\"content\":\"Answer\"}}]}\n\ndata: [DONE]\n\n")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void failedBatchIsRetriedWithinTheRateLimits() throws Exception {
+        OpenAIClient client = new OpenAIClient("test-token", "http://127.0.0.1:" + server.getAddress().getPort() + "/",
+                Duration.ofSeconds(1), Duration.ofSeconds(5), 0, 1, 4);
+        // Three requests a minute: the batch takes one, so only two of its requests can follow straight away
+        try (AIRequestScheduler scheduler = new AIRequestScheduler(client, 3, 100_000, true, 100, 5, 1000)) {
+            CountDownLatch completed = new CountDownLatch(3);
+            List<String> answers = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                scheduler.submit(request("Question " + i), true, text -> {
+                }, Throwable::printStackTrace, chat -> {
+                    answers.add(chat.getText());
+                    completed.countDown();
+                });
+            }
+
+            assertFalse(completed.await(2, TimeUnit.SECONDS), "The third request didn't wait for the request limit");
+            assertEquals(1, batchCalls.get());
+            assertEquals(2, streamCalls.get(), "The failed batch's requests bypassed the request limit");
+            assertEquals(1, scheduler.getFailedBatches());
+            assertEquals(1, completed.getCount());
+            assertEquals(List.of("Answer", "Answer"), answers);
+            assertEquals(1, scheduler.getQueueDepth());
+            assertTrue(scheduler.getThrottleEvents() >= 1);
+        }
+    }
+
+    private static ChatCompletionRequest request(String question) {
+        return ChatCompletionRequest.builder()
+                .model("stub")
+                .messages(List.of(new ChatMessage("system", "Be brief."), new ChatMessage("user", question)))
+                .maxTokens(50)
+                .build();
+    }
+}
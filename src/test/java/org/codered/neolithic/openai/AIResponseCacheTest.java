@@ -0,0 +1,42 @@
+package org.codered.neolithic.openai;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AIResponseCacheTest {
+    private static final long TTL_MILLIS = 300;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void memoryEntriesExpire() throws Exception {
+        AIResponseCache cache = new AIResponseCache(4, TTL_MILLIS, null);
+        cache.put("key", "answer");
+        assertEquals("answer", cache.get("key"));
+
+        Thread.sleep(TTL_MILLIS + 100);
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void promotionFromDiskKeepsTheOriginalAge() throws Exception {
+        Path file = directory.resolve("responses.log");
+        new AIResponseCache(4, TTL_MILLIS, new DiskResponseStore(file, TTL_MILLIS, 1024 * 1024)).put("key", "answer");
+        Thread.sleep(TTL_MILLIS / 2);
+
+        AIResponseCache restarted = new AIResponseCache(4, TTL_MILLIS,
+                new DiskResponseStore(file, TTL_MILLIS, 1024 * 1024));
+        assertEquals("answer", restarted.get("key"));
+        assertEquals(1, restarted.getDiskHits());
+
+        Thread.sleep(TTL_MILLIS / 2 + 100);
+        assertNull(restarted.get("key"));
+    }
+}
@@ -0,0 +1,154 @@
+package org.codered.neolithic.openai;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Streams chat completions from a stub server sending server-sent events, the way the chat completions endpoint does.
+ */
+class ChatStreamTest {
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private OpenAIClient client;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        client = new OpenAIClient("test-token", "http://127.0.0.1:" + server.getAddress().getPort() + "/",
+                Duration.ofSeconds(1), Duration.ofSeconds(10), 0, 1, 2);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void deliversChunksAsTheyArrive() throws Exception {
+        CountDownLatch firstReceived = new CountDownLatch(1);
+        AtomicBoolean deliveredEarly = new AtomicBoolean();
+        server.createContext("/v1/chat/completions", exchange -> {
+            try (OutputStream out = startEvents(exchange)) {
+                sendChunk(out, "Hel");
+                // The rest is only sent once the client has seen the first chunk
+                deliveredEarly.set(firstReceived.await(5, TimeUnit.SECONDS));
+                sendChunk(out, "lo");
+                sendEvent(out, "[DONE]");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        CountDownLatch completed = new CountDownLatch(1);
+        StringBuilder received = new StringBuilder();
+        ChatStream stream = client.streamChatCompletion(OpenAIClientTest.request(), text -> {
+            received.append(text);
+            firstReceived.countDown();
+        }, Throwable::printStackTrace, completed::countDown);
+
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        assertTrue(deliveredEarly.get(), "The first chunk wasn't passed on before the rest of the answer");
+        assertEquals("Hello", received.toString());
+        assertEquals("Hello", stream.getText());
+        assertTrue(stream.isFinished());
+    }
+
+    @Test
+    void cancelAbortsTheRequestAndStopsCallbacks() throws Exception {
+        CountDownLatch writeFailed = new CountDownLatch(1);
+        server.createContext("/v1/chat/completions", exchange -> {
+            try (OutputStream out = startEvents(exchange)) {
+                // Keeps generating until the client goes away
+                for (int i = 0; i < 200; i++) {
+                    sendChunk(out, "word ");
+                    Thread.sleep(50);
+                }
+                sendEvent(out, "[DONE]");
+            } catch (IOException e) {
+                writeFailed.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        CountDownLatch firstReceived = new CountDownLatch(1);
+        AtomicInteger texts = new AtomicInteger();
+        AtomicBoolean ended = new AtomicBoolean();
+        ChatStream stream = client.streamChatCompletion(OpenAIClientTest.request(), text -> {
+            texts.incrementAndGet();
+            firstReceived.countDown();
+        }, error -> ended.set(true), () -> ended.set(true));
+
+        assertTrue(firstReceived.await(5, TimeUnit.SECONDS));
+        stream.cancel();
+        int textsAtCancel = texts.get();
+
+        assertTrue(writeFailed.await(5, TimeUnit.SECONDS), "The server kept writing after the stream was cancelled");
+        Thread.sleep(200);
+        assertTrue(stream.isCancelled());
+        assertEquals(textsAtCancel, texts.get());
+        assertFalse(ended.get(), "A cancelled stream reported its end");
+    }
+
+    @Test
+    void recordsTimeToFirstToken() throws Exception {
+        server.createContext("/v1/chat/completions", exchange -> {
+            try (OutputStream out = startEvents(exchange)) {
+                Thread.sleep(200);
+                sendChunk(out, "Hi");
+                sendEvent(out, "[DONE]");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        CountDownLatch completed = new CountDownLatch(1);
+        ChatStream stream = client.streamChatCompletion(OpenAIClientTest.request(), text -> {
+        }, Throwable::printStackTrace, completed::countDown);
+        assertEquals(-1, stream.getTimeToFirstTokenMillis());
+
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        assertTrue(stream.getTimeToFirstTokenMillis() >= 200, "TTFT " + stream.getTimeToFirstTokenMillis());
+        assertTrue(stream.getTimeToFirstTokenMillis() <= stream.getElapsedMillis());
+        assertTrue(client.getAverageTimeToFirstTokenMillis() >= 200);
+    }
+
+    private static OutputStream startEvents(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        return exchange.getResponseBody();
+    }
+
+    private static void sendChunk(OutputStream out, String content) throws IOException {
+        sendEvent(out, "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":0,\"model\":\"stub\","
+                + "\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + content + "\"},\"finish_reason\":null}]}");
+    }
+
+    private static void sendEvent(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
@@ -0,0 +1,43 @@
+package org.codered.neolithic.openai;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
+import javax.swing.text.SimpleAttributeSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentStreamWriterTest {
+
+    @Test
+    void appendsEveryChunkInOrderWithFewerInserts() throws Exception {
+        AtomicReference<JTextPane> textPane = new AtomicReference<>();
+        AtomicReference<DocumentStreamWriter> writer = new AtomicReference<>();
+        SwingUtilities.invokeAndWait(() -> {
+            textPane.set(new JTextPane());
+            writer.set(new DocumentStreamWriter(textPane.get(), new SimpleAttributeSet()));
+        });
+
+        StringBuilder expected = new StringBuilder();
+        Thread streamer = new Thread(() -> {
+            for (int i = 0; i < 500; i++) {
+                writer.get().append("token" + i + " ");
+            }
+        });
+        for (int i = 0; i < 500; i++) {
+            expected.append("token").append(i).append(' ');
+        }
+        streamer.start();
+        streamer.join();
+        writer.get().finish();
+
+        AtomicReference<String> text = new AtomicReference<>();
+        // finish() hands itself to the event dispatch thread, so this runs after it
+        SwingUtilities.invokeAndWait(() -> text.set(textPane.get().getText()));
+        assertEquals(expected.toString(), text.get());
+        assertTrue(writer.get().getFlushes() < 500, writer.get().getFlushes() + " flushes for 500 chunks");
+    }
+}
@@ -0,0 +1,197 @@
+package org.codered.neolithic.openai;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the {@link OpenAIClient} against a stub of the chat completions endpoint on localhost.
+ */
+class OpenAIClientTest {
+    private static final String COMPLETION = """
+            {"id":"chatcmpl-1","object":"chat.completion","created":0,"model":"stub",
+             "choices":[{"index":0,"message":{"role":"assistant","content":"Hello"},"finish_reason":"stop"}],
+             "usage":{"prompt_tokens":1,"completion_tokens":1,"total_tokens":2}}""";
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void retriesServiceUnavailable() throws Exception {
+        server.createContext("/v1/chat/completions", exchange -> {
+            if (calls.incrementAndGet() < 3) {
+                respond(exchange, 503, "{}");
+            } else {
+                respond(exchange, 200, COMPLETION);
+            }
+        });
+        OpenAIClient client = client(3, 2);
+
+        assertEquals("Hello", client.createChatCompletion(request()).getChoices().get(0).getMessage().getContent());
+        assertEquals(3, calls.get());
+        assertEquals(2, client.getRetries());
+    }
+
+    @Test
+    void honorsRetryAfterOnRateLimit() throws Exception {
+        server.createContext("/v1/chat/completions", exchange -> {
+            if (calls.incrementAndGet() == 1) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 429, "{}");
+            } else {
+                respond(exchange, 200, COMPLETION);
+            }
+        });
+        OpenAIClient client = client(3, 2);
+
+        long start = System.nanoTime();
+        client.createChatCompletion(request());
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(2, calls.get());
+        assertTrue(elapsedMillis >= 1000, "Retried after " + elapsedMillis + " ms, before the Retry-After");
+    }
+
+    @Test
+    void givesUpAfterMaxRetries() {
+        server.createContext("/v1/chat/completions", exchange -> {
+            calls.incrementAndGet();
+            respond(exchange, 503, "{}");
+        });
+        OpenAIClient client = client(2, 2);
+
+        assertThrows(RuntimeException.class, () -> client.createChatCompletion(request()));
+        assertEquals(3, calls.get());
+        assertEquals(1, client.getFailures());
+    }
+
+    @Test
+    void doesNotRetryTimeouts() throws Exception {
+        server.createContext("/v1/chat/completions", exchange -> {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(2000);
+                respond(exchange, 200, COMPLETION);
+            } catch (InterruptedException | IOException e) {
+                // The client gave up
+            }
+        });
+        OpenAIClient client = new OpenAIClient("test-token", baseUrl(""), Duration.ofSeconds(1),
+                Duration.ofMillis(300), 3, 1, 2);
+
+        assertThrows(RuntimeException.class, () -> client.createChatCompletion(request()));
+        Thread.sleep(500);
+        assertEquals(1, calls.get());
+        assertEquals(0, client.getRetries());
+    }
+
+    @Test
+    void boundsConcurrentRequests() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        server.createContext("/v1/chat/completions", exchange -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(150);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            active.decrementAndGet();
+            respond(exchange, 200, COMPLETION);
+        });
+        OpenAIClient client = client(0, 2);
+
+        ExecutorService callers = Executors.newFixedThreadPool(6);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(callers.submit(() -> client.createChatCompletion(request())));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        callers.shutdown();
+
+        assertEquals(2, maxActive.get());
+        assertEquals(6, client.getRequests());
+        assertEquals(0, client.getInFlight());
+    }
+
+    @Test
+    void sendsRequestsToConfiguredBaseUrl() throws Exception {
+        AtomicReference<String> path = new AtomicReference<>();
+        AtomicReference<String> authorization = new AtomicReference<>();
+        server.createContext("/proxy/", exchange -> {
+            path.set(exchange.getRequestURI().getPath());
+            authorization.set(exchange.getRequestHeaders().getFirst("Authorization"));
+            respond(exchange, 200, COMPLETION);
+        });
+        OpenAIClient client = new OpenAIClient("test-token", baseUrl("proxy/"), Duration.ofSeconds(1),
+                Duration.ofSeconds(5), 0, 1, 2);
+
+        client.createChatCompletion(request());
+
+        assertEquals("/proxy/v1/chat/completions", path.get());
+        assertEquals("Bearer test-token", authorization.get());
+    }
+
+    private OpenAIClient client(int maxRetries, int maxConcurrentRequests) {
+        return new OpenAIClient("test-token", baseUrl(""), Duration.ofSeconds(1), Duration.ofSeconds(5), maxRetries,
+                1, maxConcurrentRequests);
+    }
+
+    private String baseUrl(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/" + path;
+    }
+
+    static ChatCompletionRequest request() {
+        return ChatCompletionRequest.builder()
+                .model("stub")
+                .messages(List.of(new ChatMessage("user", "Hi")))
+                .build();
+    }
+
+    static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
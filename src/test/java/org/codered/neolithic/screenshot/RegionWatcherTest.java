@@ -0,0 +1,80 @@
+package org.codered.neolithic.screenshot;
+
+import org.codered.neolithic.images.conversion.ImageConverter;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Feeds frames of a window-like region, with a pane divider and a scrollbar crossing every row, to a watcher whose OCR
+ * is a stub.
+ */
+class RegionWatcherTest {
+    private static final int WIDTH = 240;
+    private static final int HEIGHT = 120;
+
+    private final AtomicInteger conversions = new AtomicInteger();
+    private final ImageConverter converter = image -> "block " + conversions.incrementAndGet();
+
+    @Test
+    void onlyTheChangedBlockIsConvertedAgain() throws Exception {
+        try (RegionWatcher watcher = new RegionWatcher(new Rectangle(0, 0, WIDTH, HEIGHT), 1000, converter,
+                text -> { })) {
+            assertEquals("block 1\nblock 2", watcher.update(frame(10, 20, 0)));
+            assertEquals(2, watcher.getConvertedBlocks());
+
+            // The second block grows a line and the scrollbar thumb moves
+            assertEquals("block 1\nblock 3", watcher.update(frame(10, 25, 40)));
+            assertEquals(3, watcher.getConvertedBlocks());
+            assertEquals(1, watcher.getReusedBlocks());
+        }
+    }
+
+    @Test
+    void unchangedFrameIsNotConverted() throws Exception {
+        try (RegionWatcher watcher = new RegionWatcher(new Rectangle(0, 0, WIDTH, HEIGHT), 1000, converter,
+                text -> { })) {
+            watcher.update(frame(10, 20, 0));
+            watcher.update(frame(10, 20, 0));
+
+            assertEquals(1, watcher.getUnchangedFrames());
+            assertEquals(2, conversions.get());
+        }
+    }
+
+    /**
+     * Draws two blocks of "text" on either side of a divider, with a scrollbar thumb at the right edge.
+     */
+    private static BufferedImage frame(int firstBlockHeight, int secondBlockHeight, int thumbTop) {
+        BufferedImage frame = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = frame.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, WIDTH, HEIGHT);
+        graphics.setColor(Color.GRAY);
+        graphics.fillRect(WIDTH / 2, 0, 1, HEIGHT);
+        graphics.fillRect(WIDTH - 12, thumbTop, 12, 40);
+        graphics.dispose();
+        drawText(frame, 10, firstBlockHeight);
+        drawText(frame, 60, secondBlockHeight);
+        return frame;
+    }
+
+    /**
+     * Fills a block with a checkered pattern, so that like real text no row or column of it is a single color.
+     */
+    private static void drawText(BufferedImage frame, int top, int height) {
+        for (int y = top; y < top + height; y++) {
+            for (int x = 40; x < 100; x++) {
+                if ((x / 2 + y / 2) % 2 == 0) {
+                    frame.setRGB(x, y, Color.BLACK.getRGB());
+                }
+            }
+        }
+    }
+}
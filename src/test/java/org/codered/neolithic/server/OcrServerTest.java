@@ -0,0 +1,143 @@
+package org.codered.neolithic.server;
+
+import org.codered.neolithic.images.conversion.ImageConverter;
+import org.codered.neolithic.images.conversion.OcrResult;
+import org.codered.neolithic.images.processing.ConversionRefiner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Sends requests to a server whose OCR is a stub, with a single conversion slot and no queue.
+ */
+class OcrServerTest {
+    private final AtomicBoolean refinedOnVirtualThread = new AtomicBoolean();
+    private final CountDownLatch ocrGate = new CountDownLatch(1);
+    private final AtomicBoolean holdOcr = new AtomicBoolean();
+    private final ImageConverter recognizer = image -> {
+        if (holdOcr.get()) {
+            ocrGate.await(10, TimeUnit.SECONDS);
+        }
+        return "recognized";
+    };
+    private final ConversionRefiner refiner = new ConversionRefiner(word -> word, null) {
+        @Override
+        public String refineConversion(OcrResult result, float confidenceThreshold) {
+            refinedOnVirtualThread.set(Thread.currentThread().isVirtual());
+            return "refined";
+        }
+    };
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private OcrServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new OcrServer(recognizer, refiner, 100, 1, 0, 0, 1024 * 1024, 10_000);
+        server.start(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @AfterEach
+    void stopServer() {
+        ocrGate.countDown();
+        server.close();
+    }
+
+    @Test
+    void refinesOnAPlatformThread() throws Exception {
+        HttpResponse<String> response = post(png(64, 32));
+
+        assertEquals(200, response.statusCode());
+        assertEquals("refined", response.body());
+        assertFalse(refinedOnVirtualThread.get(), "The refiner ran on a virtual thread");
+    }
+
+    @Test
+    void slowUploadDoesNotHoldASlot() throws Exception {
+        byte[] image = png(64, 32);
+        try (Socket stalled = new Socket("127.0.0.1", server.getPort())) {
+            OutputStream out = stalled.getOutputStream();
+            out.write(("POST /ocr HTTP/1.1\r\nHost: 127.0.0.1\r\nContent-Length: " + image.length + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            // Half the image, and then nothing
+            out.write(Arrays.copyOf(image, image.length / 2));
+            out.flush();
+            Thread.sleep(200);
+
+            assertEquals(0, server.getInFlight());
+            assertEquals(0, server.getWaiting());
+        }
+    }
+
+    @Test
+    void rejectsUnreadableImages() throws Exception {
+        byte[] truncated = Arrays.copyOf(png(64, 32), 40);
+
+        assertEquals(400, post("not an image".getBytes(StandardCharsets.UTF_8)).statusCode());
+        assertEquals(400, post(truncated).statusCode());
+        assertEquals(0, server.getCompleted());
+    }
+
+    @Test
+    void rejectsImagesWithTooManyPixelsBeforeDecoding() throws Exception {
+        HttpResponse<String> response = post(png(200, 100));
+
+        assertEquals(413, response.statusCode());
+        assertEquals(0, server.getCompleted());
+    }
+
+    @Test
+    void busyServerTurnsRequestsAwayBeforeReadingThem() throws Exception {
+        holdOcr.set(true);
+        CompletableFuture<HttpResponse<String>> first = httpClient.sendAsync(request(png(64, 32)),
+                HttpResponse.BodyHandlers.ofString());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getInFlight() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, server.getInFlight());
+
+        // Not an image, so it only gets a 503 rather than a 400 if it's turned away before its body is read
+        assertEquals(503, post("not an image".getBytes(StandardCharsets.UTF_8)).statusCode());
+        assertEquals(1, server.getRejected());
+
+        ocrGate.countDown();
+        assertEquals(200, first.get(10, TimeUnit.SECONDS).statusCode());
+    }
+
+    private HttpResponse<String> post(byte[] body) throws Exception {
+        return httpClient.send(request(body), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest request(byte[] body) {
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + "/ocr"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+}